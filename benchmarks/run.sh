@@ -0,0 +1,5 @@
+#!/bin/sh
+# Run the benchmarks with the fake pyang first on the PATH. Arguments are passed to JMH,
+# for example: ./run.sh GoalBenchmark -p files=1000
+dir=$(cd "$(dirname "$0")" && pwd)
+PATH="$dir/fake-pyang:$PATH" exec java -jar "$dir/target/benchmarks.jar" "$@"
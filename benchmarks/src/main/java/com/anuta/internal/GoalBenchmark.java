@@ -0,0 +1,115 @@
+package com.anuta.internal;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole goal execution over a generated tree, as a build runs it: without caches or
+ * outputs (cold), with everything up to date (warm), and with a share of the files
+ * changed since the last execution (partial).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GoalBenchmark {
+
+   @State(Scope.Benchmark)
+   public static class Tree {
+
+      @Param({ "100", "1000", "10000", "50000" })
+      public int files;
+
+      /** see {@link Mojos#create(String, YangTree)} */
+      @Param({ "compile", "convert", "convert-java", "format" })
+      public String goal;
+
+      YangTree tree;
+
+      @Setup(Level.Trial)
+      public void create() throws IOException {
+         if (!goal.endsWith("-java")) {
+            Mojos.checkPyang();
+         }
+         tree = YangTree.create(files);
+      }
+
+      @TearDown(Level.Trial)
+      public void delete() throws IOException {
+         tree.delete();
+      }
+
+      void execute() throws MojoExecutionException, MojoFailureException {
+         Mojos.create(goal, tree).execute();
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class Cold {
+
+      @Setup(Level.Invocation)
+      public void clean(Tree tree) throws IOException {
+         tree.tree.clean();
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class Warm {
+
+      @Setup(Level.Iteration)
+      public void prime(Tree tree) throws Exception {
+         tree.tree.clean();
+         tree.execute();
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class Partial {
+
+      /** percentage of the files changed before every execution */
+      @Param({ "1", "10" })
+      public int changedPercent;
+
+      @Setup(Level.Iteration)
+      public void prime(Tree tree) throws Exception {
+         tree.tree.clean();
+         tree.execute();
+      }
+
+      @Setup(Level.Invocation)
+      public void change(Tree tree) throws IOException {
+         tree.tree.change(Math.max(1, tree.files * changedPercent / 100));
+      }
+   }
+
+   @Benchmark
+   public void cold(Tree tree, Cold cold) throws Exception {
+      tree.execute();
+   }
+
+   @Benchmark
+   public void warm(Tree tree, Warm warm) throws Exception {
+      tree.execute();
+   }
+
+   @Benchmark
+   public void partial(Tree tree, Partial partial) throws Exception {
+      tree.execute();
+   }
+}
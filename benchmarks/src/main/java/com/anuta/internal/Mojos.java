@@ -0,0 +1,161 @@
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Creates goals configured like Maven would, for the benchmarks.
+ */
+final class Mojos {
+
+   /** version printed by the fake pyang, see fake-pyang/pyang */
+   static final String PYANG_VERSION = "2.5.3";
+
+   /** encoding of the generated trees and of the fake pyang output */
+   static final String ENCODING = "UTF-8";
+
+   private Mojos() {
+   }
+
+   /**
+    * @param goal <code>compile</code>, <code>format</code>, <code>convert</code>, or
+    *           <code>convert-java</code> for the convert goal with the java backend
+    * @param tree
+    * @return a new goal processing the tree with one thread per processor
+    */
+   static YangHelperMojo create(String goal, YangTree tree) {
+      YangHelperMojo mojo;
+      if ("compile".equals(goal)) {
+         mojo = new YangCompiler();
+      } else if ("format".equals(goal)) {
+         mojo = new YangFormatter();
+      } else if ("convert".equals(goal)) {
+         mojo = new YangConverter();
+      } else if ("convert-java".equals(goal)) {
+         mojo = new YangConverter();
+         set(mojo, "backend", "java");
+      } else {
+         throw new IllegalArgumentException("Unknown goal " + goal);
+      }
+      set(mojo, "basedir", tree.root);
+      set(mojo, "sourceDirectory", tree.sourceDirectory);
+      set(mojo, "targetDirectory", tree.targetDirectory);
+      set(mojo, "encoding", ENCODING);
+      set(mojo, "pyangVersion", PYANG_VERSION);
+      set(mojo, "failOnError", Boolean.FALSE);
+      mojo.setLog(new QuietLog());
+      return mojo;
+   }
+
+   /**
+    * Fail early when pyang cannot be run, the benchmarks would measure failures only.
+    */
+   static void checkPyang() {
+      try {
+         ToolResult result = new ProcessRunner(Arrays.asList("pyang", "-v"), new File("."), null, 0, ENCODING)
+                  .capture();
+         if (!result.isSuccess()) {
+            throw new IllegalStateException("pyang -v failed: " + result.getError());
+         }
+      } catch (IOException e) {
+         throw new IllegalStateException("pyang not found, run the benchmarks with run.sh", e);
+      }
+   }
+
+   /**
+    * Set a parameter field, as Maven injects the plugin configuration.
+    */
+   static void set(Object mojo, String name, Object value) {
+      for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+         try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(mojo, value);
+            return;
+         } catch (NoSuchFieldException e) {
+            // declared by a super class
+         } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+         }
+      }
+      throw new IllegalArgumentException("No parameter " + name + " in " + mojo.getClass());
+   }
+
+   /**
+    * Drops the per file logging, which would otherwise be measured as well. Errors are kept.
+    */
+   static class QuietLog implements Log {
+      public boolean isDebugEnabled() {
+         return false;
+      }
+
+      public void debug(CharSequence content) {
+      }
+
+      public void debug(CharSequence content, Throwable error) {
+      }
+
+      public void debug(Throwable error) {
+      }
+
+      public boolean isInfoEnabled() {
+         return false;
+      }
+
+      public void info(CharSequence content) {
+      }
+
+      public void info(CharSequence content, Throwable error) {
+      }
+
+      public void info(Throwable error) {
+      }
+
+      public boolean isWarnEnabled() {
+         return false;
+      }
+
+      public void warn(CharSequence content) {
+      }
+
+      public void warn(CharSequence content, Throwable error) {
+      }
+
+      public void warn(Throwable error) {
+      }
+
+      public boolean isErrorEnabled() {
+         return true;
+      }
+
+      public void error(CharSequence content) {
+         print(content, null);
+      }
+
+      public void error(CharSequence content, Throwable error) {
+         print(content, error);
+      }
+
+      public void error(Throwable error) {
+         print(null, error);
+      }
+
+      /**
+       * Print an error as one line on stderr, with the exception and its causes but without
+       * their stack traces, which would bury the JMH results.
+       */
+      private static void print(CharSequence content, Throwable error) {
+         StringBuilder line = new StringBuilder("[error]");
+         if (content != null) {
+            line.append(' ').append(content);
+         }
+         for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            line.append(cause == error && content == null ? " " : ", caused by ").append(cause);
+         }
+         System.err.println(line);
+      }
+   }
+}
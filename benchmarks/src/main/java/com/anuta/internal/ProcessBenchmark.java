@@ -0,0 +1,86 @@
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per file cost of running pyang and writing its output: starting the fake pyang
+ * process, streaming its output into the yin file, and replacing an output file whose
+ * content changed or did not change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessBenchmark {
+
+   private YangTree tree;
+   private File yang;
+   private File yin;
+   private List<String> convert;
+   private String output;
+   private int version;
+
+   @Setup(Level.Trial)
+   public void create() throws IOException {
+      Mojos.checkPyang();
+      tree = YangTree.create(1);
+      yang = tree.files.get(0);
+      yin = new File(yang.getParentFile(), "bench-0.yin");
+      convert = Arrays.asList("pyang", "-f", "yin", yang.getPath());
+      output = new ProcessRunner(convert, yang.getParentFile(), null, 0, Mojos.ENCODING).capture().getOutput();
+   }
+
+   @TearDown(Level.Trial)
+   public void delete() throws IOException {
+      tree.delete();
+   }
+
+   /** start pyang and capture its output, as the pyang version check and the compile goal do */
+   @Benchmark
+   public ToolResult spawn() throws IOException {
+      return new ProcessRunner(convert, yang.getParentFile(), null, 0, Mojos.ENCODING).capture();
+   }
+
+   /** start pyang and stream its output into the yin file, as the convert goal does */
+   @Benchmark
+   public ToolResult spawnToFile() throws IOException {
+      return new ProcessRunner(convert, yang.getParentFile(), null, 0, Mojos.ENCODING).run(yin);
+   }
+
+   /** write an output whose content changed */
+   @Benchmark
+   public boolean writeChanged() throws IOException {
+      return write(output + "<!-- " + version++ + " -->\n");
+   }
+
+   /** write an output with the content the file already has, which leaves it untouched */
+   @Benchmark
+   public boolean writeUnchanged() throws IOException {
+      return write(output);
+   }
+
+   private boolean write(String content) throws IOException {
+      File temp = AtomicFile.createTemp(yin);
+      FileUtils.fileWrite(temp, "UTF-8", content);
+      return AtomicFile.commitIfChanged(temp, yin);
+   }
+}
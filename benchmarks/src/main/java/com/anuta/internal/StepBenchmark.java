@@ -0,0 +1,127 @@
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The steps of a goal execution which do not run pyang, each over a whole generated tree:
+ * scanning, fingerprinting, reading the imports, indexing the module search path, and
+ * storing and loading the hash cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StepBenchmark {
+
+   @Param({ "100", "1000", "10000", "50000" })
+   public int files;
+
+   private YangTree tree;
+   private List<Fingerprint> fingerprints;
+   private FileHashCache cache;
+   private File cacheFile;
+   private ModuleIndex index;
+
+   @Setup(Level.Trial)
+   public void create() throws IOException {
+      tree = YangTree.create(files);
+      // older than the racy window, so that unchanged files and directories are not read again
+      long past = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+      for (File file : tree.files) {
+         file.setLastModified(past);
+         file.getParentFile().setLastModified(past);
+      }
+      tree.sourceDirectory.setLastModified(past);
+      fingerprints = new ArrayList<Fingerprint>(files);
+      cache = new FileHashCache();
+      cache.setConfiguration("benchmark");
+      for (File file : tree.files) {
+         Fingerprint fingerprint = Fingerprint.of(file, null);
+         fingerprints.add(fingerprint);
+         cache.put(file.getPath(), fingerprint, Collections.<String>emptyList(), Collections.<String>emptyList(),
+                  FileHashCache.Result.SUCCESS, TimeUnit.MILLISECONDS.toNanos(5));
+      }
+      tree.targetDirectory.mkdirs();
+      cacheFile = new File(tree.targetDirectory, "benchmark-cache.bin");
+      cache.write(cacheFile);
+      index = ModuleIndex.build(Collections.singletonList(tree.sourceDirectory), null);
+   }
+
+   @TearDown(Level.Trial)
+   public void delete() throws IOException {
+      tree.delete();
+   }
+
+   @Benchmark
+   public Map<File, BasicFileAttributes> scan() throws IOException {
+      return new YangFileScanner(new String[] { "**/*.yang" }, new String[0]).scan(
+               Collections.singletonList(tree.sourceDirectory), 1);
+   }
+
+   /** hash every file, as a build without a cache does */
+   @Benchmark
+   public void hash(Blackhole blackhole) throws IOException {
+      for (File file : tree.files) {
+         blackhole.consume(Fingerprint.of(file, null));
+      }
+   }
+
+   /** check every file against its cached fingerprint, as a build with an up to date cache does */
+   @Benchmark
+   public void stat(Blackhole blackhole) throws IOException {
+      for (int i = 0; i < files; i++) {
+         blackhole.consume(Fingerprint.of(tree.files.get(i), fingerprints.get(i)));
+      }
+   }
+
+   /** parse every file for its imports, as the dependency tracking does for changed files */
+   @Benchmark
+   public void parse(Blackhole blackhole) throws IOException {
+      for (File file : tree.files) {
+         blackhole.consume(ModuleDependencyGraph.readDependencies(YangParser.parseFile(file, "UTF-8")));
+      }
+   }
+
+   @Benchmark
+   public ModuleIndex indexCold() {
+      return ModuleIndex.build(Collections.singletonList(tree.sourceDirectory), null);
+   }
+
+   @Benchmark
+   public ModuleIndex indexWarm() {
+      return ModuleIndex.build(Collections.singletonList(tree.sourceDirectory), index);
+   }
+
+   @Benchmark
+   public void cacheStore() throws IOException {
+      cache.write(cacheFile);
+   }
+
+   @Benchmark
+   public FileHashCache cacheLoad() throws IOException {
+      return FileHashCache.read(cacheFile);
+   }
+}
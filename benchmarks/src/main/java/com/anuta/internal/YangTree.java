@@ -0,0 +1,118 @@
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * A generated tree of yang modules for the benchmarks. The modules are spread over
+ * directories of {@link #FILES_PER_DIRECTORY} files, each module imports the previous
+ * module of its directory and holds a container of leaves, so that the files have the
+ * size and the dependencies of real modules.
+ */
+final class YangTree {
+
+   static final int FILES_PER_DIRECTORY = 100;
+
+   private static final int LEAVES = 20;
+
+   final File root;
+   final File sourceDirectory;
+   final File targetDirectory;
+   final List<File> files = new ArrayList<File>();
+
+   /** version written into the modules, changed by {@link #change(int)} */
+   private final int[] versions;
+   private int nextChange;
+
+   private YangTree(File root, int count) {
+      this.root = root;
+      this.sourceDirectory = new File(root, "src");
+      this.targetDirectory = new File(root, "target");
+      this.versions = new int[count];
+   }
+
+   /**
+    * @param count number of modules
+    * @return a new tree in a temporary directory
+    * @throws IOException
+    */
+   static YangTree create(int count) throws IOException {
+      File root = File.createTempFile("yang-benchmark", "");
+      if (!root.delete() || !root.mkdirs()) {
+         throw new IOException("Cannot create " + root);
+      }
+      YangTree tree = new YangTree(root, count);
+      for (int i = 0; i < count; i++) {
+         File dir = new File(tree.sourceDirectory, "d" + (i / FILES_PER_DIRECTORY));
+         dir.mkdirs();
+         File file = new File(dir, moduleName(i) + ".yang");
+         tree.files.add(file);
+         tree.write(i);
+      }
+      return tree;
+   }
+
+   private static String moduleName(int i) {
+      return "bench-" + i;
+   }
+
+   private void write(int i) throws IOException {
+      StringBuilder yang = new StringBuilder();
+      yang.append("module ").append(moduleName(i)).append(" {\n");
+      yang.append("  yang-version 1.1;\n");
+      yang.append("  namespace \"urn:benchmark:").append(i).append("\";\n");
+      yang.append("  prefix b").append(i).append(";\n\n");
+      if (i % FILES_PER_DIRECTORY > 0) {
+         yang.append("  import ").append(moduleName(i - 1)).append(" {\n");
+         yang.append("    prefix b").append(i - 1).append(";\n  }\n\n");
+      }
+      yang.append("  description\n    \"Generated module ").append(i).append(", version ")
+               .append(versions[i]).append(".\";\n\n");
+      yang.append("  container c").append(i).append(" {\n");
+      for (int leaf = 0; leaf < LEAVES; leaf++) {
+         yang.append("    leaf l").append(leaf).append(" {\n");
+         yang.append("      type string {\n        length \"1..64\";\n      }\n");
+         yang.append("      description\n        \"Leaf ").append(leaf).append(" of module ").append(i)
+                  .append(".\";\n    }\n");
+      }
+      yang.append("  }\n}\n");
+      FileUtils.fileWrite(files.get(i), "UTF-8", yang.toString());
+   }
+
+   /**
+    * Change the content of the given number of modules, other ones on every call.
+    *
+    * @param count
+    * @throws IOException
+    */
+   void change(int count) throws IOException {
+      for (int n = 0; n < count; n++) {
+         int i = nextChange;
+         nextChange = (nextChange + 1) % versions.length;
+         versions[i]++;
+         write(i);
+      }
+   }
+
+   /**
+    * Delete the caches and the outputs of earlier goal executions.
+    *
+    * @throws IOException
+    */
+   void clean() throws IOException {
+      FileUtils.deleteDirectory(targetDirectory);
+      for (File file : files) {
+         File yin = new File(file.getParentFile(), file.getName().replace(".yang", ".yin"));
+         if (yin.exists() && !yin.delete()) {
+            throw new IOException("Cannot delete " + yin);
+         }
+      }
+   }
+
+   void delete() throws IOException {
+      FileUtils.deleteDirectory(root);
+   }
+}
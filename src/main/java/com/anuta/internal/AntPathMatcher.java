@@ -0,0 +1,230 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled include or exclude pattern with the syntax of the plexus DirectoryScanner:
+ * <code>*</code> and <code>?</code> match within a path element, <code>**</code> matches
+ * any number of directories, a pattern ending with a separator matches everything below,
+ * and <code>%regex[...]</code> is a regular expression on the whole relative path.
+ * Paths are relative to the scanned directory and matched case sensitively.
+ */
+final class AntPathMatcher implements PathMatcher {
+
+   private static final String REGEX_PREFIX = "%regex[";
+   private static final String ANT_PREFIX = "%ant[";
+   private static final String SUFFIX = "]";
+   private static final String ANY_DIRECTORIES = "**";
+
+   /** path elements without wildcards, null for wildcards and ** */
+   private final String[] literals;
+   /** path elements with wildcards, null for literals and ** */
+   private final Pattern[] wildcards;
+   /** number of elements before the trailing **, if any */
+   private final int prefixLength;
+   /** the regular expression of a %regex pattern, null for ant patterns */
+   private final Pattern regex;
+
+   private AntPathMatcher(List<String> elements, Pattern regex) {
+      int length = elements.size();
+      this.literals = new String[length];
+      this.wildcards = new Pattern[length];
+      for (int i = 0; i < length; i++) {
+         String element = elements.get(i);
+         if (element.equals(ANY_DIRECTORIES)) {
+            continue;
+         }
+         if (element.indexOf('*') < 0 && element.indexOf('?') < 0) {
+            literals[i] = element;
+         } else {
+            wildcards[i] = Pattern.compile(toRegex(element));
+         }
+      }
+      int prefix = length;
+      while (prefix > 0 && isAnyDirectories(prefix - 1)) {
+         prefix--;
+      }
+      this.prefixLength = prefix;
+      this.regex = regex;
+   }
+
+   /**
+    * @param pattern
+    * @return the compiled pattern
+    */
+   static AntPathMatcher compile(String pattern) {
+      pattern = pattern.trim();
+      if (pattern.startsWith(REGEX_PREFIX) && pattern.endsWith(SUFFIX)) {
+         String regex = pattern.substring(REGEX_PREFIX.length(), pattern.length() - SUFFIX.length());
+         return new AntPathMatcher(new ArrayList<String>(), Pattern.compile(regex));
+      }
+      if (pattern.startsWith(ANT_PREFIX) && pattern.endsWith(SUFFIX)) {
+         pattern = pattern.substring(ANT_PREFIX.length(), pattern.length() - SUFFIX.length());
+      }
+      List<String> elements = new ArrayList<String>();
+      for (String element : pattern.split("[/\\\\]")) {
+         // consecutive ** are the same as one
+         if (element.length() > 0 && !(element.equals(ANY_DIRECTORIES) && !elements.isEmpty()
+                  && elements.get(elements.size() - 1).equals(ANY_DIRECTORIES))) {
+            elements.add(element);
+         }
+      }
+      if ((pattern.endsWith("/") || pattern.endsWith("\\"))
+               && (elements.isEmpty() || !elements.get(elements.size() - 1).equals(ANY_DIRECTORIES))) {
+         elements.add(ANY_DIRECTORIES);
+      }
+      return new AntPathMatcher(elements, null);
+   }
+
+   /**
+    * @param patterns
+    * @return the compiled patterns
+    */
+   static AntPathMatcher[] compile(String[] patterns) {
+      AntPathMatcher[] matchers = new AntPathMatcher[patterns.length];
+      for (int i = 0; i < patterns.length; i++) {
+         matchers[i] = compile(patterns[i]);
+      }
+      return matchers;
+   }
+
+   /**
+    * @param path relative to the scanned directory
+    */
+   public boolean matches(Path path) {
+      if (regex != null) {
+         return regex.matcher(toString(path)).matches();
+      }
+      return matches(0, literals.length, elements(path), 0);
+   }
+
+   /**
+    * @param directory relative to the scanned directory
+    * @return false when no path below the directory can match, so it need not be scanned
+    */
+   boolean couldMatchBelow(Path directory) {
+      if (regex != null) {
+         return true;
+      }
+      String[] names = elements(directory);
+      int i = 0;
+      for (; i < literals.length; i++) {
+         if (isAnyDirectories(i)) {
+            return true;
+         }
+         if (i == names.length) {
+            // the remaining elements can match below the directory
+            return true;
+         }
+         if (!matchesElement(i, names[i])) {
+            return false;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * @param directory relative to the scanned directory
+    * @return true when every path below the directory matches, so an exclude can skip it
+    */
+   boolean matchesAllBelow(Path directory) {
+      if (regex != null || prefixLength == literals.length) {
+         return false;
+      }
+      // the directory or one of its parents matches the elements before the trailing **
+      String[] names = elements(directory);
+      for (int length = names.length; length >= 0; length--) {
+         if (matches(0, prefixLength, Arrays.copyOf(names, length), 0)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private boolean matches(int index, int end, String[] names, int nameIndex) {
+      while (index < end) {
+         if (isAnyDirectories(index)) {
+            if (index + 1 == end) {
+               return true;
+            }
+            for (int i = nameIndex; i < names.length; i++) {
+               if (matches(index + 1, end, names, i)) {
+                  return true;
+               }
+            }
+            return false;
+         }
+         if (nameIndex == names.length || !matchesElement(index, names[nameIndex])) {
+            return false;
+         }
+         index++;
+         nameIndex++;
+      }
+      return nameIndex == names.length;
+   }
+
+   private boolean isAnyDirectories(int index) {
+      return literals[index] == null && wildcards[index] == null;
+   }
+
+   private boolean matchesElement(int index, String name) {
+      if (literals[index] != null) {
+         return literals[index].equals(name);
+      }
+      return wildcards[index].matcher(name).matches();
+   }
+
+   private static String[] elements(Path path) {
+      String[] names = new String[path.getNameCount()];
+      for (int i = 0; i < names.length; i++) {
+         names[i] = path.getName(i).toString();
+      }
+      return names;
+   }
+
+   private static String toString(Path path) {
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0, n = path.getNameCount(); i < n; i++) {
+         if (i > 0) {
+            builder.append(File.separatorChar);
+         }
+         builder.append(path.getName(i));
+      }
+      return builder.toString();
+   }
+
+   private static String toRegex(String element) {
+      StringBuilder regex = new StringBuilder();
+      int start = 0;
+      for (int i = 0; i < element.length(); i++) {
+         char c = element.charAt(i);
+         if (c == '*' || c == '?') {
+            if (start < i) {
+               regex.append(Pattern.quote(element.substring(start, i)));
+            }
+            regex.append(c == '*' ? ".*" : ".");
+            start = i + 1;
+         }
+      }
+      if (start < element.length()) {
+         regex.append(Pattern.quote(element.substring(start)));
+      }
+      return regex.toString();
+   }
+}
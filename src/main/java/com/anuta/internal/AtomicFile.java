@@ -0,0 +1,125 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Write a file through a temporary file next to it, renamed onto the target once
+ * complete, so that readers never see a partially written file.
+ */
+class AtomicFile {
+
+   private AtomicFile() {
+   }
+
+   /**
+    * @param target
+    * @return a new temporary file in the directory of the target.
+    * @throws IOException
+    */
+   static File createTemp(File target) throws IOException {
+      File dir = target.getAbsoluteFile().getParentFile();
+      return File.createTempFile("." + target.getName(), ".tmp", dir);
+   }
+
+   /**
+    * Move the temporary file onto the target, atomically where the file system allows it.
+    *
+    * @param temp
+    * @param target
+    * @throws IOException
+    */
+   static void commit(File temp, File target) throws IOException {
+      try {
+         Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                  StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+         Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+
+   /**
+    * Move the temporary file onto the target unless the target already has the same
+    * content, so that the modification time of an unchanged target is kept.
+    *
+    * @param temp
+    * @param target
+    * @return false when the target was left unchanged and the temporary file deleted
+    * @throws IOException
+    */
+   static boolean commitIfChanged(File temp, File target) throws IOException {
+      long start = System.nanoTime();
+      try {
+         if (hasSameContent(temp, target)) {
+            discard(temp);
+            return false;
+         }
+         commit(temp, target);
+         return true;
+      } finally {
+         BuildReport.record(BuildReport.Phase.WRITE, System.nanoTime() - start);
+      }
+   }
+
+   /**
+    * Copy the source onto the target through a temporary file, unless the target already
+    * has the same content.
+    *
+    * @param source
+    * @param target
+    * @return false when the target was left unchanged
+    * @throws IOException
+    */
+   static boolean copyIfChanged(File source, File target) throws IOException {
+      File temp = createTemp(target);
+      try {
+         Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         return commitIfChanged(temp, target);
+      } finally {
+         discard(temp);
+      }
+   }
+
+   /**
+    * Compare the sizes, then the hashes of the files, without reading them into memory.
+    *
+    * @param file
+    * @param other
+    * @return
+    * @throws IOException
+    */
+   static boolean hasSameContent(File file, File other) throws IOException {
+      if (!other.isFile()) {
+         return false;
+      }
+      long size = file.length();
+      if (size != other.length()) {
+         return false;
+      }
+      return Fingerprint.hash(file.toPath()).equals(Fingerprint.hash(other.toPath()));
+   }
+
+   /**
+    * Delete a temporary file which is not committed.
+    *
+    * @param temp
+    */
+   static void discard(File temp) {
+      if (temp != null && temp.exists() && !temp.delete()) {
+         temp.deleteOnExit();
+      }
+   }
+}
@@ -0,0 +1,562 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Timings of a goal execution: a row per operation run on a file with the nanoseconds
+ * spent in each {@link Phase}, and the durations of the steps done once for all files.
+ * The phases run deep inside an operation, like starting pyang, are recorded on the row
+ * of the current thread, see {@link #record(Phase, long)}, so that the code doing the work
+ * does not need to know about the report. Rows are written as a JSON report with
+ * percentiles and the slowest files, and as a CSV file with a line per row.
+ */
+class BuildReport {
+
+   /**
+    * The phases of a row. A phase not run for a file is 0.
+    */
+   enum Phase {
+      /** reading and hashing the file, when its size or modification time changed */
+      HASH,
+      /** checking the fingerprint against the hash cache */
+      LOOKUP,
+      /** parsing the file for the syntax check */
+      PARSE,
+      /** starting the pyang process */
+      SPAWN,
+      /** running the operation, without SPAWN and WRITE: pyang, a pyang worker, or the java backend */
+      TOOL,
+      /** comparing the output with the existing file and replacing it */
+      WRITE;
+
+      String getLabel() {
+         return name().toLowerCase();
+      }
+   }
+
+   /** the row of the operation running on the current thread */
+   private static final ThreadLocal<FileTiming> CURRENT = new ThreadLocal<FileTiming>();
+
+   private static final double[] PERCENTILES = { 50, 90, 99 };
+
+   private final String goal;
+   private final long startMillis = System.currentTimeMillis();
+   private final long startNanos = System.nanoTime();
+   private final Map<String, Long> steps = new LinkedHashMap<String, Long>();
+   private final Queue<FileTiming> rows = new ConcurrentLinkedQueue<FileTiming>();
+   /** hashing done outside of a row, by canonical file, added to the next row of the file */
+   private final Map<File, Long> pendingHashes = new ConcurrentHashMap<File, Long>();
+   private final JfrEvents events;
+
+   /**
+    * @param goal name of the goal execution
+    * @param events emits the rows as flight recorder events, may be null
+    */
+   BuildReport(String goal, JfrEvents events) {
+      this.goal = goal;
+      this.events = events;
+   }
+
+   /**
+    * Add to the phase of the row running on the current thread, if any.
+    *
+    * @param phase
+    * @param nanos
+    */
+   static void record(Phase phase, long nanos) {
+      FileTiming timing = CURRENT.get();
+      if (timing != null) {
+         timing.add(phase, nanos);
+      }
+   }
+
+   /**
+    * Set the result of the row running on the current thread, if any.
+    *
+    * @param result <code>success</code>, <code>skipped</code>, <code>failed</code> or
+    *           <code>timed-out</code>
+    */
+   static void result(String result) {
+      FileTiming timing = CURRENT.get();
+      if (timing != null) {
+         timing.result = result;
+      }
+   }
+
+   /**
+    * Note that the operation running on the current thread left its output unchanged.
+    */
+   static void unchanged() {
+      FileTiming timing = CURRENT.get();
+      if (timing != null) {
+         timing.unchanged = true;
+      }
+   }
+
+   /**
+    * @return the row running on the current thread, or null
+    */
+   static FileTiming current() {
+      return CURRENT.get();
+   }
+
+   /**
+    * Record the time spent hashing a file, on its row when it runs on the current thread,
+    * otherwise on the next row finished for the file.
+    *
+    * @param canonicalFile
+    * @param nanos
+    */
+   void hashed(File canonicalFile, long nanos) {
+      FileTiming timing = CURRENT.get();
+      if (timing != null && canonicalFile.equals(timing.file)) {
+         timing.add(Phase.HASH, nanos);
+         return;
+      }
+      Long previous = pendingHashes.get(canonicalFile);
+      pendingHashes.put(canonicalFile, previous == null ? nanos : previous + nanos);
+   }
+
+   /**
+    * Record the duration of a step done once for all files. Steps done several times
+    * add up.
+    *
+    * @param step
+    * @param nanos
+    */
+   synchronized void step(String step, long nanos) {
+      Long previous = steps.get(step);
+      steps.put(step, previous == null ? nanos : previous + nanos);
+   }
+
+   /**
+    * Start a row and make it the row of the current thread.
+    *
+    * @param operation
+    * @param canonicalFile the file, or null for work shared by several rows
+    * @param path the path of the file in the report
+    * @return
+    */
+   FileTiming start(String operation, File canonicalFile, String path) {
+      FileTiming timing = new FileTiming(operation, canonicalFile, path);
+      if (events != null && canonicalFile != null) {
+         timing.event = events.begin();
+      }
+      return resume(timing);
+   }
+
+   /**
+    * Make a stopped row the row of the current thread again.
+    *
+    * @param timing
+    * @return the timing
+    */
+   FileTiming resume(FileTiming timing) {
+      timing.started = System.nanoTime();
+      CURRENT.set(timing);
+      return timing;
+   }
+
+   /**
+    * Stop counting the time of the row, until it is resumed.
+    *
+    * @param timing
+    */
+   void stop(FileTiming timing) {
+      if (timing.started != 0) {
+         timing.elapsed += System.nanoTime() - timing.started;
+         timing.started = 0;
+      }
+      if (CURRENT.get() == timing) {
+         CURRENT.remove();
+      }
+   }
+
+   /**
+    * Stop the row and add it to the report.
+    *
+    * @param timing
+    */
+   void finish(FileTiming timing) {
+      stop(timing);
+      Long hash = timing.file == null ? null : pendingHashes.remove(timing.file);
+      if (hash != null) {
+         timing.add(Phase.HASH, hash);
+         timing.elapsed += hash;
+      }
+      if (timing.unchanged && "success".equals(timing.result)) {
+         timing.result = "unchanged";
+      }
+      rows.add(timing);
+      if (timing.event != null) {
+         events.commit(timing.event, timing);
+      }
+   }
+
+   /**
+    * @return the rows, by operation in the order they first ran, then by path
+    */
+   List<FileTiming> getRows() {
+      final List<String> operations = getOperations();
+      List<FileTiming> sorted = new ArrayList<FileTiming>(rows);
+      Collections.sort(sorted, new Comparator<FileTiming>() {
+         public int compare(FileTiming timing, FileTiming other) {
+            int order = operations.indexOf(timing.operation) - operations.indexOf(other.operation);
+            return order != 0 ? order : timing.path.compareTo(other.path);
+         }
+      });
+      return sorted;
+   }
+
+   private List<String> getOperations() {
+      List<String> operations = new ArrayList<String>();
+      for (FileTiming timing : rows) {
+         if (!operations.contains(timing.operation)) {
+            operations.add(timing.operation);
+         }
+      }
+      return operations;
+   }
+
+   /**
+    * @param operation
+    * @param count
+    * @return the rows of the operation taking the longest, longest first
+    */
+   List<FileTiming> getSlowest(String operation, int count) {
+      List<FileTiming> slowest = new ArrayList<FileTiming>();
+      for (FileTiming timing : rows) {
+         if (timing.operation.equals(operation)) {
+            slowest.add(timing);
+         }
+      }
+      Collections.sort(slowest, new Comparator<FileTiming>() {
+         public int compare(FileTiming timing, FileTiming other) {
+            return Long.compare(other.elapsed, timing.elapsed);
+         }
+      });
+      return slowest.subList(0, Math.min(count, slowest.size()));
+   }
+
+   /**
+    * @param operation
+    * @param phase the phase, or null for the whole row
+    * @return the sorted nanoseconds of the rows of the operation which ran the phase
+    */
+   private long[] getValues(String operation, Phase phase) {
+      long[] values = new long[rows.size()];
+      int n = 0;
+      for (FileTiming timing : rows) {
+         if (timing.operation.equals(operation)) {
+            long value = phase == null ? timing.elapsed : timing.get(phase);
+            if (phase == null || value > 0) {
+               values[n++] = value;
+            }
+         }
+      }
+      values = Arrays.copyOf(values, n);
+      Arrays.sort(values);
+      return values;
+   }
+
+   /**
+    * @param sorted
+    * @param percentile
+    * @return the nearest rank percentile, 0 when there are no values
+    */
+   static long percentile(long[] sorted, double percentile) {
+      if (sorted.length == 0) {
+         return 0;
+      }
+      int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+      return sorted[Math.max(0, rank - 1)];
+   }
+
+   /**
+    * @param slowest number of slowest files listed per operation
+    * @return a line per operation with the percentiles of the time spent per file, and
+    *         the slowest files
+    */
+   List<String> summarize(int slowest) {
+      List<String> lines = new ArrayList<String>();
+      for (String operation : getOperations()) {
+         long[] values = getValues(operation, null);
+         lines.add(operation + " per file: p50 " + format(percentile(values, 50)) + ", p90 "
+                  + format(percentile(values, 90)) + ", p99 " + format(percentile(values, 99)) + ", max "
+                  + format(percentile(values, 100)));
+         for (FileTiming timing : getSlowest(operation, slowest)) {
+            lines.add("  " + format(timing.elapsed) + " " + timing.path + " (" + timing.result + ")");
+         }
+      }
+      return lines;
+   }
+
+   private static String format(long nanos) {
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+      if (millis >= 10000) {
+         return TimeUnit.MILLISECONDS.toSeconds(millis) + "s";
+      }
+      return millis >= 100 ? millis + "ms" : String.format(Locale.ENGLISH, "%.1fms", nanos / 1e6);
+   }
+
+   /**
+    * Write the JSON report, with the steps, the percentiles of every phase per operation,
+    * the slowest files and all rows.
+    *
+    * @param file
+    * @param slowest number of slowest files listed per operation
+    * @throws IOException
+    */
+   void writeJson(File file, int slowest) throws IOException {
+      File temp = AtomicFile.createTemp(file);
+      boolean committed = false;
+      Writer out = null;
+      try {
+         out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+         out.write("{\n  \"goal\": " + quote(goal) + ",\n");
+         out.write("  \"startTime\": " + startMillis + ",\n");
+         out.write("  \"wallNanos\": " + (System.nanoTime() - startNanos) + ",\n");
+         out.write("  \"steps\": {");
+         String separator = "\n";
+         synchronized (this) {
+            for (Map.Entry<String, Long> step : steps.entrySet()) {
+               out.write(separator + "    " + quote(step.getKey()) + ": " + step.getValue());
+               separator = ",\n";
+            }
+         }
+         out.write("\n  },\n  \"operations\": [");
+         separator = "\n";
+         for (String operation : getOperations()) {
+            out.write(separator + "    {\n      \"operation\": " + quote(operation) + ",\n");
+            out.write("      \"results\": {");
+            Map<String, Integer> results = new LinkedHashMap<String, Integer>();
+            for (FileTiming timing : rows) {
+               if (timing.operation.equals(operation)) {
+                  Integer count = results.get(timing.result);
+                  results.put(timing.result, count == null ? 1 : count + 1);
+               }
+            }
+            String resultSeparator = "";
+            for (Map.Entry<String, Integer> result : results.entrySet()) {
+               out.write(resultSeparator + quote(result.getKey()) + ": " + result.getValue());
+               resultSeparator = ", ";
+            }
+            out.write("},\n      \"phases\": {\n");
+            for (Phase phase : Phase.values()) {
+               out.write("        " + quote(phase.getLabel()) + ": " + stats(getValues(operation, phase)) + ",\n");
+            }
+            out.write("        \"total\": " + stats(getValues(operation, null)) + "\n      },\n");
+            out.write("      \"slowest\": [");
+            String slowSeparator = "\n";
+            for (FileTiming timing : getSlowest(operation, slowest)) {
+               out.write(slowSeparator + "        {\"file\": " + quote(timing.path) + ", \"totalNanos\": "
+                        + timing.elapsed + "}");
+               slowSeparator = ",\n";
+            }
+            out.write("\n      ]\n    }");
+            separator = ",\n";
+         }
+         out.write("\n  ],\n  \"files\": [");
+         separator = "\n";
+         for (FileTiming timing : getRows()) {
+            out.write(separator + "    {\"operation\": " + quote(timing.operation) + ", \"file\": "
+                     + quote(timing.path) + ", \"result\": " + quote(timing.result));
+            for (Phase phase : Phase.values()) {
+               out.write(", \"" + phase.getLabel() + "Nanos\": " + timing.get(phase));
+            }
+            out.write(", \"totalNanos\": " + timing.elapsed + "}");
+            separator = ",\n";
+         }
+         out.write("\n  ]\n}\n");
+         out.close();
+         out = null;
+         AtomicFile.commit(temp, file);
+         committed = true;
+      } finally {
+         IOUtil.close(out);
+         if (!committed) {
+            AtomicFile.discard(temp);
+         }
+      }
+   }
+
+   /**
+    * Write a CSV line per row, with a header line.
+    *
+    * @param file
+    * @throws IOException
+    */
+   void writeCsv(File file) throws IOException {
+      File temp = AtomicFile.createTemp(file);
+      boolean committed = false;
+      Writer out = null;
+      try {
+         out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+         out.write("operation,file,result");
+         for (Phase phase : Phase.values()) {
+            out.write("," + phase.getLabel() + "_ns");
+         }
+         out.write(",total_ns\n");
+         for (FileTiming timing : getRows()) {
+            out.write(timing.operation + "," + csv(timing.path) + "," + timing.result);
+            for (Phase phase : Phase.values()) {
+               out.write("," + timing.get(phase));
+            }
+            out.write("," + timing.elapsed + "\n");
+         }
+         out.close();
+         out = null;
+         AtomicFile.commit(temp, file);
+         committed = true;
+      } finally {
+         IOUtil.close(out);
+         if (!committed) {
+            AtomicFile.discard(temp);
+         }
+      }
+   }
+
+   private static String stats(long[] sorted) {
+      long sum = 0;
+      for (long value : sorted) {
+         sum += value;
+      }
+      StringBuilder stats = new StringBuilder("{\"count\": " + sorted.length + ", \"sumNanos\": " + sum);
+      for (double percentile : PERCENTILES) {
+         stats.append(", \"p" + (int) percentile + "Nanos\": " + percentile(sorted, percentile));
+      }
+      return stats.append(", \"maxNanos\": " + percentile(sorted, 100) + "}").toString();
+   }
+
+   private static String quote(String text) {
+      if (text == null) {
+         return "null";
+      }
+      StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+      for (int i = 0, n = text.length(); i < n; i++) {
+         char c = text.charAt(i);
+         if (c == '"' || c == '\\') {
+            quoted.append('\\').append(c);
+         } else if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+         } else {
+            quoted.append(c);
+         }
+      }
+      return quoted.append('"').toString();
+   }
+
+   private static String csv(String text) {
+      if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+         return text;
+      }
+      return '"' + text.replace("\"", "\"\"") + '"';
+   }
+
+   /**
+    * The timing of one operation run on one file. A row is only changed by the thread
+    * running the operation.
+    */
+   static class FileTiming {
+      final String operation;
+      final File file;
+      final String path;
+      private final long[] nanos = new long[Phase.values().length];
+      /** time between start and finish, without the time the row was stopped */
+      private long elapsed;
+      /** System.nanoTime() the row was started or resumed at, 0 while stopped */
+      private long started;
+      private String result = "failed";
+      private boolean unchanged;
+      private Object event;
+
+      FileTiming(String operation, File file, String path) {
+         this.operation = operation;
+         this.file = file;
+         this.path = path;
+      }
+
+      void add(Phase phase, long nanos) {
+         this.nanos[phase.ordinal()] += nanos;
+      }
+
+      long get(Phase phase) {
+         return nanos[phase.ordinal()];
+      }
+
+      /**
+       * @return the nanoseconds recorded in all phases, see {@link #addRest(Phase, long, long)}
+       */
+      long getRecorded() {
+         long recorded = 0;
+         for (long value : nanos) {
+            recorded += value;
+         }
+         return recorded;
+      }
+
+      /**
+       * Add the part of a duration not recorded in other phases meanwhile to the phase.
+       *
+       * @param phase
+       * @param duration
+       * @param recordedBefore {@link #getRecorded()} at the start of the duration
+       */
+      void addRest(Phase phase, long duration, long recordedBefore) {
+         add(phase, Math.max(0, duration - (getRecorded() - recordedBefore)));
+      }
+
+      /**
+       * Add an equal share of the phases and elapsed time of work done for several rows.
+       *
+       * @param shared
+       * @param rows number of rows sharing the work
+       */
+      void addShare(FileTiming shared, int rows) {
+         for (int i = 0; i < nanos.length; i++) {
+            nanos[i] += shared.nanos[i] / rows;
+         }
+         elapsed += shared.elapsed / rows;
+      }
+
+      void setResult(String result) {
+         this.result = result;
+      }
+
+      String getResult() {
+         return result;
+      }
+
+      long getElapsed() {
+         return elapsed;
+      }
+   }
+}
@@ -0,0 +1,117 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Exclusive use of a cache file by one goal execution at a time: by the modules of a
+ * parallel reactor build running in the same JVM, and by builds in other processes. The
+ * lock is held on a <code>.lock</code> file next to the cache file, which is left behind.
+ * A thread may acquire a lock it already holds.
+ */
+class CacheLock {
+
+   /** one lock per lock file, as file locks are held by the whole JVM */
+   private static final ConcurrentMap<File, ReentrantLock> LOCKS = new ConcurrentHashMap<File, ReentrantLock>();
+
+   private final ReentrantLock lock;
+   private RandomAccessFile lockFile;
+   private FileLock fileLock;
+
+   private CacheLock(ReentrantLock lock) {
+      this.lock = lock;
+   }
+
+   /**
+    * Wait until no other goal execution uses the file, then lock it.
+    *
+    * @param file the cache file
+    * @param log
+    * @return the lock, to be released by the same thread
+    * @throws IOException
+    */
+   static CacheLock acquire(File file, Log log) throws IOException {
+      File path = new File(file.getPath() + ".lock").getCanonicalFile();
+      ReentrantLock lock = LOCKS.get(path);
+      if (lock == null) {
+         ReentrantLock created = new ReentrantLock();
+         lock = LOCKS.putIfAbsent(path, created);
+         if (lock == null) {
+            lock = created;
+         }
+      }
+      if (!lock.tryLock()) {
+         log.info("Waiting for " + file + ", used by another goal execution");
+         try {
+            lock.lockInterruptibly();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + file);
+         }
+      }
+      CacheLock cacheLock = new CacheLock(lock);
+      if (lock.getHoldCount() == 1) {
+         try {
+            cacheLock.lockFile(path, file, log);
+         } catch (IOException e) {
+            cacheLock.release();
+            throw e;
+         }
+      }
+      return cacheLock;
+   }
+
+   private void lockFile(File path, File file, Log log) throws IOException {
+      path.getParentFile().mkdirs();
+      lockFile = new RandomAccessFile(path, "rw");
+      try {
+         fileLock = lockFile.getChannel().tryLock();
+         if (fileLock == null) {
+            log.info("Waiting for " + file + ", used by another build");
+            fileLock = lockFile.getChannel().lock();
+         }
+      } catch (IOException e) {
+         // file systems without locking, like some network file systems
+         log.debug("Cannot lock " + path + ": " + e.getMessage());
+      }
+   }
+
+   /**
+    * Release the lock, on the thread which acquired it.
+    */
+   void release() {
+      try {
+         if (fileLock != null) {
+            fileLock.release();
+         }
+      } catch (IOException e) {
+         // closing the file releases it as well
+      } finally {
+         try {
+            if (lockFile != null) {
+               lockFile.close();
+            }
+         } catch (IOException e) {
+            // nothing left to release
+         }
+         lock.unlock();
+      }
+   }
+}
@@ -0,0 +1,186 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Builds the {@link ModuleDependencyGraph} of the scanned files for an operation, resolving
+ * their imports and includes with the module index of the goal execution, and decides
+ * which files changed since the hash cache was stored.
+ */
+class DependencyGraphBuilder {
+
+   private final YangHelperMojo operation;
+   private final ExecutionContext context;
+   private final Log log;
+
+   DependencyGraphBuilder(YangHelperMojo operation, ExecutionContext context) {
+      this.operation = operation;
+      this.context = context;
+      this.log = operation.getLog();
+   }
+
+   /**
+    * Hash the files and read their dependencies, reusing the dependencies stored in the
+    * cache for unchanged files, then invalidate the changed files and their dependents.
+    * Dependencies found outside the scanned files, for example on the YANG_MODPATH, are
+    * hashed as well and recorded in the cache so that their changes are noticed. An unchanged
+    * file counts as changed when one of its dependencies no longer resolves to the file it
+    * was processed with, because that file was deleted, renamed or is now shadowed.
+    *
+    * @param files
+    * @param hashCache
+    * @return
+    * @throws IOException
+    */
+   ModuleDependencyGraph build(List<File> files, FileHashCache hashCache) throws IOException {
+      ModuleDependencyGraph graph = new ModuleDependencyGraph();
+      List<File> changed = new ArrayList<File>();
+      for (int i = 0, n = files.size(); i < n; i++) {
+         File file = files.get(i).getCanonicalFile();
+         String path = context.getCachePath(file);
+         String hash = context.getFingerprint(file, hashCache, path).hash;
+         List<String> dependencies = hashCache.getDependencies(path);
+         if (!hash.equals(hashCache.get(path))) {
+            changed.add(file);
+            dependencies = null;
+         }
+         if (dependencies == null) {
+            dependencies = readDependencies(file);
+         }
+         graph.addFile(file, dependencies);
+      }
+
+      YangModuleResolver resolver = new YangModuleResolver(operation.getModuleIndex(), operation.getEncoding());
+      Set<File> externalFiles = new HashSet<File>();
+      List<File> scanned = new ArrayList<File>(graph.getFiles());
+      for (File file : scanned) {
+         addDependencyEdges(graph, file, resolver, hashCache, externalFiles, changed);
+      }
+      Set<File> contentChanged = new HashSet<File>(changed);
+      for (File file : scanned) {
+         List<String> resolved = hashCache.getResolvedDependencies(context.getCachePath(file));
+         if (resolved != null && !contentChanged.contains(file) && !resolved.equals(graph.getResolvedPaths(file))) {
+            log.debug("Dependencies of " + file + " resolve to other files");
+            changed.add(file);
+         }
+      }
+
+      int invalidated = graph.invalidate(changed);
+      log.info(operation.getOperation() + ": " + changed.size() + " changed file(s), " + invalidated
+               + " file(s) to process including dependents");
+      return graph;
+   }
+
+   /**
+    * Update the graph of the last execution with the new content of changed files, see
+    * {@link YangHelperMojo#rerunOperations(List, List, Collection, boolean)}. Only the edges of the changed
+    * files are read again, the index resolving the imports is the same.
+    *
+    * @param graph
+    * @param changed the changed canonical files, fingerprinted again
+    * @param hashCache
+    * @throws IOException
+    */
+   void update(ModuleDependencyGraph graph, Set<File> changed, FileHashCache hashCache) throws IOException {
+      YangModuleResolver resolver = new YangModuleResolver(operation.getModuleIndex(), operation.getEncoding());
+      Set<File> externalFiles = new HashSet<File>();
+      // new imports of the changed files, which are processed anyway
+      List<File> changedDependencies = new ArrayList<File>();
+      for (File file : changed) {
+         if (graph.contains(file)) {
+            graph.removeFile(file);
+            if (file.isFile()) {
+               graph.addFile(file, readDependencies(file));
+               addDependencyEdges(graph, file, resolver, hashCache, externalFiles, changedDependencies);
+            }
+         } else if (file.isFile()) {
+            // a module on the YANG_MODPATH, record its new content if it is a dependency
+            String path = context.getCachePath(file);
+            if (hashCache.get(path) != null) {
+               hashCache.put(path, context.getFingerprint(file, hashCache, path));
+            }
+         }
+      }
+   }
+
+   /**
+    * Add the edges from a file to the files its dependencies resolve to, and record their
+    * cache paths in the graph, see {@link ModuleDependencyGraph#setResolvedPaths(File, List)}.
+    * The fingerprints of resolved files which are not scanned, like the modules on the
+    * YANG_MODPATH, are put into the hash cache.
+    *
+    * @param graph
+    * @param file
+    * @param resolver
+    * @param hashCache
+    * @param externalFiles the resolved files which are not scanned, recorded once
+    * @param changed receives the resolved files which are not scanned and changed
+    * @throws IOException
+    */
+   private void addDependencyEdges(ModuleDependencyGraph graph, File file, YangModuleResolver resolver,
+                  FileHashCache hashCache, Set<File> externalFiles, List<File> changed) throws IOException {
+      List<String> dependencies = graph.getDependencies(file);
+      List<String> resolvedPaths = new ArrayList<String>(dependencies.size());
+      for (String dependency : dependencies) {
+         File dependencyFile = resolver.findFile(ModuleDependencyGraph.getModuleName(dependency),
+                  ModuleDependencyGraph.getRevision(dependency), file);
+         if (dependencyFile == null) {
+            resolvedPaths.add("");
+            continue;
+         }
+         dependencyFile = dependencyFile.getCanonicalFile();
+         String path = context.getCachePath(dependencyFile);
+         resolvedPaths.add(path);
+         graph.addEdge(file, dependencyFile);
+         if (!graph.contains(dependencyFile) && externalFiles.add(dependencyFile)) {
+            Fingerprint fingerprint = context.getFingerprint(dependencyFile, hashCache, path);
+            if (!fingerprint.hash.equals(hashCache.get(path))) {
+               changed.add(dependencyFile);
+            }
+            hashCache.put(path, fingerprint);
+         }
+      }
+      graph.setResolvedPaths(file, resolvedPaths);
+   }
+
+   /**
+    * Read the declared dependencies of a file once per goal execution. A file with a syntax
+    * error has none, the error is kept in the context for the syntax check.
+    *
+    * @param file canonical file
+    * @return
+    * @throws IOException
+    */
+   List<String> readDependencies(File file) throws IOException {
+      List<String> dependencies = context.dependencies.get(file);
+      if (dependencies == null) {
+         try {
+            dependencies = ModuleDependencyGraph.readDependencies(YangParser.parseFile(file, operation.getEncoding()));
+         } catch (YangParseException e) {
+            log.debug("Cannot read dependencies: " + e.getMessage());
+            context.syntaxErrors.put(file, e);
+            dependencies = Collections.emptyList();
+         }
+         context.dependencies.put(file, dependencies);
+      }
+      return dependencies;
+   }
+}
@@ -0,0 +1,156 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State shared by the operations of one goal execution.
+ */
+class ExecutionContext {
+   final String basedirPath;
+   /** fingerprint per canonical file, dropped when an operation rewrites the file */
+   final Map<File, Fingerprint> fingerprints = new ConcurrentHashMap<File, Fingerprint>();
+   /** canonical files rewritten by an operation */
+   final Set<File> rewritten = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+   /** attributes read by the scan per canonical file, used by the first fingerprint only */
+   final Map<File, BasicFileAttributes> attributes = new ConcurrentHashMap<File, BasicFileAttributes>();
+   /** declared dependencies per canonical file, see {@link ModuleDependencyGraph} */
+   final Map<File, List<String>> dependencies = new ConcurrentHashMap<File, List<String>>();
+   /** canonical file of every scanned file, also of the canonical file itself */
+   final Map<File, File> canonicalFiles = new ConcurrentHashMap<File, File>();
+   /** syntax errors found while reading the dependencies, per canonical file */
+   final Map<File, YangParseException> syntaxErrors = new ConcurrentHashMap<File, YangParseException>();
+   /** canonical copies of a canonical file, processed through it, see {@link FileDeduplicator} */
+   final Map<File, List<File>> duplicates = new ConcurrentHashMap<File, List<File>>();
+   /** per file timings, null unless buildReport or jfrEvents is enabled */
+   final BuildReport report;
+
+   ExecutionContext(String basedirPath, BuildReport report) {
+      this.basedirPath = basedirPath;
+      this.report = report;
+   }
+
+   /**
+    * A context for another execution on the same files, keeping what was read of them.
+    *
+    * @param previous
+    * @param report
+    */
+   ExecutionContext(ExecutionContext previous, BuildReport report) {
+      this(previous.basedirPath, report);
+      fingerprints.putAll(previous.fingerprints);
+      dependencies.putAll(previous.dependencies);
+      canonicalFiles.putAll(previous.canonicalFiles);
+      syntaxErrors.putAll(previous.syntaxErrors);
+   }
+
+   /**
+    * Forget what was read of a changed file.
+    *
+    * @param canonicalFile
+    */
+   void forget(File canonicalFile) {
+      fingerprints.remove(canonicalFile);
+      attributes.remove(canonicalFile);
+      dependencies.remove(canonicalFile);
+      syntaxErrors.remove(canonicalFile);
+   }
+
+   /**
+    * Record the canonical files of the scanned files, and their scanned attributes.
+    *
+    * @param files
+    * @param scannedAttributes the scanned attributes of the files, may be null
+    * @return the hash cache paths of the files
+    * @throws IOException
+    */
+   List<String> addFiles(List<File> files, Map<File, BasicFileAttributes> scannedAttributes) throws IOException {
+      List<String> paths = new ArrayList<String>(files.size());
+      for (File file : files) {
+         File canonicalFile = file.getCanonicalFile();
+         canonicalFiles.put(file, canonicalFile);
+         canonicalFiles.put(canonicalFile, canonicalFile);
+         BasicFileAttributes fileAttributes = scannedAttributes == null ? null : scannedAttributes.get(file);
+         if (fileAttributes != null) {
+            attributes.put(canonicalFile, fileAttributes);
+         }
+         paths.add(getCachePath(canonicalFile));
+      }
+      return paths;
+   }
+
+   /**
+    * @param canonicalFile
+    * @return the key of the file in the hash cache, relative to the base directory when it is inside it.
+    *         A file of a sibling directory sharing the name prefix, like <code>/a/project-old</code> next
+    *         to <code>/a/project</code>, keeps its absolute path.
+    */
+   String getCachePath(File canonicalFile) {
+      String canonicalPath = canonicalFile.getPath();
+      if (basedirPath.length() == 0) {
+         return canonicalPath;
+      }
+      String prefix = basedirPath.endsWith(File.separator) ? basedirPath : basedirPath + File.separator;
+      if (canonicalPath.startsWith(prefix)) {
+         return canonicalPath.substring(basedirPath.length());
+      }
+      return canonicalPath;
+   }
+
+   /**
+    * @param canonicalFile
+    * @param hashCache the cache of the operation, may be null
+    * @param path the cache path of the file
+    * @return the fingerprint of the file, computed once per goal execution unless the file is
+    *         rewritten. The file is only hashed when its size or modification time differ from
+    *         the fingerprint in the cache.
+    * @throws IOException
+    */
+   Fingerprint getFingerprint(File canonicalFile, FileHashCache hashCache, String path) throws IOException {
+      Fingerprint fingerprint = fingerprints.get(canonicalFile);
+      if (fingerprint == null) {
+         Fingerprint previous = hashCache == null ? null : hashCache.getFingerprint(path);
+         BasicFileAttributes fileAttributes = attributes.remove(canonicalFile);
+         long start = System.nanoTime();
+         fingerprint = fileAttributes == null ? Fingerprint.of(canonicalFile, previous)
+                  : Fingerprint.of(canonicalFile, fileAttributes, previous);
+         if (report != null) {
+            report.hashed(canonicalFile, System.nanoTime() - start);
+         }
+         fingerprints.put(canonicalFile, fingerprint);
+      }
+      return fingerprint;
+   }
+
+   /**
+    * Start the row of the operation on the file in the build report.
+    *
+    * @param operation
+    * @param file
+    * @return
+    */
+   BuildReport.FileTiming startTiming(YangHelperMojo.OperationType operation, File file) {
+      File canonicalFile = canonicalFiles.get(file);
+      if (canonicalFile == null) {
+         canonicalFile = file.getAbsoluteFile();
+      }
+      return report.start(operation.name(), canonicalFile, getCachePath(canonicalFile));
+   }
+}
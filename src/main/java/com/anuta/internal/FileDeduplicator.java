@@ -0,0 +1,242 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Processes only one of the scanned files with the same content whose imports and includes
+ * resolve to files with the same content, and gives the others its results, see the
+ * deduplicate parameter of {@link YangHelperMojo}.
+ */
+class FileDeduplicator {
+
+   private final YangHelperMojo mojo;
+   private final ExecutionContext context;
+   private final Log log;
+
+   /**
+    * @param mojo the goal execution, which resolves the imports with its module index
+    * @param context
+    */
+   FileDeduplicator(YangHelperMojo mojo, ExecutionContext context) {
+      this.mojo = mojo;
+      this.context = context;
+      this.log = mojo.getLog();
+   }
+
+   /**
+    * Leave only one file of every group of files with the same content, whose imports and
+    * includes resolve to files with the same content as well, in the files to process. The
+    * others are recorded in the context and given its results, see
+    * {@link #shareResults(List, Set, Map, OperationRun)}.
+    *
+    * @param files
+    * @param runs
+    * @return the files to process
+    * @throws IOException
+    */
+   List<File> deduplicate(List<File> files, List<OperationRun> runs) throws IOException {
+      FileHashCache hashCache = runs.get(0).hashCache;
+      Map<String, List<File>> groups = new HashMap<String, List<File>>();
+      for (File file : files) {
+         File canonicalFile = context.canonicalFiles.get(file);
+         String hash = context.getFingerprint(canonicalFile, hashCache,
+                  context.getCachePath(canonicalFile)).hash;
+         List<File> group = groups.get(hash);
+         if (group == null) {
+            group = new ArrayList<File>(1);
+            groups.put(hash, group);
+         }
+         group.add(file);
+      }
+
+      // the file processed instead of each copy
+      Map<File, File> originals = new HashMap<File, File>();
+      YangModuleResolver resolver = null;
+      DependencyGraphBuilder dependencies = null;
+      for (List<File> group : groups.values()) {
+         if (group.size() < 2) {
+            continue;
+         }
+         if (resolver == null) {
+            resolver = new YangModuleResolver(mojo.getModuleIndex(), mojo.getEncoding());
+            dependencies = new DependencyGraphBuilder(mojo, context);
+         }
+         Map<String, File> byDependencies = new HashMap<String, File>();
+         for (File file : group) {
+            File canonicalFile = context.canonicalFiles.get(file);
+            String key = getResolvedDependenciesKey(canonicalFile, resolver, dependencies, hashCache);
+            File original = byDependencies.get(key);
+            if (original == null) {
+               byDependencies.put(key, file);
+            } else if (!context.canonicalFiles.get(original).equals(canonicalFile)) {
+               originals.put(file, original);
+            }
+         }
+      }
+      if (originals.isEmpty()) {
+         return files;
+      }
+
+      List<File> distinct = new ArrayList<File>(files.size() - originals.size());
+      for (File file : files) {
+         File original = originals.get(file);
+         if (original == null) {
+            distinct.add(file);
+            continue;
+         }
+         File canonicalOriginal = context.canonicalFiles.get(original);
+         List<File> duplicates = context.duplicates.get(canonicalOriginal);
+         if (duplicates == null) {
+            duplicates = new ArrayList<File>(1);
+            context.duplicates.put(canonicalOriginal, duplicates);
+         }
+         duplicates.add(context.canonicalFiles.get(file));
+         log.debug(file + " is a copy of " + original);
+      }
+      log.info(originals.size() + " file(s) are copies of other files and get their results, "
+               + distinct.size() + " file(s) to process");
+      return distinct;
+   }
+
+   /**
+    * @param canonicalFile
+    * @param resolver
+    * @param dependencies reads the dependencies of the files
+    * @param hashCache the cache of the first operation, may be null
+    * @return the sorted hashes of the files the imports and includes of the file resolve to,
+    *         transitively
+    * @throws IOException
+    */
+   private String getResolvedDependenciesKey(File canonicalFile, YangModuleResolver resolver,
+                  DependencyGraphBuilder dependencies, FileHashCache hashCache) throws IOException {
+      Set<File> resolved = new HashSet<File>();
+      List<File> pending = new ArrayList<File>();
+      pending.add(canonicalFile);
+      while (!pending.isEmpty()) {
+         File file = pending.remove(pending.size() - 1);
+         for (String dependency : dependencies.readDependencies(file)) {
+            File dependencyFile = resolver.findFile(ModuleDependencyGraph.getModuleName(dependency),
+                     ModuleDependencyGraph.getRevision(dependency), file);
+            if (dependencyFile == null) {
+               continue;
+            }
+            dependencyFile = dependencyFile.getCanonicalFile();
+            if (!dependencyFile.equals(canonicalFile) && resolved.add(dependencyFile)) {
+               pending.add(dependencyFile);
+            }
+         }
+      }
+      List<String> hashes = new ArrayList<String>(resolved.size());
+      for (File file : resolved) {
+         hashes.add(context.getFingerprint(file, hashCache, context.getCachePath(file)).hash);
+      }
+      Collections.sort(hashes);
+      return hashes.toString();
+   }
+
+   /**
+    * Give the copies of the files the operation was performed on its results, see
+    * {@link #deduplicate(List, List)}.
+    *
+    * @param files the files the operation was performed on
+    * @param passedFiles the canonical files it did not fail on
+    * @param copies the copies per canonical file which passed the operations so far, updated
+    *           to those which pass this operation as well
+    * @param run
+    * @return the copies which did not pass
+    */
+   List<File> shareResults(List<File> files, Set<File> passedFiles, Map<File, List<File>> copies,
+                  OperationRun run) {
+      List<File> notPassed = new ArrayList<File>();
+      for (File file : files) {
+         File canonicalFile = context.canonicalFiles.get(file);
+         List<File> fileCopies = copies.get(canonicalFile);
+         if (fileCopies == null) {
+            continue;
+         }
+         boolean success = passedFiles.contains(canonicalFile);
+         List<File> passedCopies = new ArrayList<File>(fileCopies.size());
+         for (File copy : fileCopies) {
+            if (shareResult(canonicalFile, success, copy, run)) {
+               passedCopies.add(copy);
+            }
+         }
+         if (passedCopies.size() < fileCopies.size()) {
+            List<File> failedCopies = new ArrayList<File>(fileCopies);
+            failedCopies.removeAll(passedCopies);
+            notPassed.addAll(failedCopies);
+         }
+         copies.put(canonicalFile, passedCopies);
+      }
+      return notPassed;
+   }
+
+   /**
+    * Give a copy of a file the result of the operation on the file, unless the copy is up
+    * to date.
+    *
+    * @param canonicalFile the file the operation was performed on
+    * @param success false when the operation failed on it
+    * @param copy the canonical copy
+    * @param run
+    * @return false when the copy failed
+    */
+   private boolean shareResult(File canonicalFile, boolean success, File copy, OperationRun run) {
+      YangHelperMojo operation = run.mojo;
+      Log log = operation.getLog();
+      BuildReport.FileTiming timing = context.report == null ? null : context.startTiming(operation.getOperation(), copy);
+      try {
+         String path = context.getCachePath(copy);
+         Fingerprint original = context.getFingerprint(copy, run.hashCache, path);
+         long lookup = System.nanoTime();
+         boolean upToDate = run.isUpToDate(copy, original.hash, path);
+         BuildReport.record(BuildReport.Phase.LOOKUP, System.nanoTime() - lookup);
+         if (upToDate) {
+            run.hashCache.refresh(path, original);
+            log.debug("File Skipped: " + copy);
+            run.resultCollector.skipped();
+            return true;
+         }
+         long start = System.nanoTime();
+         operation.copyResult(canonicalFile, copy, success);
+         if (!success) {
+            log.error("Failed to " + operation.getOperation().name().toLowerCase() + " file " + copy + ", a copy of "
+                     + canonicalFile);
+            run.resultCollector.failed(copy);
+            return false;
+         }
+         log.info(operation.getOperation() + " file: " + copy + ", a copy of " + canonicalFile);
+         run.resultCollector.succeeded();
+         run.putResult(path, copy, original, FileHashCache.Result.SUCCESS, System.nanoTime() - start);
+         operation.recordRewrite(copy, original, true, run.hashCache, path, context);
+         return true;
+      } catch (IOException e) {
+         run.resultCollector.failed(copy);
+         log.warn(e);
+         return false;
+      } finally {
+         if (timing != null) {
+            context.report.finish(timing);
+         }
+      }
+   }
+}
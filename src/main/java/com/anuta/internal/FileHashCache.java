@@ -0,0 +1,433 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Thread safe path to content hash cache shared by the worker threads of a goal.
+ * Each entry also remembers the size and modification time of the hashed file, see
+ * {@link Fingerprint}, the modules the file imports or includes and the files they resolved
+ * to, see {@link ModuleDependencyGraph}, the configuration the file was processed with, see
+ * {@link YangHelperMojo#getConfigurationKey()}, and how long the operation took and
+ * whether it succeeded.
+ * <p>
+ * The cache is stored in the target directory in a binary format: a header with a
+ * magic number and the format version, the distinct configurations, the entries sorted
+ * by path, each path stored as the length of the prefix it shares with the previous
+ * path and the rest, numbers as variable length integers, and a CRC32 of all of it. A cache file of another version, or a
+ * damaged one, is ignored.
+ */
+class FileHashCache {
+
+   /** "YYHC" */
+   private static final int MAGIC = 0x59594843;
+
+   static final int VERSION = 2;
+
+   /**
+    * Outcome of the last operation on a file.
+    */
+   enum Result {
+      /** not processed, only hashed, for example a module found on the YANG_MODPATH */
+      NONE,
+      SUCCESS,
+      FAILURE
+   }
+
+   private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+   /** paths still in use, see {@link #prune()} */
+   private final Set<String> live = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+   /** configuration recorded with new entries */
+   private volatile String configuration;
+
+   /**
+    * Read a cache file written by {@link #write(File)}.
+    *
+    * @param file
+    * @return
+    * @throws IOException if the file cannot be read, is damaged or of another version
+    */
+   static FileHashCache read(File file) throws IOException {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      if (bytes.length < 12) {
+         throw new IOException("Truncated hash cache " + file);
+      }
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length - 8);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      in.skip(bytes.length - 8);
+      if (in.readLong() != crc.getValue()) {
+         throw new IOException("Damaged hash cache " + file);
+      }
+
+      try {
+         return read(new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8)), file);
+      } catch (RuntimeException e) {
+         throw new IOException("Damaged hash cache " + file, e);
+      }
+   }
+
+   private static FileHashCache read(DataInputStream in, File file) throws IOException {
+      if (in.readInt() != MAGIC) {
+         throw new IOException("Not a hash cache " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+         throw new IOException("Hash cache " + file + " has version " + version + ", expected " + VERSION);
+      }
+      String[] configurations = new String[in.readInt()];
+      for (int i = 0; i < configurations.length; i++) {
+         configurations[i] = in.readUTF();
+      }
+      FileHashCache cache = new FileHashCache();
+      String path = "";
+      for (int i = 0, n = in.readInt(); i < n; i++) {
+         path = path.substring(0, in.readUnsignedShort()) + in.readUTF();
+         String hash = XXHash64.toHex(in.readLong());
+         long size = readVarLong(in);
+         long lastModified = readVarLong(in) - 1;
+         int configurationIndex = (int) readVarLong(in) - 1;
+         long duration = readVarLong(in);
+         Result result = Result.values()[in.readByte()];
+         List<String> dependencies = null;
+         List<String> resolved = null;
+         int dependencyCount = (int) readVarLong(in) - 1;
+         if (dependencyCount >= 0) {
+            dependencies = new ArrayList<String>(dependencyCount);
+            resolved = new ArrayList<String>(dependencyCount);
+            for (int j = 0; j < dependencyCount; j++) {
+               dependencies.add(in.readUTF());
+               resolved.add(in.readUTF());
+            }
+         }
+         cache.entries.put(path, new Entry(new Fingerprint(hash, size, lastModified),
+                  configurationIndex < 0 ? null : configurations[configurationIndex], dependencies, resolved,
+                  result, duration));
+      }
+      return cache;
+   }
+
+   /**
+    * Write the cache through a temporary file renamed onto the file.
+    *
+    * @param file
+    * @throws IOException
+    */
+   void write(File file) throws IOException {
+      Map<String, Integer> configurationIndexes = new HashMap<String, Integer>();
+      List<String> configurations = new ArrayList<String>();
+      Map<String, Entry> snapshot = new TreeMap<String, Entry>(entries);
+      for (Entry entry : snapshot.values()) {
+         if (entry.configuration != null && !configurationIndexes.containsKey(entry.configuration)) {
+            configurationIndexes.put(entry.configuration, configurations.size());
+            configurations.add(entry.configuration);
+         }
+      }
+
+      File temp = AtomicFile.createTemp(file);
+      boolean committed = false;
+      DataOutputStream out = null;
+      try {
+         CheckedOutputStream checked = new CheckedOutputStream(
+                  new BufferedOutputStream(new FileOutputStream(temp)), new CRC32());
+         out = new DataOutputStream(checked);
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(configurations.size());
+         for (String configuration : configurations) {
+            out.writeUTF(configuration);
+         }
+         out.writeInt(snapshot.size());
+         String previous = "";
+         for (Map.Entry<String, Entry> mapEntry : snapshot.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            String path = mapEntry.getKey();
+            int common = Math.min(commonPrefixLength(previous, path), 0xFFFF);
+            out.writeShort(common);
+            out.writeUTF(path.substring(common));
+            previous = path;
+            out.writeLong(Long.parseUnsignedLong(entry.fingerprint.hash, 16));
+            writeVarLong(out, entry.fingerprint.size);
+            // -1 for unknown is stored as 0, see Fingerprint.UNKNOWN
+            writeVarLong(out, entry.fingerprint.lastModified + 1);
+            writeVarLong(out, entry.configuration == null ? 0 : configurationIndexes.get(entry.configuration) + 1);
+            writeVarLong(out, entry.duration);
+            out.writeByte(entry.result.ordinal());
+            if (entry.dependencies == null) {
+               writeVarLong(out, 0);
+            } else {
+               writeVarLong(out, entry.dependencies.size() + 1);
+               for (int i = 0; i < entry.dependencies.size(); i++) {
+                  out.writeUTF(entry.dependencies.get(i));
+                  out.writeUTF(entry.resolved.get(i));
+               }
+            }
+         }
+         out.flush();
+         out.writeLong(checked.getChecksum().getValue());
+         out.close();
+         AtomicFile.commit(temp, file);
+         committed = true;
+      } finally {
+         if (out != null) {
+            try {
+               out.close();
+            } catch (IOException e) {
+               // already reported by the first close
+            }
+         }
+         if (!committed) {
+            AtomicFile.discard(temp);
+         }
+      }
+   }
+
+   /**
+    * Write a non negative number in 7 bit groups, low group first.
+    */
+   private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+      if (value < 0) {
+         throw new IOException("Negative value in hash cache: " + value);
+      }
+      while ((value & ~0x7FL) != 0) {
+         out.writeByte((int) (value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      out.writeByte((int) value);
+   }
+
+   private static long readVarLong(DataInputStream in) throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+         int b = in.readUnsignedByte();
+         value |= (long) (b & 0x7F) << shift;
+         if ((b & 0x80) == 0) {
+            return value;
+         }
+      }
+      throw new IOException("Malformed number in hash cache");
+   }
+
+   private static int commonPrefixLength(String a, String b) {
+      int n = Math.min(a.length(), b.length());
+      int i = 0;
+      while (i < n && a.charAt(i) == b.charAt(i)) {
+         i++;
+      }
+      return i;
+   }
+
+   /**
+    * Set the configuration recorded with the entries put from now on.
+    *
+    * @param configuration
+    */
+   void setConfiguration(String configuration) {
+      this.configuration = configuration;
+   }
+
+   String get(String path) {
+      Entry entry = entries.get(path);
+      return entry == null ? null : entry.fingerprint.hash;
+   }
+
+   /**
+    * @param path
+    * @param hash
+    * @return true when the operation succeeded on the path with this hash and the current configuration.
+    */
+   boolean isCurrent(String path, String hash) {
+      Entry entry = entries.get(path);
+      return entry != null && entry.result == Result.SUCCESS && entry.fingerprint.hash.equals(hash)
+               && (configuration == null ? entry.configuration == null : configuration.equals(entry.configuration));
+   }
+
+   /**
+    * @param path
+    * @return the fingerprint recorded for the path, or null.
+    */
+   Fingerprint getFingerprint(String path) {
+      Entry entry = entries.get(path);
+      return entry == null ? null : entry.fingerprint;
+   }
+
+   /**
+    * @param path
+    * @return the dependencies recorded with the hash, or null when unknown.
+    */
+   List<String> getDependencies(String path) {
+      Entry entry = entries.get(path);
+      return entry == null ? null : entry.dependencies;
+   }
+
+   /**
+    * @param path
+    * @return the cache paths of the files the dependencies resolved to, in the order of
+    *         {@link #getDependencies(String)}, empty for a dependency which did not resolve,
+    *         or null when unknown.
+    */
+   List<String> getResolvedDependencies(String path) {
+      Entry entry = entries.get(path);
+      return entry == null ? null : entry.resolved;
+   }
+
+   /**
+    * @param path
+    * @return how long the last operation on the path took in nanoseconds, or -1 when unknown.
+    */
+   long getDuration(String path) {
+      Entry entry = entries.get(path);
+      return entry == null || entry.result == Result.NONE ? -1 : entry.duration;
+   }
+
+   /**
+    * Record a file which is only hashed, not processed.
+    *
+    * @param path
+    * @param fingerprint
+    */
+   void put(String path, Fingerprint fingerprint) {
+      live.add(path);
+      entries.put(path, new Entry(fingerprint, configuration, null, null, Result.NONE, 0));
+   }
+
+   /**
+    * Record the outcome of the operation on a file.
+    *
+    * @param path
+    * @param fingerprint the fingerprint of the file before the operation
+    * @param dependencies
+    * @param resolved the cache paths the dependencies resolved to, see
+    *           {@link #getResolvedDependencies(String)}, null when the dependencies are null
+    * @param result
+    * @param duration in nanoseconds
+    */
+   void put(String path, Fingerprint fingerprint, List<String> dependencies, List<String> resolved, Result result,
+            long duration) {
+      live.add(path);
+      entries.put(path, new Entry(fingerprint, configuration, dependencies, resolved, result, duration));
+   }
+
+   /**
+    * Replace the fingerprint of an entry, keeping the rest of it: the current stat of a file
+    * whose content did not change, or the content a file was rewritten with by its operation.
+    *
+    * @param path
+    * @param fingerprint
+    */
+   void refresh(String path, Fingerprint fingerprint) {
+      Entry entry = entries.get(path);
+      if (entry != null && entry.fingerprint != fingerprint) {
+         entries.put(path, new Entry(fingerprint, entry.configuration, entry.dependencies, entry.resolved,
+                  entry.result, entry.duration));
+      }
+   }
+
+   /**
+    * Record that the operation did not finish on a file it had to process, because it timed
+    * out or was not run, so that the file is processed on the next build even when neither it
+    * nor its dependencies change again. The fingerprint, dependencies and duration are kept.
+    *
+    * @param path
+    */
+   void invalidate(String path) {
+      live.add(path);
+      Entry entry = entries.get(path);
+      if (entry != null && entry.result != Result.FAILURE) {
+         entries.put(path, new Entry(entry.fingerprint, entry.configuration, entry.dependencies,
+                  entry.resolved, Result.FAILURE, entry.duration));
+      }
+   }
+
+   /**
+    * Start a run which touches or puts every path still in use: the paths of the previous
+    * runs on this cache are no longer kept on the next {@link #prune()}. A cache kept in
+    * memory by the watch goal otherwise kept the entries of files deleted in between.
+    */
+   void startRun() {
+      live.clear();
+   }
+
+   /**
+    * Keep the entry of the path on the next {@link #prune()}.
+    *
+    * @param path
+    */
+   void touch(String path) {
+      live.add(path);
+   }
+
+   /**
+    * Remove the entries of files which were neither touched nor put since the cache was
+    * read or the run started, see {@link #startRun()}, for example deleted files.
+    *
+    * @return the number of removed entries
+    */
+   int prune() {
+      int removed = 0;
+      for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+         if (!live.contains(it.next())) {
+            it.remove();
+            removed++;
+         }
+      }
+      return removed;
+   }
+
+   int size() {
+      return entries.size();
+   }
+
+   private static class Entry {
+      final Fingerprint fingerprint;
+      final String configuration;
+      final List<String> dependencies;
+      final List<String> resolved;
+      final Result result;
+      final long duration;
+
+      Entry(Fingerprint fingerprint, String configuration, List<String> dependencies, List<String> resolved,
+               Result result, long duration) {
+         this.fingerprint = fingerprint;
+         this.configuration = configuration;
+         this.dependencies = dependencies == null ? null
+                  : Collections.unmodifiableList(new ArrayList<String>(dependencies));
+         if (dependencies != null && (resolved == null || resolved.size() != dependencies.size())) {
+            throw new IllegalArgumentException("resolved paths do not match the dependencies");
+         }
+         this.resolved = dependencies == null ? null
+                  : Collections.unmodifiableList(new ArrayList<String>(resolved));
+         this.result = result;
+         this.duration = duration;
+      }
+   }
+}
@@ -0,0 +1,144 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Content hash of a file, with the size and modification time the file had when it
+ * was hashed. A file whose size and modification time did not change since is not
+ * read again, see {@link #of(File, Fingerprint)}.
+ */
+final class Fingerprint {
+
+   /** modification time of a fingerprint which must not be trusted without hashing */
+   static final long UNKNOWN = -1;
+
+   /**
+    * A file modified this short before it was hashed may still be changed within the
+    * resolution of its timestamp, so its modification time is not recorded.
+    */
+   static final long RACY_MILLIS = 2000;
+
+   /** files are read in chunks of this size, a larger file is hashed chunk by chunk */
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+      @Override
+      protected ByteBuffer initialValue() {
+         return ByteBuffer.allocate(BUFFER_SIZE);
+      }
+   };
+
+   final String hash;
+   final long size;
+   final long lastModified;
+
+   Fingerprint(String hash, long size, long lastModified) {
+      this.hash = hash;
+      this.size = size;
+      this.lastModified = lastModified;
+   }
+
+   /**
+    * Fingerprint the file, reusing the previous fingerprint without reading the file
+    * when its size and modification time are unchanged.
+    *
+    * @param file
+    * @param previous the recorded fingerprint of the file, may be null
+    * @return
+    * @throws IOException
+    */
+   static Fingerprint of(File file, Fingerprint previous) throws IOException {
+      return of(file, Files.readAttributes(file.toPath(), BasicFileAttributes.class), previous);
+   }
+
+   /**
+    * Fingerprint the file with attributes already read, for example while scanning.
+    *
+    * @param file
+    * @param attributes the attributes of the file
+    * @param previous the recorded fingerprint of the file, may be null
+    * @return
+    * @throws IOException
+    */
+   static Fingerprint of(File file, BasicFileAttributes attributes, Fingerprint previous) throws IOException {
+      Path path = file.toPath();
+      long size = attributes.size();
+      long lastModified = attributes.lastModifiedTime().toMillis();
+      if (previous != null && previous.lastModified != UNKNOWN && previous.size == size
+               && previous.lastModified == lastModified) {
+         return previous;
+      }
+      String hash = hash(path);
+      if (System.currentTimeMillis() - lastModified < RACY_MILLIS) {
+         lastModified = UNKNOWN;
+      }
+      return new Fingerprint(hash, size, lastModified);
+   }
+
+   /**
+    * Hash the bytes of the file with {@link XXHash64}. The file is read through a buffer of
+    * the thread, it is not memory mapped: a mapping would stay open until it is garbage
+    * collected, and on Windows the file could not be replaced meanwhile.
+    *
+    * @param path
+    * @return the hash as 16 hex digits
+    * @throws IOException
+    */
+   static String hash(Path path) throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      try {
+         ByteBuffer buffer = BUFFERS.get();
+         XXHash64.Streaming hash = null;
+         // read until end of file, the file may have grown since it was stat'ed
+         while (fill(channel, buffer)) {
+            if (hash == null) {
+               hash = new XXHash64.Streaming(0);
+            }
+            hash.update(buffer);
+         }
+         if (hash == null) {
+            // the whole file fits into the buffer
+            return XXHash64.toHex(XXHash64.hash(buffer, 0));
+         }
+         hash.update(buffer);
+         return XXHash64.toHex(hash.digest());
+      } finally {
+         channel.close();
+      }
+   }
+
+   /**
+    * Read the next chunk of the file into the buffer, and flip the buffer for reading.
+    *
+    * @param channel
+    * @param buffer
+    * @return false when the end of the file was reached, the buffer then holds the last chunk
+    * @throws IOException
+    */
+   private static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+      buffer.clear();
+      boolean more = true;
+      while (buffer.hasRemaining() && more) {
+         more = channel.read(buffer) >= 0;
+      }
+      buffer.flip();
+      return more;
+   }
+}
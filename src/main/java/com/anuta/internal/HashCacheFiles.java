@@ -0,0 +1,123 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Locking, reading and storing the hash cache files of the operations of a goal execution,
+ * see {@link FileHashCache} and {@link CacheLock}.
+ */
+class HashCacheFiles {
+
+   private HashCacheFiles() {
+   }
+
+   /**
+    * Lock the hash cache files of the operations until they are stored, so that goal
+    * executions sharing a target directory, in parallel reactor builds or concurrent
+    * builds, do not overwrite each other's entries. The files are locked in the order
+    * of their paths, so that executions locking several files cannot deadlock.
+    *
+    * @param operations
+    * @param log
+    * @return the locks, in the order they were acquired, see {@link #release(List)}
+    * @throws MojoExecutionException
+    */
+   static List<CacheLock> lock(List<? extends YangHelperMojo> operations, Log log) throws MojoExecutionException {
+      SortedSet<File> cacheFiles = new TreeSet<File>();
+      for (YangHelperMojo operation : operations) {
+         File cacheFile = operation.getHashCacheFile();
+         if (cacheFile != null) {
+            cacheFiles.add(cacheFile.getAbsoluteFile());
+         }
+      }
+      List<CacheLock> locks = new ArrayList<CacheLock>();
+      try {
+         for (File cacheFile : cacheFiles) {
+            locks.add(CacheLock.acquire(cacheFile, log));
+         }
+      } catch (IOException e) {
+         release(locks);
+         throw new MojoExecutionException("Cannot lock hash cache file", e);
+      }
+      return locks;
+   }
+
+   /**
+    * Release the locks in the reverse order of {@link #lock(List, Log)}.
+    *
+    * @param locks
+    */
+   static void release(List<CacheLock> locks) {
+      for (int i = locks.size() - 1; i >= 0; i--) {
+         locks.get(i).release();
+      }
+   }
+
+   /**
+    * Read the cache of an operation, creating the target directory it is stored in. A
+    * missing or unreadable cache is replaced by an empty one, so that all files are processed.
+    *
+    * @param cacheFile the file of the operation, see {@link YangHelperMojo#getHashCacheFile()}
+    * @param log
+    * @return the cache, null when the operation keeps none
+    */
+   static FileHashCache read(File cacheFile, Log log) {
+      if (null == cacheFile) {
+         return null;
+      }
+      File targetDirectory = cacheFile.getParentFile();
+      if (!targetDirectory.exists()) {
+         targetDirectory.mkdirs();
+      } else if (!targetDirectory.isDirectory()) {
+         log.warn("Something strange here as the " + "supposedly target directory is not a directory.");
+         return new FileHashCache();
+      }
+      if (!cacheFile.exists()) {
+         return new FileHashCache();
+      }
+
+      try {
+         return FileHashCache.read(cacheFile);
+      } catch (IOException e) {
+         log.warn("Cannot load file hash cache file, processing all files: " + e.getMessage());
+         return new FileHashCache();
+      }
+   }
+
+   /**
+    * Drop the entries of files which are gone and write the cache.
+    *
+    * @param hashCache may be null
+    * @param cacheFile the file of the operation, see {@link YangHelperMojo#getHashCacheFile()}, may be null
+    * @param log
+    */
+   static void store(FileHashCache hashCache, File cacheFile, Log log) {
+      if (null == cacheFile || null == hashCache || !cacheFile.getParentFile().isDirectory()) {
+         return;
+      }
+      int pruned = hashCache.prune();
+      try {
+         hashCache.write(cacheFile);
+         log.debug("Stored " + hashCache.size() + " entries in " + cacheFile + ", pruned " + pruned);
+      } catch (IOException e) {
+         log.warn("Cannot store file hash cache file " + cacheFile, e);
+      }
+   }
+}
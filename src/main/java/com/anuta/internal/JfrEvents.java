@@ -0,0 +1,123 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emits the rows of a {@link BuildReport} as <code>com.anuta.yang.File</code> flight recorder
+ * events, with the operation, file, result and the nanoseconds of every phase. The events
+ * are only recorded while a flight recording runs, for example one started with
+ * <code>-XX:StartFlightRecording</code> in MAVEN_OPTS.
+ * <p>
+ * The plugin runs on java 8, so the event type is defined at runtime with
+ * <code>jdk.jfr.EventFactory</code> through reflection instead of a subclass of
+ * <code>jdk.jfr.Event</code>.
+ */
+class JfrEvents {
+
+   static final String EVENT_NAME = "com.anuta.yang.File";
+
+   private final Object factory;
+   private final Method newEvent;
+   private final Method begin;
+   private final Method set;
+   private final Method commit;
+
+   private JfrEvents(Object factory, Method newEvent, Method begin, Method set, Method commit) {
+      this.factory = factory;
+      this.newEvent = newEvent;
+      this.begin = begin;
+      this.set = set;
+      this.commit = commit;
+   }
+
+   /**
+    * @return the events, or null when the JVM has no jdk.jfr.EventFactory (before java 9)
+    */
+   static JfrEvents create() {
+      try {
+         Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+         Class<?> eventClass = Class.forName("jdk.jfr.Event");
+         Class<?> elementClass = Class.forName("jdk.jfr.AnnotationElement");
+         Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+         Constructor<?> element = elementClass.getConstructor(Class.class, Object.class);
+         Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class, List.class);
+
+         List<Object> annotations = new ArrayList<Object>();
+         annotations.add(element.newInstance(annotation("jdk.jfr.Name"), EVENT_NAME));
+         annotations.add(element.newInstance(annotation("jdk.jfr.Label"), "Yang File"));
+         annotations.add(element.newInstance(annotation("jdk.jfr.Category"), new String[] { "Yang" }));
+         annotations.add(element.newInstance(annotation("jdk.jfr.StackTrace"), Boolean.FALSE));
+
+         List<Object> fields = new ArrayList<Object>();
+         fields.add(descriptor.newInstance(String.class, "operation", Collections.emptyList()));
+         fields.add(descriptor.newInstance(String.class, "file", Collections.emptyList()));
+         fields.add(descriptor.newInstance(String.class, "result", Collections.emptyList()));
+         Object nanoseconds = element.newInstance(annotation("jdk.jfr.Timespan"), "NANOSECONDS");
+         for (BuildReport.Phase phase : BuildReport.Phase.values()) {
+            fields.add(descriptor.newInstance(long.class, phase.getLabel(), Arrays.asList(nanoseconds)));
+         }
+
+         Object factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+         return new JfrEvents(factory, factoryClass.getMethod("newEvent"), eventClass.getMethod("begin"),
+                  eventClass.getMethod("set", int.class, Object.class), eventClass.getMethod("commit"));
+      } catch (Exception e) {
+         return null;
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+      return (Class<? extends Annotation>) Class.forName(name);
+   }
+
+   /**
+    * @return a new event, started now
+    */
+   Object begin() {
+      try {
+         Object event = newEvent.invoke(factory);
+         begin.invoke(event);
+         return event;
+      } catch (Exception e) {
+         return null;
+      }
+   }
+
+   /**
+    * Set the fields of an event returned by {@link #begin()} from the row and commit it,
+    * which ends it.
+    *
+    * @param event
+    * @param timing
+    */
+   void commit(Object event, BuildReport.FileTiming timing) {
+      try {
+         set.invoke(event, 0, timing.operation);
+         set.invoke(event, 1, timing.path);
+         set.invoke(event, 2, timing.getResult());
+         BuildReport.Phase[] phases = BuildReport.Phase.values();
+         for (int i = 0; i < phases.length; i++) {
+            set.invoke(event, 3 + i, timing.get(phases[i]));
+         }
+         commit.invoke(event);
+      } catch (Exception e) {
+         // the event is lost, the report is not affected
+      }
+   }
+}
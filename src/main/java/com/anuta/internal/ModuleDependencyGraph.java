@@ -0,0 +1,278 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependencies between yang files, from their <code>import</code>, <code>include</code>
+ * and <code>belongs-to</code> statements. Used to reprocess the files depending on a
+ * changed file even though their own content did not change.
+ * Built before the files are processed and only read while they are, the watch goal
+ * updates it between its runs, see {@link #removeFile(File)}.
+ */
+class ModuleDependencyGraph {
+
+   /** declared dependencies of the scanned files, as <code>name[@revision]</code> */
+   private final Map<File, List<String>> dependencies = new HashMap<File, List<String>>();
+   /** file to the files depending on it */
+   private final Map<File, Set<File>> dependents = new HashMap<File, Set<File>>();
+   /** file to the files its dependencies resolved to */
+   private final Map<File, Set<File>> resolved = new HashMap<File, Set<File>>();
+   /**
+    * file to the cache paths its declared dependencies resolved to, in their order, empty
+    * for a dependency which did not resolve
+    */
+   private final Map<File, List<String>> resolvedPaths = new HashMap<File, List<String>>();
+   private final Set<File> invalidated = new HashSet<File>();
+
+   /**
+    * Read the declared dependencies of a module.
+    *
+    * @param module
+    * @return dependencies as <code>name</code> or <code>name@revision</code>
+    */
+   static List<String> readDependencies(YangStatement module) {
+      List<String> result = new ArrayList<String>();
+      for (YangStatement statement : module.getSubstatements()) {
+         String keyword = statement.getKeyword();
+         if (("import".equals(keyword) || "include".equals(keyword)) && statement.getArgument() != null) {
+            String revision = statement.findArgument("revision-date");
+            result.add(revision == null ? statement.getArgument() : statement.getArgument() + "@" + revision);
+         } else if ("belongs-to".equals(keyword) && statement.getArgument() != null) {
+            result.add(statement.getArgument());
+         }
+      }
+      return result;
+   }
+
+   static String getModuleName(String dependency) {
+      int at = dependency.indexOf('@');
+      return at < 0 ? dependency : dependency.substring(0, at);
+   }
+
+   static String getRevision(String dependency) {
+      int at = dependency.indexOf('@');
+      return at < 0 ? null : dependency.substring(at + 1);
+   }
+
+   void addFile(File file, List<String> fileDependencies) {
+      dependencies.put(file, fileDependencies);
+   }
+
+   /**
+    * Record that <code>file</code> depends on <code>dependency</code>.
+    */
+   void addEdge(File file, File dependency) {
+      Set<File> set = dependents.get(dependency);
+      if (set == null) {
+         set = new HashSet<File>();
+         dependents.put(dependency, set);
+      }
+      set.add(file);
+      Set<File> files = resolved.get(file);
+      if (files == null) {
+         files = new HashSet<File>();
+         resolved.put(file, files);
+      }
+      files.add(dependency);
+   }
+
+   /**
+    * Forget the dependencies of a file, before it is added again with its new content, or
+    * because it was deleted. The files depending on it are kept, see {@link #dependentsOf(Collection)}.
+    *
+    * @param file
+    */
+   void removeFile(File file) {
+      dependencies.remove(file);
+      resolvedPaths.remove(file);
+      Set<File> files = resolved.remove(file);
+      if (files != null) {
+         for (File dependency : files) {
+            Set<File> set = dependents.get(dependency);
+            if (set != null) {
+               set.remove(file);
+            }
+         }
+      }
+   }
+
+   boolean contains(File file) {
+      return dependencies.containsKey(file);
+   }
+
+   Set<File> getFiles() {
+      return Collections.unmodifiableSet(dependencies.keySet());
+   }
+
+   List<String> getDependencies(File file) {
+      return dependencies.get(file);
+   }
+
+   /**
+    * Record where the declared dependencies of a file resolved, so that the next build can
+    * tell when one of them resolves elsewhere or no longer resolves.
+    *
+    * @param file
+    * @param paths cache paths in the order of {@link #getDependencies(File)}, empty for a
+    *           dependency which did not resolve
+    */
+   void setResolvedPaths(File file, List<String> paths) {
+      resolvedPaths.put(file, paths);
+   }
+
+   /**
+    * @param file
+    * @return the cache paths the declared dependencies of the file resolved to, see
+    *         {@link #setResolvedPaths(File, List)}, or null before they were resolved
+    */
+   List<String> getResolvedPaths(File file) {
+      return resolvedPaths.get(file);
+   }
+
+   /**
+    * @param file
+    * @return the files the dependencies of the file resolved to, and transitively theirs
+    *         as far as they were resolved, without the file itself
+    */
+   Set<File> getResolvedClosure(File file) {
+      Set<File> closure = new HashSet<File>();
+      List<File> pending = new ArrayList<File>();
+      pending.add(file);
+      while (!pending.isEmpty()) {
+         Set<File> files = resolved.get(pending.remove(pending.size() - 1));
+         if (files != null) {
+            for (File dependency : files) {
+               if (!dependency.equals(file) && closure.add(dependency)) {
+                  pending.add(dependency);
+               }
+            }
+         }
+      }
+      return closure;
+   }
+
+   /**
+    * Group the scanned files connected by dependencies, in either direction.
+    *
+    * @return scanned file to a representative file of its component
+    */
+   Map<File, File> getComponents() {
+      Map<File, File> parents = new HashMap<File, File>();
+      for (File file : dependencies.keySet()) {
+         parents.put(file, file);
+      }
+      for (Map.Entry<File, Set<File>> entry : dependents.entrySet()) {
+         if (!parents.containsKey(entry.getKey())) {
+            continue;
+         }
+         for (File dependent : entry.getValue()) {
+            if (parents.containsKey(dependent)) {
+               File a = findRoot(parents, entry.getKey());
+               File b = findRoot(parents, dependent);
+               if (!a.equals(b)) {
+                  // the smaller path is the representative, so that components are stable
+                  if (a.compareTo(b) < 0) {
+                     parents.put(b, a);
+                  } else {
+                     parents.put(a, b);
+                  }
+               }
+            }
+         }
+      }
+      Map<File, File> components = new HashMap<File, File>();
+      for (File file : dependencies.keySet()) {
+         components.put(file, findRoot(parents, file));
+      }
+      return components;
+   }
+
+   private static File findRoot(Map<File, File> parents, File file) {
+      File root = file;
+      while (!parents.get(root).equals(root)) {
+         root = parents.get(root);
+      }
+      // path compression
+      File current = file;
+      while (!current.equals(root)) {
+         File next = parents.get(current);
+         parents.put(current, root);
+         current = next;
+      }
+      return root;
+   }
+
+   /**
+    * @param files
+    * @return the files depending on the given files, transitively, without the given files
+    *         unless they depend on each other
+    */
+   Set<File> dependentsOf(Collection<File> files) {
+      Set<File> result = new HashSet<File>();
+      Deque<File> queue = new ArrayDeque<File>(files);
+      while (!queue.isEmpty()) {
+         Set<File> set = dependents.get(queue.poll());
+         if (set != null) {
+            for (File dependent : set) {
+               if (result.add(dependent)) {
+                  queue.add(dependent);
+               }
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Invalidate the changed files and, transitively, every file depending on them.
+    *
+    * @param changed
+    * @return the number of invalidated scanned files
+    */
+   int invalidate(Collection<File> changed) {
+      invalidated.addAll(changed);
+      invalidated.addAll(dependentsOf(changed));
+      int count = 0;
+      for (File file : invalidated) {
+         if (dependencies.containsKey(file)) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Forget the invalidated files, once they are processed.
+    */
+   void clearInvalidated() {
+      invalidated.clear();
+   }
+
+   /**
+    * @param file
+    * @return true when the file or one of its dependencies changed.
+    */
+   boolean isInvalidated(File file) {
+      return invalidated.contains(file);
+   }
+}
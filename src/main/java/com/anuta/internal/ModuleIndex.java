@@ -0,0 +1,346 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * The module files found below the directories of the module search path, recursively
+ * like pyang searches YANG_MODPATH. The index is stored in the target directory and
+ * reused by the next build: a directory whose modification time did not change is not
+ * listed again, as adding, removing or renaming a file changes the time of its directory.
+ * <p>
+ * The stored index is a UTF-8 text file, also read by pyang_worker.py, with a
+ * <code>R root</code> line per search path directory followed by a <code>D mtime dir</code>
+ * line per indexed directory, each followed by the <code>F name</code> lines of its module
+ * files and the <code>S name</code> lines of its subdirectories. Fields are separated by tabs.
+ */
+class ModuleIndex {
+
+   static final String FILE_NAME = "yang-module-index.txt";
+
+   private static final String HEADER = "yang-module-index 1";
+
+   /**
+    * Directories modified this shortly before the index was built may have changed again
+    * within the resolution of their modification time, and are listed again.
+    */
+   private static final long RACY_MILLIS = 2000;
+
+   private final List<File> roots;
+   private final Map<File, Directory> directories;
+   private final long built;
+   private boolean modified;
+   private Map<String, List<File>> filesByModule;
+
+   private ModuleIndex(List<File> roots, Map<File, Directory> directories, long built) {
+      this.roots = roots;
+      this.directories = directories;
+      this.built = built;
+   }
+
+   /**
+    * Index the directories, reusing the unchanged directories of the previous index.
+    *
+    * @param searchPath
+    * @param previous may be null
+    * @return
+    */
+   static ModuleIndex build(List<File> searchPath, ModuleIndex previous) {
+      List<File> roots = new ArrayList<File>();
+      for (File dir : searchPath) {
+         File root = dir.getAbsoluteFile().toPath().normalize().toFile();
+         if (!roots.contains(root)) {
+            roots.add(root);
+         }
+      }
+      ModuleIndex index = new ModuleIndex(roots, new LinkedHashMap<File, Directory>(), System.currentTimeMillis());
+      index.modified = previous == null || !previous.roots.equals(roots);
+      for (File root : roots) {
+         index.walk(root, previous, new HashSet<Object>());
+      }
+      if (previous != null && !index.directories.keySet().equals(previous.directories.keySet())) {
+         index.modified = true;
+      }
+      return index;
+   }
+
+   private void walk(File dir, ModuleIndex previous, Set<Object> visited) {
+      if (directories.containsKey(dir)) {
+         return;
+      }
+      BasicFileAttributes attributes;
+      try {
+         attributes = Files.readAttributes(dir.toPath(), BasicFileAttributes.class);
+      } catch (IOException e) {
+         return;
+      }
+      Object key = attributes.fileKey();
+      if (!attributes.isDirectory() || (key != null && !visited.add(key))) {
+         // not a directory, or a symbolic link loop
+         return;
+      }
+      long mtime = attributes.lastModifiedTime().toMillis();
+      Directory directory = previous == null ? null : previous.directories.get(dir);
+      if (directory == null || directory.mtime != mtime || mtime >= previous.built - RACY_MILLIS) {
+         directory = list(dir, mtime);
+         modified = true;
+      }
+      directories.put(dir, directory);
+      for (String subdirectory : directory.subdirectories) {
+         walk(new File(dir, subdirectory), previous, visited);
+      }
+   }
+
+   private static Directory list(File dir, long mtime) {
+      Directory directory = new Directory(mtime);
+      String[] names = dir.list();
+      if (names == null) {
+         return directory;
+      }
+      Arrays.sort(names);
+      for (String name : names) {
+         if (name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0) {
+            continue;
+         }
+         File file = new File(dir, name);
+         if (isModuleFile(name)) {
+            if (file.isFile() && file.canRead()) {
+               directory.files.add(name);
+            }
+         } else if (file.isDirectory()) {
+            directory.subdirectories.add(name);
+         }
+      }
+      return directory;
+   }
+
+   /**
+    * @param name
+    * @return true for yang and yin files, the files pyang looks for on its search path.
+    */
+   private static boolean isModuleFile(String name) {
+      return name.endsWith(".yang") || name.endsWith(".yin");
+   }
+
+   /**
+    * @return true when the index differs from the previous one, so that it must be stored.
+    */
+   boolean isModified() {
+      return modified;
+   }
+
+   /**
+    * @return the number of indexed directories.
+    */
+   int getDirectoryCount() {
+      return directories.size();
+   }
+
+   /**
+    * @param dir
+    * @return the yang and yin files of an indexed directory, or null when the directory
+    *         is not below the search path.
+    */
+   List<File> getDirectoryFiles(File dir) {
+      Directory directory = directories.get(dir);
+      if (directory == null) {
+         return null;
+      }
+      List<File> files = new ArrayList<File>(directory.files.size());
+      for (String name : directory.files) {
+         files.add(new File(dir, name));
+      }
+      return files;
+   }
+
+   /**
+    * @param name module name
+    * @return the yang files of the module in search path order, see
+    *         {@link YangModuleResolver#getModuleName(String)}.
+    */
+   List<File> getModuleFiles(String name) {
+      List<File> files = getFilesByModule().get(name);
+      return files == null ? Collections.<File>emptyList() : files;
+   }
+
+   /**
+    * @return groups of yang files holding the same module and revision, according to their
+    *         names, in search path order. pyang uses the first file of a group.
+    */
+   List<List<File>> getDuplicates() {
+      List<List<File>> duplicates = new ArrayList<List<File>>();
+      for (List<File> files : getFilesByModule().values()) {
+         Map<String, List<File>> byName = new LinkedHashMap<String, List<File>>();
+         for (File file : files) {
+            List<File> group = byName.get(file.getName());
+            if (group == null) {
+               group = new ArrayList<File>();
+               byName.put(file.getName(), group);
+            }
+            group.add(file);
+         }
+         for (List<File> group : byName.values()) {
+            if (group.size() > 1) {
+               duplicates.add(group);
+            }
+         }
+      }
+      return duplicates;
+   }
+
+   private synchronized Map<String, List<File>> getFilesByModule() {
+      if (filesByModule == null) {
+         filesByModule = new HashMap<String, List<File>>();
+         Set<File> seen = new HashSet<File>();
+         for (File root : roots) {
+            collect(root, seen);
+         }
+      }
+      return filesByModule;
+   }
+
+   private void collect(File dir, Set<File> seen) {
+      Directory directory = directories.get(dir);
+      if (directory == null || !seen.add(dir)) {
+         return;
+      }
+      for (String fileName : directory.files) {
+         String name = YangModuleResolver.getModuleName(fileName);
+         if (name != null) {
+            List<File> files = filesByModule.get(name);
+            if (files == null) {
+               files = new ArrayList<File>();
+               filesByModule.put(name, files);
+            }
+            files.add(new File(dir, fileName));
+         }
+      }
+      for (String subdirectory : directory.subdirectories) {
+         collect(new File(dir, subdirectory), seen);
+      }
+   }
+
+   /**
+    * Read an index stored by {@link #write(File)}.
+    *
+    * @param file
+    * @return
+    * @throws IOException if the file is not a module index or is damaged
+    */
+   static ModuleIndex read(File file) throws IOException {
+      BufferedReader in = null;
+      try {
+         in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+         if (!HEADER.equals(in.readLine())) {
+            throw new IOException("Not a module index " + file);
+         }
+         ModuleIndex index;
+         try {
+            index = new ModuleIndex(new ArrayList<File>(), new LinkedHashMap<File, Directory>(),
+                     Long.parseLong(in.readLine()));
+            Directory directory = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+               String[] fields = line.split("\t", 3);
+               if ("R".equals(fields[0])) {
+                  index.roots.add(new File(fields[1]));
+               } else if ("D".equals(fields[0])) {
+                  directory = new Directory(Long.parseLong(fields[1]));
+                  index.directories.put(new File(fields[2]), directory);
+               } else if ("F".equals(fields[0])) {
+                  directory.files.add(fields[1]);
+               } else if ("S".equals(fields[0])) {
+                  directory.subdirectories.add(fields[1]);
+               } else {
+                  throw new IOException("Damaged module index " + file + ": " + line);
+               }
+            }
+         } catch (RuntimeException e) {
+            throw new IOException("Damaged module index " + file, e);
+         }
+         return index;
+      } finally {
+         IOUtil.close(in);
+      }
+   }
+
+   /**
+    * Write the index through a temporary file renamed onto the file.
+    *
+    * @param file
+    * @throws IOException
+    */
+   void write(File file) throws IOException {
+      File temp = AtomicFile.createTemp(file);
+      boolean committed = false;
+      Writer out = null;
+      try {
+         out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+         out.write(HEADER + "\n" + built + "\n");
+         for (File root : roots) {
+            out.write("R\t" + root.getPath() + "\n");
+         }
+         for (Map.Entry<File, Directory> entry : directories.entrySet()) {
+            Directory directory = entry.getValue();
+            out.write("D\t" + directory.mtime + "\t" + entry.getKey().getPath() + "\n");
+            for (String name : directory.files) {
+               out.write("F\t" + name + "\n");
+            }
+            for (String name : directory.subdirectories) {
+               out.write("S\t" + name + "\n");
+            }
+         }
+         out.close();
+         out = null;
+         AtomicFile.commit(temp, file);
+         committed = true;
+      } finally {
+         IOUtil.close(out);
+         if (!committed) {
+            AtomicFile.discard(temp);
+         }
+      }
+   }
+
+   /**
+    * The module files and subdirectories of a directory, sorted by name.
+    */
+   private static class Directory {
+      final long mtime;
+      final List<String> files = new ArrayList<String>();
+      final List<String> subdirectories = new ArrayList<String>();
+
+      Directory(long mtime) {
+         this.mtime = mtime;
+      }
+   }
+}
@@ -0,0 +1,60 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+
+/**
+ * One operation of a goal execution: the mojo performing it with its cache and counters.
+ */
+class OperationRun {
+   final YangHelperMojo mojo;
+   final FileHashCache hashCache;
+   final ModuleDependencyGraph dependencyGraph;
+   final ResultCollector resultCollector;
+
+   OperationRun(YangHelperMojo mojo, FileHashCache hashCache, ModuleDependencyGraph dependencyGraph,
+                  ResultCollector resultCollector) {
+      this.mojo = mojo;
+      this.hashCache = hashCache;
+      this.dependencyGraph = dependencyGraph;
+      this.resultCollector = resultCollector;
+   }
+
+   /**
+    * Record the result of the operation on a file, with its dependencies and the files
+    * they resolved to, when the run has a hash cache.
+    */
+   void putResult(String path, File canonicalFile, Fingerprint fingerprint, FileHashCache.Result result,
+                  long duration) {
+      if (hashCache == null) {
+         return;
+      }
+      if (dependencyGraph == null || dependencyGraph.getResolvedPaths(canonicalFile) == null) {
+         hashCache.put(path, fingerprint, null, null, result, duration);
+      } else {
+         hashCache.put(path, fingerprint, dependencyGraph.getDependencies(canonicalFile),
+                  dependencyGraph.getResolvedPaths(canonicalFile), result, duration);
+      }
+   }
+
+   /**
+    * @return true when the cache holds the current hash of the file, recorded with the current
+    *         configuration, and none of its dependencies changed.
+    */
+   boolean isUpToDate(File canonicalFile, String hash, String path) {
+      if (hashCache == null) {
+         return false;
+      }
+      boolean invalidated = dependencyGraph != null && dependencyGraph.isInvalidated(canonicalFile);
+      return hashCache.isCurrent(path, hash) && !invalidated;
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Content addressed store of generated files. Entries are keyed by a hash of everything
+ * the output depends on and are written with an atomic rename, so that the directory
+ * can be shared between concurrent builds, projects and build agents.
+ */
+class OutputCache {
+
+   private static final String FORMAT = "yin-yang-output-cache 1";
+
+   private final File directory;
+   private final String extension;
+   private final AtomicInteger restored = new AtomicInteger();
+   private final AtomicInteger stored = new AtomicInteger();
+
+   /**
+    * @param directory
+    * @param extension file extension of the stored entries, e.g. <code>.yin</code>
+    */
+   OutputCache(File directory, String extension) {
+      this.directory = directory;
+      this.extension = extension;
+   }
+
+   /**
+    * Build a cache key from the parts the output depends on.
+    *
+    * @param parts
+    * @return
+    */
+   static String key(String... parts) {
+      StringBuilder builder = new StringBuilder(FORMAT);
+      for (String part : parts) {
+         builder.append('\n').append(part == null ? "" : part);
+      }
+      return DigestUtils.sha256Hex(builder.toString());
+   }
+
+   /**
+    * Copy the entry to the target file, unless the target already has its content.
+    *
+    * @param key
+    * @param target
+    * @return what was done.
+    * @throws IOException
+    */
+   Restore restore(String key, File target) throws IOException {
+      File entry = getEntry(key);
+      if (!entry.isFile()) {
+         return Restore.MISSING;
+      }
+      boolean changed = AtomicFile.copyIfChanged(entry, target);
+      restored.incrementAndGet();
+      return changed ? Restore.RESTORED : Restore.UNCHANGED;
+   }
+
+   /**
+    * Store the output file under the key, unless another build stored it already.
+    *
+    * @param key
+    * @param output
+    * @throws IOException
+    */
+   void store(String key, File output) throws IOException {
+      File entry = getEntry(key);
+      if (entry.isFile()) {
+         return;
+      }
+      File parent = entry.getParentFile();
+      if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+         throw new IOException("Cannot create output cache directory " + parent);
+      }
+      File temp = AtomicFile.createTemp(entry);
+      try {
+         Files.copy(output.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         AtomicFile.commit(temp, entry);
+         stored.incrementAndGet();
+      } finally {
+         AtomicFile.discard(temp);
+      }
+   }
+
+   private File getEntry(String key) {
+      return new File(new File(directory, key.substring(0, 2)), key + extension);
+   }
+
+   File getDirectory() {
+      return directory;
+   }
+
+   int getRestoredCount() {
+      return restored.get();
+   }
+
+   int getStoredCount() {
+      return stored.get();
+   }
+
+   /**
+    * Outcome of {@link OutputCache#restore(String, File)}.
+    */
+   enum Restore {
+      /** no entry for the key */
+      MISSING,
+      /** the target was replaced by the entry */
+      RESTORED,
+      /** the target already had the content of the entry */
+      UNCHANGED
+   }
+}
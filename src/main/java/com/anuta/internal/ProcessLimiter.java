@@ -0,0 +1,233 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of external tool processes, pyang processes and pyang workers, running
+ * at the same time in the JVM, so that the goal executions of a parallel reactor build do
+ * not start a process per thread each. A process holds a {@link Permit} while it runs.
+ * Permits are handed out first come, first served, so that the executions of all modules
+ * make progress.
+ * <p>
+ * With a slot directory, the processes of all builds on the host using the directory are
+ * limited as well: a permit also holds a lock on one of the <code>slot-N.lock</code> files in
+ * the directory, which are waited for by polling.
+ */
+class ProcessLimiter {
+
+   /** how long a permit waits before looking for a free slot again */
+   private static final long SLOT_POLL_MILLIS = 50;
+
+   private static final Object LOCK = new Object();
+
+   /** the limiter of the JVM, see {@link #get(int)} */
+   private static ProcessLimiter instance;
+
+   /** slots held by this JVM per slot file, as file locks are held by the whole JVM */
+   private static final ConcurrentMap<File, Boolean> HELD_SLOTS = new ConcurrentHashMap<File, Boolean>();
+
+   private final Semaphore permits;
+   private int limit;
+
+   private ProcessLimiter(int limit) {
+      this.permits = new Semaphore(limit, true);
+      this.limit = limit;
+   }
+
+   /**
+    * @param limit the number of processes the goal execution allows to run at a time
+    * @return the limiter of the JVM, raised to the limit when it is lower, so that the
+    *         largest limit of the executions applies
+    */
+   static ProcessLimiter get(int limit) {
+      synchronized (LOCK) {
+         if (instance == null) {
+            instance = new ProcessLimiter(limit);
+         } else if (instance.limit < limit) {
+            instance.permits.release(limit - instance.limit);
+            instance.limit = limit;
+         }
+         return instance;
+      }
+   }
+
+   /**
+    * @return the number of processes allowed to run at a time
+    */
+   int getLimit() {
+      synchronized (LOCK) {
+         return limit;
+      }
+   }
+
+   /**
+    * @return an estimate of the number of threads waiting for a permit
+    */
+   int getQueueLength() {
+      return permits.getQueueLength();
+   }
+
+   /**
+    * Wait for a permit.
+    *
+    * @param slotDirectory directory of the host wide slots, or null
+    * @return
+    * @throws IOException when interrupted or the slot directory cannot be used
+    */
+   Permit acquire(File slotDirectory) throws IOException {
+      try {
+         permits.acquire();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting to start a process");
+      }
+      return withSlot(slotDirectory);
+   }
+
+   /**
+    * Wait for a permit for at most the given time.
+    *
+    * @param slotDirectory directory of the host wide slots, or null
+    * @param timeout
+    * @param unit
+    * @return the permit, or null when none was free in time
+    * @throws IOException when interrupted or the slot directory cannot be used
+    */
+   Permit tryAcquire(File slotDirectory, long timeout, TimeUnit unit) throws IOException {
+      try {
+         if (!permits.tryAcquire(timeout, unit)) {
+            return null;
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting to start a process");
+      }
+      return withSlot(slotDirectory);
+   }
+
+   private Permit withSlot(File slotDirectory) throws IOException {
+      if (slotDirectory == null) {
+         return new Permit(this, null, null, null);
+      }
+      try {
+         return acquireSlot(slotDirectory);
+      } catch (IOException e) {
+         permits.release();
+         throw e;
+      }
+   }
+
+   /**
+    * Lock the first free slot file among as many as the limit allows, polling until one is free.
+    */
+   private Permit acquireSlot(File slotDirectory) throws IOException {
+      if (!slotDirectory.isDirectory() && !slotDirectory.mkdirs() && !slotDirectory.isDirectory()) {
+         throw new IOException("Cannot create process slot directory " + slotDirectory);
+      }
+      while (true) {
+         for (int i = 0, n = getLimit(); i < n; i++) {
+            File slot = new File(slotDirectory, "slot-" + i + ".lock");
+            if (HELD_SLOTS.putIfAbsent(slot, Boolean.TRUE) != null) {
+               continue;
+            }
+            RandomAccessFile file = null;
+            FileLock lock = null;
+            try {
+               file = new RandomAccessFile(slot, "rw");
+               lock = file.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+               // held by this JVM through another limiter
+            } finally {
+               if (lock == null) {
+                  close(file);
+                  HELD_SLOTS.remove(slot);
+               }
+            }
+            if (lock != null) {
+               return new Permit(this, slot, file, lock);
+            }
+         }
+         try {
+            Thread.sleep(SLOT_POLL_MILLIS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a process slot in " + slotDirectory);
+         }
+      }
+   }
+
+   private static void close(RandomAccessFile file) {
+      if (file != null) {
+         try {
+            file.close();
+         } catch (IOException e) {
+            // the lock is released anyway
+         }
+      }
+   }
+
+   /**
+    * The right to run one process, until released.
+    */
+   static class Permit {
+      private final ProcessLimiter limiter;
+      private final File slot;
+      private final RandomAccessFile file;
+      private final FileLock lock;
+      private final long acquired = System.nanoTime();
+      private boolean released;
+
+      private Permit(ProcessLimiter limiter, File slot, RandomAccessFile file, FileLock lock) {
+         this.limiter = limiter;
+         this.slot = slot;
+         this.file = file;
+         this.lock = lock;
+      }
+
+      /**
+       * @return the time since the permit was acquired
+       */
+      long getHeldMillis() {
+         return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acquired);
+      }
+
+      /**
+       * Release the permit. Releasing it again does nothing.
+       */
+      synchronized void release() {
+         if (released) {
+            return;
+         }
+         released = true;
+         if (lock != null) {
+            try {
+               lock.release();
+            } catch (IOException e) {
+               // closing the file releases it as well
+            }
+            close(file);
+            HELD_SLOTS.remove(slot);
+         }
+         limiter.permits.release();
+      }
+   }
+}
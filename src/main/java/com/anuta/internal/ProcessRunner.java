@@ -0,0 +1,300 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Runs an external tool, draining its stdout and stderr at the same time so that it
+ * can never block on a full pipe. Stdout is either discarded, captured, or streamed
+ * into a file which replaces the target only when the tool succeeds. A tool running
+ * longer than its timeout is destroyed together with its child processes.
+ */
+class ProcessRunner {
+
+   /** stderr kept per process, the rest is dropped */
+   static final int MAX_ERROR_BYTES = 256 * 1024;
+
+   private static final int BUFFER_SIZE = 8192;
+
+   /** destroys processes which exceed their timeout */
+   private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+               public Thread newThread(Runnable r) {
+                  Thread thread = new Thread(r, "pyang-reaper");
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+
+   private final List<String> command;
+   private final File workingDirectory;
+   private final Map<String, String> environment;
+   private final long timeoutMillis;
+   private final String encoding;
+
+   /**
+    * @param command
+    * @param workingDirectory
+    * @param environment extra environment variables, may be null
+    * @param timeoutMillis time limit of the tool, or 0 for none
+    * @param encoding of the text the tool prints, null for the platform encoding
+    */
+   ProcessRunner(List<String> command, File workingDirectory, Map<String, String> environment,
+                  long timeoutMillis, String encoding) {
+      this.command = command;
+      this.workingDirectory = workingDirectory;
+      this.environment = environment;
+      this.timeoutMillis = timeoutMillis;
+      this.encoding = encoding;
+   }
+
+   /**
+    * Run the tool and return its stdout in the result.
+    *
+    * @return
+    * @throws ToolTimeoutException if the tool exceeded its timeout
+    * @throws IOException
+    */
+   ToolResult capture() throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ToolResult result = run(out);
+      return new ToolResult(result.getExitCode(), decode(out), result.getError());
+   }
+
+   private String decode(ByteArrayOutputStream bytes) throws IOException {
+      return encoding == null ? bytes.toString() : bytes.toString(encoding);
+   }
+
+   /**
+    * Run the tool, streaming its stdout into the output file when it exits successfully.
+    * An output file which already has the content is not rewritten.
+    *
+    * @param outputFile the file replaced by stdout, or null to discard stdout
+    * @return the result, without output
+    * @throws ToolTimeoutException if the tool exceeded its timeout
+    * @throws IOException
+    */
+   ToolResult run(File outputFile) throws IOException {
+      if (outputFile == null) {
+         return run((OutputStream) null);
+      }
+      File temp = AtomicFile.createTemp(outputFile);
+      boolean committed = false;
+      OutputStream out = null;
+      try {
+         out = new FileOutputStream(temp);
+         ToolResult result = run(out);
+         out.close();
+         if (result.isSuccess()) {
+            boolean changed = AtomicFile.commitIfChanged(temp, outputFile);
+            committed = true;
+            return new ToolResult(result.getExitCode(), null, result.getError(), changed);
+         }
+         return result;
+      } finally {
+         IOUtil.close(out);
+         if (!committed) {
+            AtomicFile.discard(temp);
+         }
+      }
+   }
+
+   private ToolResult run(OutputStream out) throws IOException {
+      ProcessBuilder pb = new ProcessBuilder(command);
+      pb.directory(workingDirectory);
+      if (environment != null) {
+         pb.environment().putAll(environment);
+      }
+      long start = System.nanoTime();
+      Process process = pb.start();
+      BuildReport.record(BuildReport.Phase.SPAWN, System.nanoTime() - start);
+      process.getOutputStream().close();
+
+      Reaper reaper = timeoutMillis > 0 ? schedule(process, timeoutMillis) : null;
+      ErrorDrainer errors = new ErrorDrainer(process.getErrorStream());
+      errors.start();
+      int exitCode;
+      try {
+         copy(process.getInputStream(), out);
+         exitCode = process.waitFor();
+         errors.join();
+      } catch (IOException e) {
+         if (reaper == null || !reaper.isExpired()) {
+            throw e;
+         }
+         exitCode = -1;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while running " + command);
+      } finally {
+         if (reaper != null) {
+            reaper.cancel();
+         }
+         process.destroy();
+      }
+      // the reaper only expires when it destroyed the process, not one which exited in time
+      if (reaper != null && reaper.isExpired()) {
+         throw new ToolTimeoutException(command + " timed out after " + timeoutMillis + "ms");
+      }
+      return new ToolResult(exitCode, null, errors.getText(encoding));
+   }
+
+   /**
+    * Destroy the process and its descendants once the timeout expires, unless the
+    * returned reaper is cancelled first.
+    *
+    * @param process
+    * @param timeoutMillis
+    * @return
+    */
+   static Reaper schedule(Process process, long timeoutMillis) {
+      Reaper reaper = new Reaper(process);
+      reaper.future = REAPER.schedule(reaper, timeoutMillis, TimeUnit.MILLISECONDS);
+      return reaper;
+   }
+
+   /**
+    * Forcibly destroy the process and, on java 9 and later, all of its descendants.
+    * Pyang wrappers and python launchers may leave children which keep the output
+    * pipes open after the process itself is gone.
+    *
+    * @param process
+    */
+   static void destroyTree(Process process) {
+      try {
+         Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+         Method destroy = handleClass.getMethod("destroyForcibly");
+         Object handle = Process.class.getMethod("toHandle").invoke(process);
+         Stream<?> descendants = (Stream<?>) handleClass.getMethod("descendants").invoke(handle);
+         for (Iterator<?> it = descendants.iterator(); it.hasNext();) {
+            destroy.invoke(it.next());
+         }
+      } catch (Exception e) {
+         // java 8, only the process itself can be destroyed
+      }
+      process.destroyForcibly();
+   }
+
+   /**
+    * Destroys a process when its timeout expires. The timeout may expire after the process
+    * exited but before the reaper is cancelled, the process then is not reported as expired.
+    */
+   static class Reaper implements Runnable {
+      private static final int PENDING = 0;
+      private static final int EXPIRED = 1;
+      private static final int CANCELLED = 2;
+
+      private final Process process;
+      private final AtomicInteger state = new AtomicInteger(PENDING);
+      private ScheduledFuture<?> future;
+
+      Reaper(Process process) {
+         this.process = process;
+      }
+
+      public void run() {
+         if (process.isAlive() && state.compareAndSet(PENDING, EXPIRED)) {
+            destroyTree(process);
+         }
+      }
+
+      /**
+       * @return true when the process was destroyed because its timeout expired.
+       */
+      boolean isExpired() {
+         return state.get() == EXPIRED;
+      }
+
+      void cancel() {
+         state.compareAndSet(PENDING, CANCELLED);
+         future.cancel(false);
+      }
+   }
+
+   private static void copy(InputStream in, OutputStream out) throws IOException {
+      try {
+         byte[] buffer = new byte[BUFFER_SIZE];
+         int n;
+         while ((n = in.read(buffer)) != -1) {
+            if (out != null) {
+               out.write(buffer, 0, n);
+            }
+         }
+      } finally {
+         IOUtil.close(in);
+      }
+   }
+
+   /**
+    * Reads stderr on its own thread, keeping the first {@link #MAX_ERROR_BYTES}.
+    */
+   private static class ErrorDrainer extends Thread {
+      private final InputStream in;
+      private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+      private boolean truncated;
+
+      ErrorDrainer(InputStream in) {
+         super("pyang-stderr");
+         setDaemon(true);
+         this.in = in;
+      }
+
+      @Override
+      public void run() {
+         try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+               int room = MAX_ERROR_BYTES - text.size();
+               if (room > 0) {
+                  text.write(buffer, 0, Math.min(room, n));
+               }
+               if (n > room) {
+                  truncated = true;
+               }
+            }
+         } catch (IOException e) {
+            // the process is gone, keep what was read
+         } finally {
+            IOUtil.close(in);
+         }
+      }
+
+      /**
+       * @param encoding of the text, null for the platform encoding
+       * @return
+       * @throws IOException if the encoding is not supported
+       */
+      String getText(String encoding) throws IOException {
+         String result = encoding == null ? text.toString() : text.toString(encoding);
+         return truncated ? result + "\n[stderr truncated]\n" : result;
+      }
+   }
+}
@@ -0,0 +1,150 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A long lived pyang process which executes pyang command lines sent over its stdin.
+ * See pyang_worker.py for the framing of requests and responses. A worker handles
+ * one request at a time.
+ */
+class PyangWorker {
+
+   static final String PROTOCOL = "pyang-worker 1";
+
+   static final String CHARSET = "UTF-8";
+
+   private final Process process;
+   private final DataOutputStream out;
+   private final DataInputStream in;
+
+   /**
+    * Start the worker and wait for its greeting.
+    *
+    * @param command
+    * @param environment extra environment variables, may be null
+    * @throws IOException if the worker cannot be started or does not speak the protocol
+    */
+   PyangWorker(List<String> command, Map<String, String> environment) throws IOException {
+      ProcessBuilder pb = new ProcessBuilder(command);
+      if (environment != null) {
+         pb.environment().putAll(environment);
+      }
+      pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+      process = pb.start();
+      out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+      String greeting;
+      try {
+         greeting = readFrame();
+      } catch (IOException e) {
+         destroy();
+         throw new IOException("pyang worker " + command + " exited before it was ready", e);
+      }
+      if (!PROTOCOL.equals(greeting)) {
+         destroy();
+         throw new IOException("Unexpected pyang worker greeting: " + greeting);
+      }
+   }
+
+   /**
+    * Run pyang with the given arguments.
+    *
+    * @param arguments pyang arguments, without the pyang executable
+    * @param workingDirectory
+    * @param timeoutMillis time limit of the request, or 0 for none
+    * @return
+    * @throws ToolTimeoutException if the request exceeded its timeout, the worker is destroyed
+    * @throws IOException if the worker died, in which case it must not be reused
+    */
+   synchronized ToolResult execute(List<String> arguments, File workingDirectory, long timeoutMillis)
+                  throws IOException {
+      ProcessRunner.Reaper reaper = timeoutMillis > 0 ? ProcessRunner.schedule(process, timeoutMillis) : null;
+      try {
+         out.writeInt(arguments.size());
+         writeFrame(workingDirectory.getPath());
+         for (String argument : arguments) {
+            writeFrame(argument);
+         }
+         out.flush();
+
+         int exitCode = in.readInt();
+         String output = readFrame();
+         String error = readFrame();
+         return new ToolResult(exitCode, output, error);
+      } catch (IOException e) {
+         if (reaper != null && reaper.isExpired()) {
+            throw new ToolTimeoutException("pyang worker " + arguments + " timed out after "
+                     + timeoutMillis + "ms");
+         }
+         throw e;
+      } finally {
+         if (reaper != null) {
+            reaper.cancel();
+         }
+      }
+   }
+
+   boolean isAlive() {
+      try {
+         process.exitValue();
+         return false;
+      } catch (IllegalThreadStateException e) {
+         return true;
+      }
+   }
+
+   /**
+    * Close the request stream, which makes the worker exit.
+    */
+   void close() {
+      try {
+         out.close();
+      } catch (IOException e) {
+         // worker is gone already
+      }
+      try {
+         process.waitFor();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         destroy();
+      }
+   }
+
+   void destroy() {
+      ProcessRunner.destroyTree(process);
+   }
+
+   private void writeFrame(String text) throws IOException {
+      byte[] bytes = text.getBytes(CHARSET);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private String readFrame() throws IOException {
+      int length = in.readInt();
+      if (length < 0) {
+         throw new EOFException("Invalid frame length " + length);
+      }
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, CHARSET);
+   }
+}
@@ -0,0 +1,205 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Fixed size pool of {@link PyangWorker}s, shared by the threads of one goal execution.
+ * Workers are started on first use and live until {@link #close()}. Every worker holds a
+ * permit of the {@link ProcessLimiter} while it runs. A worker handed back while threads
+ * of other goal executions wait for a permit is stopped to free its permit, once it ran
+ * for {@link #WORKER_SLICE_MILLIS}, so that its start up cost is paid off.
+ */
+class PyangWorkerPool {
+
+   /** how long a worker keeps its permit while other goal executions wait for one */
+   private static final long WORKER_SLICE_MILLIS = 2000;
+
+   /** how long a thread waits for a permit before looking for an idle worker again */
+   private static final long PERMIT_POLL_MILLIS = 50;
+
+   private final List<String> command;
+   private final Map<String, String> environment;
+   private final int size;
+   private final Log log;
+   private final Semaphore permits;
+   private final ProcessLimiter limiter;
+   private final File slotDirectory;
+   /** threads of this pool waiting for a permit of the limiter */
+   private final AtomicInteger waiting = new AtomicInteger();
+
+   private final BlockingQueue<PyangWorker> idle = new LinkedBlockingQueue<PyangWorker>();
+   private final Map<PyangWorker, ProcessLimiter.Permit> workers = new IdentityHashMap<PyangWorker, ProcessLimiter.Permit>();
+
+   /**
+    * @param command
+    * @param environment
+    * @param size
+    * @param limiter
+    * @param slotDirectory directory of the host wide process slots, or null
+    * @param log
+    */
+   PyangWorkerPool(List<String> command, Map<String, String> environment, int size, ProcessLimiter limiter,
+                  File slotDirectory, Log log) {
+      this.command = command;
+      this.environment = environment;
+      this.size = size;
+      this.limiter = limiter;
+      this.slotDirectory = slotDirectory;
+      this.log = log;
+      this.permits = new Semaphore(size, true);
+   }
+
+   /**
+    * Run pyang on an idle worker, starting a new one while the pool is not full.
+    * A worker that fails is discarded and replaced on a later call.
+    *
+    * @param arguments
+    * @param workingDirectory
+    * @param timeoutMillis time limit of the request, or 0 for none
+    * @return
+    * @throws IOException
+    */
+   ToolResult execute(List<String> arguments, File workingDirectory, long timeoutMillis) throws IOException {
+      PyangWorker worker = borrow();
+      boolean healthy = false;
+      try {
+         ToolResult result = worker.execute(arguments, workingDirectory, timeoutMillis);
+         healthy = true;
+         return result;
+      } finally {
+         giveBack(worker, healthy);
+      }
+   }
+
+   /**
+    * Start one worker up front, so that a broken worker command is noticed before any file is processed.
+    *
+    * @throws IOException
+    */
+   void start() throws IOException {
+      giveBack(borrow(), true);
+   }
+
+   /**
+    * Take an idle worker, or start a new one once the limiter permits it. At most
+    * {@link #size} workers are handed out at a time.
+    */
+   private PyangWorker borrow() throws IOException {
+      try {
+         permits.acquire();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting for a pyang worker");
+      }
+      try {
+         while (true) {
+            PyangWorker worker = idle.poll();
+            if (worker != null) {
+               return worker;
+            }
+            ProcessLimiter.Permit permit;
+            waiting.incrementAndGet();
+            try {
+               permit = limiter.tryAcquire(slotDirectory, PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } finally {
+               waiting.decrementAndGet();
+            }
+            if (permit != null) {
+               return startWorker(permit);
+            }
+         }
+      } catch (IOException e) {
+         permits.release();
+         throw e;
+      }
+   }
+
+   private PyangWorker startWorker(ProcessLimiter.Permit permit) throws IOException {
+      PyangWorker worker;
+      try {
+         worker = new PyangWorker(command, environment);
+      } catch (IOException e) {
+         permit.release();
+         throw e;
+      }
+      synchronized (workers) {
+         workers.put(worker, permit);
+         log.debug("Started pyang worker " + workers.size() + " of " + size);
+      }
+      return worker;
+   }
+
+   private void giveBack(PyangWorker worker, boolean healthy) {
+      if (healthy && !isYielding(worker)) {
+         idle.add(worker);
+      } else {
+         if (healthy) {
+            log.debug("Stopping a pyang worker, other goal executions wait for a process");
+            worker.close();
+         } else {
+            worker.destroy();
+         }
+         ProcessLimiter.Permit permit;
+         synchronized (workers) {
+            permit = workers.remove(worker);
+         }
+         if (permit != null) {
+            permit.release();
+         }
+      }
+      permits.release();
+   }
+
+   /**
+    * @param worker
+    * @return true when the worker ran for its time slice and threads other than those of
+    *         the pool wait for a permit
+    */
+   private boolean isYielding(PyangWorker worker) {
+      if (limiter.getQueueLength() <= waiting.get()) {
+         return false;
+      }
+      ProcessLimiter.Permit permit;
+      synchronized (workers) {
+         permit = workers.get(worker);
+      }
+      return permit != null && permit.getHeldMillis() >= WORKER_SLICE_MILLIS;
+   }
+
+   /**
+    * Stop all workers.
+    */
+   void close() {
+      Map<PyangWorker, ProcessLimiter.Permit> all;
+      synchronized (workers) {
+         all = new IdentityHashMap<PyangWorker, ProcessLimiter.Permit>(workers);
+         workers.clear();
+      }
+      idle.clear();
+      for (Map.Entry<PyangWorker, ProcessLimiter.Permit> worker : all.entrySet()) {
+         worker.getKey().close();
+         worker.getValue().release();
+      }
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Operation counters, updated concurrently by the worker threads.
+ */
+class ResultCollector {
+   private final AtomicInteger successCount = new AtomicInteger();
+   private final AtomicInteger failCount = new AtomicInteger();
+   private final AtomicInteger skippedCount = new AtomicInteger();
+   /** files not processed because an earlier operation of the goal failed on them */
+   final AtomicInteger notRunCount = new AtomicInteger();
+   /** failed file paths, sorted so that the summary does not depend on thread scheduling. */
+   private final Set<String> failedFiles = new ConcurrentSkipListSet<String>();
+
+   /** successful files whose output already had the new content, also counted in successCount */
+   final AtomicInteger unchangedCount = new AtomicInteger();
+
+   /** failed files which ran out of time, also counted in failCount */
+   private final AtomicInteger timedOutCount = new AtomicInteger();
+
+   void succeeded() {
+      successCount.incrementAndGet();
+      BuildReport.result("success");
+   }
+
+   void skipped() {
+      skippedCount.incrementAndGet();
+      BuildReport.result("skipped");
+   }
+
+   void failed(File file) {
+      failCount.incrementAndGet();
+      failedFiles.add(file.getPath());
+      BuildReport.result("failed");
+   }
+
+   void timedOut(File file) {
+      timedOutCount.incrementAndGet();
+      failed(file);
+      BuildReport.result("timed-out");
+   }
+
+   /**
+    * Log the counters of the operation at the end of a goal execution.
+    *
+    * @param log
+    * @param operation
+    * @param numberOfFiles
+    */
+   void logSummary(Log log, YangHelperMojo.OperationType operation, int numberOfFiles) {
+      log.info("\nOperation            : " + operation);
+      log.info("Number of yang files : " + numberOfFiles);
+      log.info("Successful           : " + successCount + " file(s)");
+      if (unchangedCount.get() > 0) {
+         log.info("Unchanged output     : " + unchangedCount + " file(s), counted as successful");
+      }
+      log.info("Failed               : " + failCount + " file(s)");
+      log.info("Skipped              : " + skippedCount + " file(s)\n");
+      if (timedOutCount.get() > 0) {
+         log.info("Timed out            : " + timedOutCount + " file(s), counted as failed\n");
+      }
+      if (notRunCount.get() > 0) {
+         log.info("Not run              : " + notRunCount + " file(s), failed in an earlier operation\n");
+      }
+      for (String failedFile : failedFiles) {
+         log.info("Failed file          : " + failedFile);
+      }
+   }
+}
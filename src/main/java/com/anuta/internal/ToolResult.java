@@ -0,0 +1,69 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+/**
+ * Outcome of a single pyang invocation.
+ */
+class ToolResult {
+
+   private final int exitCode;
+   private final String output;
+   private final String error;
+   private final boolean outputChanged;
+
+   ToolResult(int exitCode, String output, String error) {
+      this(exitCode, output, error, true);
+   }
+
+   /**
+    * @param exitCode
+    * @param output
+    * @param error
+    * @param outputChanged false when the output file already had the output content
+    */
+   ToolResult(int exitCode, String output, String error, boolean outputChanged) {
+      this.exitCode = exitCode;
+      this.output = output;
+      this.error = error;
+      this.outputChanged = outputChanged;
+   }
+
+   int getExitCode() {
+      return exitCode;
+   }
+
+   boolean isSuccess() {
+      return exitCode == 0;
+   }
+
+   /**
+    * @return the standard output of pyang.
+    */
+   String getOutput() {
+      return output;
+   }
+
+   /**
+    * @return the standard error of pyang.
+    */
+   String getError() {
+      return error;
+   }
+
+   /**
+    * @return false when the output file was not rewritten, because it already had the
+    *         output content.
+    */
+   boolean isOutputChanged() {
+      return outputChanged;
+   }
+}
@@ -0,0 +1,26 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an external tool does not finish within its time limit. The tool
+ * process has been destroyed.
+ */
+class ToolTimeoutException extends IOException {
+
+   private static final long serialVersionUID = 1L;
+
+   ToolTimeoutException(String message) {
+      super(message);
+   }
+}
@@ -0,0 +1,396 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Splits the files of a goal execution into units of work, single files or batches, and
+ * runs the operations on them on a pool of threads, longest first.
+ */
+class WorkScheduler {
+
+   private final ExecutionContext context;
+   private final int threadCount;
+   /** null when the copies of files are processed like the other files */
+   private final FileDeduplicator deduplicator;
+   private final Log log;
+
+   /**
+    * @param context
+    * @param threadCount the number of files processed concurrently
+    * @param deduplicator null to process every file
+    * @param log
+    */
+   WorkScheduler(ExecutionContext context, int threadCount, FileDeduplicator deduplicator, Log log) {
+      this.context = context;
+      this.threadCount = threadCount;
+      this.deduplicator = deduplicator;
+      this.log = log;
+   }
+
+   /**
+    * Process the files on a pool of threadCount threads. The first
+    * {@link RuntimeException} raised by a file (see failOnError) cancels the
+    * remaining work and is rethrown to the caller.
+    *
+    * @param files
+    * @param runs
+    * @throws MojoExecutionException
+    */
+   void processFiles(List<File> files, final List<OperationRun> runs) throws MojoExecutionException {
+      List<List<File>> units;
+      int poolSize;
+      try {
+         if (deduplicator != null) {
+            files = deduplicator.deduplicate(files, runs);
+         }
+         units = createWorkUnits(files, runs);
+         poolSize = Math.min(threadCount, units.size());
+         if (poolSize > 1) {
+            sortLongestFirst(units, runs);
+         }
+         putBrokenFilesFirst(units, runs);
+      } catch (IOException e) {
+         throw new MojoExecutionException("Unable to read yang files", e);
+      }
+      if (poolSize <= 1) {
+         for (List<File> unit : units) {
+            processUnit(unit, runs);
+         }
+         return;
+      }
+
+      log.debug("Processing files using " + poolSize + " threads");
+      ExecutorService executor = Executors.newFixedThreadPool(poolSize, new WorkerThreadFactory());
+      CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+      try {
+         for (final List<File> unit : units) {
+            completionService.submit(new Callable<Void>() {
+               public Void call() {
+                  processUnit(unit, runs);
+                  return null;
+               }
+            });
+         }
+         for (int i = 0, n = units.size(); i < n; i++) {
+            try {
+               completionService.take().get();
+            } catch (ExecutionException e) {
+               Throwable cause = e.getCause();
+               if (cause instanceof RuntimeException) {
+                  throw (RuntimeException) cause;
+               }
+               if (cause instanceof Error) {
+                  throw (Error) cause;
+               }
+               throw new MojoExecutionException("Failed to process yang files", cause);
+            }
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new MojoExecutionException("Interrupted while processing yang files", e);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Order the units longest first, so that the files taking long do not start last and
+    * stretch the end of a parallel build. The cost of a file is the duration of its last
+    * run recorded in the caches of the operations, nothing for a file known to be up to date.
+    * Files without a recorded duration are estimated from their size, at the average speed
+    * of the files with one, or ordered by size when no duration is recorded at all.
+    * Units keep their scan order when their costs are equal.
+    *
+    * @param units
+    * @param runs
+    * @throws IOException
+    */
+   private void sortLongestFirst(List<List<File>> units, List<OperationRun> runs) throws IOException {
+      int runCount = runs.size();
+      // recorded duration per file and run, -1 when unknown
+      Map<File, long[]> durations = new HashMap<File, long[]>();
+      Map<File, Long> sizes = new HashMap<File, Long>();
+      long[] knownDurations = new long[runCount];
+      long[] knownSizes = new long[runCount];
+      for (List<File> unit : units) {
+         for (File file : unit) {
+            File canonicalFile = context.canonicalFiles.get(file);
+            if (canonicalFile == null) {
+               canonicalFile = file.getCanonicalFile();
+            }
+            String path = context.getCachePath(canonicalFile);
+            Fingerprint fingerprint = context.fingerprints.get(canonicalFile);
+            long size = fingerprint != null ? fingerprint.size : canonicalFile.length();
+            long[] fileDurations = new long[runCount];
+            for (int i = 0; i < runCount; i++) {
+               OperationRun run = runs.get(i);
+               if (fingerprint != null && run.isUpToDate(canonicalFile, fingerprint.hash, path)) {
+                  fileDurations[i] = 0;
+                  continue;
+               }
+               fileDurations[i] = run.hashCache == null ? -1 : run.hashCache.getDuration(path);
+               if (fileDurations[i] > 0) {
+                  knownDurations[i] += fileDurations[i];
+                  knownSizes[i] += size;
+               }
+            }
+            durations.put(file, fileDurations);
+            sizes.put(file, size);
+         }
+      }
+
+      final Map<List<File>, Long> costs = new IdentityHashMap<List<File>, Long>();
+      long total = 0;
+      for (List<File> unit : units) {
+         long cost = 0;
+         for (File file : unit) {
+            long[] fileDurations = durations.get(file);
+            for (int i = 0; i < runCount; i++) {
+               if (fileDurations[i] >= 0) {
+                  cost += fileDurations[i];
+               } else if (knownSizes[i] > 0) {
+                  cost += (long) ((double) knownDurations[i] / knownSizes[i] * sizes.get(file));
+               } else {
+                  cost += sizes.get(file);
+               }
+            }
+         }
+         costs.put(unit, cost);
+         total += cost;
+      }
+      Collections.sort(units, new Comparator<List<File>>() {
+         public int compare(List<File> unit, List<File> other) {
+            return costs.get(other).compareTo(costs.get(unit));
+         }
+      });
+      boolean timed = false;
+      for (long known : knownSizes) {
+         timed |= known > 0;
+      }
+      if (timed) {
+         log.debug("Scheduling " + units.size() + " unit(s) longest first, the longest takes about "
+                  + TimeUnit.NANOSECONDS.toMillis(costs.get(units.get(0))) + "ms of "
+                  + TimeUnit.NANOSECONDS.toMillis(total) + "ms");
+      } else {
+         log.debug("Scheduling " + units.size() + " unit(s) largest first, no durations are recorded yet");
+      }
+   }
+
+   /**
+    * Move the units with files known to have a syntax error to the front, so that they
+    * fail before the external tool runs on the other files, and stop the build early with
+    * failOnError. The errors are known for the changed files parsed by
+    * {@link DependencyGraphBuilder#build(List, FileHashCache)}.
+    *
+    * @param units
+    * @param runs
+    * @throws IOException
+    */
+   private void putBrokenFilesFirst(List<List<File>> units, List<OperationRun> runs) throws IOException {
+      boolean syntaxChecked = false;
+      for (OperationRun run : runs) {
+         syntaxChecked |= run.mojo.isSyntaxChecked();
+      }
+      if (!syntaxChecked || context.syntaxErrors.isEmpty()) {
+         return;
+      }
+      List<List<File>> broken = new ArrayList<List<File>>();
+      for (Iterator<List<File>> i = units.iterator(); i.hasNext();) {
+         List<File> unit = i.next();
+         for (File file : unit) {
+            if (context.syntaxErrors.containsKey(file.getCanonicalFile())) {
+               broken.add(unit);
+               i.remove();
+               break;
+            }
+         }
+      }
+      units.addAll(0, broken);
+   }
+
+   /**
+    * Run the operations on a unit of files, see {@link #createWorkUnits(List, List)}. A file
+    * is not passed to the next operation when an operation fails on it.
+    *
+    * @param unit
+    * @param runs
+    */
+   private void processUnit(List<File> unit, List<OperationRun> runs) {
+      List<File> remaining = unit;
+      // the copies of the files in the unit which passed the operations so far
+      Map<File, List<File>> copies = new HashMap<File, List<File>>();
+      for (File file : unit) {
+         File canonicalFile = context.canonicalFiles.get(file);
+         List<File> duplicates = context.duplicates.get(canonicalFile);
+         if (duplicates != null) {
+            copies.put(canonicalFile, duplicates);
+         }
+      }
+      for (int i = 0, n = runs.size(); i < n && !remaining.isEmpty(); i++) {
+         OperationRun run = runs.get(i);
+         List<File> passed;
+         if (remaining.size() > 1 && run.mojo.getBatchSize() > 1) {
+            passed = run.mojo.performBatchOperation(remaining, run, context);
+         } else {
+            passed = new ArrayList<File>(remaining.size());
+            for (File file : remaining) {
+               if (run.mojo.performOperation(file, run, context)) {
+                  passed.add(file);
+               }
+            }
+         }
+         Set<File> passedFiles = new HashSet<File>();
+         for (File file : passed) {
+            passedFiles.add(context.canonicalFiles.get(file));
+         }
+         List<File> notPassed = new ArrayList<File>();
+         for (File file : remaining) {
+            File canonicalFile = context.canonicalFiles.get(file);
+            if (!passedFiles.contains(canonicalFile)) {
+               notPassed.add(canonicalFile);
+            }
+         }
+         if (!copies.isEmpty()) {
+            notPassed.addAll(deduplicator.shareResults(remaining, passedFiles, copies, run));
+         }
+         for (int j = i + 1; j < n; j++) {
+            OperationRun notRun = runs.get(j);
+            notRun.resultCollector.notRunCount.addAndGet(notPassed.size());
+            // the files may have needed the operation, do not leave them current in its cache
+            if (notRun.hashCache != null) {
+               for (File file : notPassed) {
+                  notRun.hashCache.invalidate(context.getCachePath(file));
+               }
+            }
+         }
+         remaining = passed;
+      }
+   }
+
+   /**
+    * Split the files into the units handed to the worker threads: single files, or
+    * batches when an operation processes several files at once, see {@link YangHelperMojo#getBatchSize()}.
+    * Batches are filled with whole groups of files: the files of a directory, or of a
+    * dependency component when the operation groups by dependencies. A batch only holds
+    * files of one directory, the working directory of its run, so that pyang searches
+    * the imports of every file in the same places as when the file is run on its own.
+    *
+    * @param files
+    * @param runs
+    * @return
+    * @throws IOException
+    */
+   private List<List<File>> createWorkUnits(List<File> files, List<OperationRun> runs) throws IOException {
+      OperationRun batchRun = null;
+      for (OperationRun run : runs) {
+         if (run.mojo.getBatchSize() > 1 && (batchRun == null || run.mojo.getBatchSize() > batchRun.mojo.getBatchSize())) {
+            batchRun = run;
+         }
+      }
+      List<List<File>> units = new ArrayList<List<File>>();
+      if (batchRun == null) {
+         for (int i = 0, n = files.size(); i < n; i++) {
+            units.add(Collections.singletonList(files.get(i)));
+         }
+         return units;
+      }
+
+      // groups by directory, then by dependency component within the directory
+      Map<String, Map<String, List<File>>> directories = new TreeMap<String, Map<String, List<File>>>();
+      ModuleDependencyGraph graph = batchRun.dependencyGraph;
+      boolean byDependencies = YangHelperMojo.BATCH_BY_DEPENDENCIES.equalsIgnoreCase(batchRun.mojo.getBatchGrouping());
+      if (byDependencies && graph == null) {
+         log.debug("No dependency graph for " + batchRun.mojo.getOperation() + ", batching by directory");
+      }
+      Map<File, File> components = byDependencies && graph != null ? graph.getComponents() : null;
+      for (int i = 0, n = files.size(); i < n; i++) {
+         File file = files.get(i).getCanonicalFile();
+         File directory = file.getParentFile();
+         File key = components != null && components.containsKey(file) ? components.get(file) : directory;
+         Map<String, List<File>> groups = directories.get(directory.getPath());
+         if (groups == null) {
+            groups = new TreeMap<String, List<File>>();
+            directories.put(directory.getPath(), groups);
+         }
+         List<File> group = groups.get(key.getPath());
+         if (group == null) {
+            group = new ArrayList<File>();
+            groups.put(key.getPath(), group);
+         }
+         group.add(file);
+      }
+      // fill the batches with whole groups, only groups larger than a batch are split
+      int batchSize = batchRun.mojo.getBatchSize();
+      List<File> batch = new ArrayList<File>();
+      for (Map<String, List<File>> groups : directories.values()) {
+         if (!batch.isEmpty()) {
+            units.add(batch);
+            batch = new ArrayList<File>();
+         }
+         for (List<File> group : groups.values()) {
+            if (batch.size() + group.size() > batchSize && !batch.isEmpty()) {
+               units.add(batch);
+               batch = new ArrayList<File>();
+            }
+            for (File file : group) {
+               if (batch.size() == batchSize) {
+                  units.add(batch);
+                  batch = new ArrayList<File>();
+               }
+               batch.add(file);
+            }
+         }
+      }
+      if (!batch.isEmpty()) {
+         units.add(batch);
+      }
+      log.debug(files.size() + " file(s) in " + units.size() + " batch(es) of up to " + batchSize);
+      return units;
+   }
+
+   /**
+    * Names the worker threads so that their log output can be told apart.
+    */
+   private static class WorkerThreadFactory implements ThreadFactory {
+      private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+      public Thread newThread(Runnable r) {
+         Thread thread = new Thread(r, "yang-worker-" + threadNumber.getAndIncrement());
+         thread.setDaemon(true);
+         return thread;
+      }
+   }
+}
@@ -0,0 +1,213 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * The 64 bit xxHash (XXH64) function. It is several times faster than MD5 and good
+ * enough to notice changed files, but it is not a cryptographic hash.
+ */
+final class XXHash64 {
+
+   private static final long PRIME1 = 0x9E3779B185EBCA87L;
+   private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+   private static final long PRIME3 = 0x165667B19E3779F9L;
+   private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+   private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+   private XXHash64() {
+   }
+
+   /**
+    * Hash the remaining bytes of the buffer, without changing its position.
+    *
+    * @param buffer
+    * @param seed
+    * @return
+    */
+   static long hash(ByteBuffer buffer, long seed) {
+      ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      int pos = in.position();
+      int end = in.limit();
+      long hash;
+      if (end - pos >= 32) {
+         long v1 = seed + PRIME1 + PRIME2;
+         long v2 = seed + PRIME2;
+         long v3 = seed;
+         long v4 = seed - PRIME1;
+         int limit = end - 32;
+         do {
+            v1 = round(v1, in.getLong(pos));
+            v2 = round(v2, in.getLong(pos + 8));
+            v3 = round(v3, in.getLong(pos + 16));
+            v4 = round(v4, in.getLong(pos + 24));
+            pos += 32;
+         } while (pos <= limit);
+         hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                  + Long.rotateLeft(v4, 18);
+         hash = merge(hash, v1);
+         hash = merge(hash, v2);
+         hash = merge(hash, v3);
+         hash = merge(hash, v4);
+      } else {
+         hash = seed + PRIME5;
+      }
+      hash += end - in.position();
+      return finish(hash, in, pos, end);
+   }
+
+   /**
+    * Mix the last bytes, less than 32, into the hash and avalanche it.
+    *
+    * @param hash
+    * @param in a little endian buffer
+    * @param pos index of the first byte
+    * @param end index after the last byte
+    * @return
+    */
+   private static long finish(long hash, ByteBuffer in, int pos, int end) {
+      while (pos + 8 <= end) {
+         hash ^= round(0, in.getLong(pos));
+         hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+         pos += 8;
+      }
+      if (pos + 4 <= end) {
+         hash ^= (in.getInt(pos) & 0xFFFFFFFFL) * PRIME1;
+         hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+         pos += 4;
+      }
+      while (pos < end) {
+         hash ^= (in.get(pos) & 0xFF) * PRIME5;
+         hash = Long.rotateLeft(hash, 11) * PRIME1;
+         pos++;
+      }
+
+      hash ^= hash >>> 33;
+      hash *= PRIME2;
+      hash ^= hash >>> 29;
+      hash *= PRIME3;
+      hash ^= hash >>> 32;
+      return hash;
+   }
+
+   /**
+    * @param text
+    * @return the hash of the UTF-8 bytes of the text as 16 hex digits.
+    */
+   static String hashHex(String text) {
+      return toHex(hash(ByteBuffer.wrap(text.getBytes(UTF_8)), 0));
+   }
+
+   static String toHex(long hash) {
+      char[] digits = new char[16];
+      for (int i = 15; i >= 0; i--) {
+         digits[i] = HEX_DIGITS[(int) hash & 0xF];
+         hash >>>= 4;
+      }
+      return new String(digits);
+   }
+
+   /**
+    * Hash of bytes given in chunks, for files read through a fixed buffer. The result is
+    * the hash of all the bytes, as {@link XXHash64#hash(ByteBuffer, long)} computes it.
+    */
+   static final class Streaming {
+      private final long seed;
+      private long v1;
+      private long v2;
+      private long v3;
+      private long v4;
+      private long length;
+
+      /** the bytes of the current stripe of 32 bytes, which is not complete yet */
+      private final ByteBuffer stripe = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+
+      Streaming(long seed) {
+         this.seed = seed;
+         v1 = seed + PRIME1 + PRIME2;
+         v2 = seed + PRIME2;
+         v3 = seed;
+         v4 = seed - PRIME1;
+      }
+
+      /**
+       * Add the remaining bytes of the buffer, without changing its position.
+       *
+       * @param buffer
+       */
+      void update(ByteBuffer buffer) {
+         ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+         length += in.remaining();
+         if (stripe.position() > 0) {
+            while (stripe.hasRemaining() && in.hasRemaining()) {
+               stripe.put(in.get());
+            }
+            if (stripe.hasRemaining()) {
+               return;
+            }
+            round(stripe, 0);
+            stripe.clear();
+         }
+         int pos = in.position();
+         int limit = in.limit() - 32;
+         while (pos <= limit) {
+            round(in, pos);
+            pos += 32;
+         }
+         in.position(pos);
+         stripe.put(in);
+      }
+
+      private void round(ByteBuffer in, int pos) {
+         v1 = XXHash64.round(v1, in.getLong(pos));
+         v2 = XXHash64.round(v2, in.getLong(pos + 8));
+         v3 = XXHash64.round(v3, in.getLong(pos + 16));
+         v4 = XXHash64.round(v4, in.getLong(pos + 24));
+      }
+
+      /**
+       * @return the hash of the bytes added so far
+       */
+      long digest() {
+         long hash;
+         if (length >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                     + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+         } else {
+            hash = seed + PRIME5;
+         }
+         hash += length;
+         return finish(hash, stripe, 0, stripe.position());
+      }
+   }
+
+   private static long round(long acc, long input) {
+      acc += input * PRIME2;
+      acc = Long.rotateLeft(acc, 31);
+      return acc * PRIME1;
+   }
+
+   private static long merge(long hash, long value) {
+      hash ^= round(0, value);
+      return hash * PRIME1 + PRIME4;
+   }
+}
@@ -16,13 +16,17 @@ package com.anuta.internal;
  * limitations under the License.
  */
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.StringUtils;
 
 /**
  * Created by Aakash on 10/12/2015.
@@ -34,9 +38,13 @@ import org.apache.maven.plugin.MojoFailureException;
  *
  * @goal compile
  * @requiresProject false
+ * @threadSafe
  */
 public class YangCompiler extends YangHelperMojo {
-   private static final String COMPILE_CACHE_PROPERTIES_FILENAME = "yang-compile-cache.properties";
+   private static final String COMPILE_CACHE_FILENAME = "yang-compile-cache.bin";
+
+   /** pyang diagnostic: <code>file:line[:column]: error|warning: message</code> */
+   private static final Pattern DIAGNOSTIC = Pattern.compile("^(.+?):(\\d+)(?::\\d+)?: (error|warning): .*$");
 
    /**
     * list of custom arguments which can be passed while compiling yang
@@ -45,6 +53,33 @@ public class YangCompiler extends YangHelperMojo {
     * @parameter
     */
    private String[] compileArgs;
+
+   /**
+    * Number of files validated by a single pyang run. Imports shared by the files of
+    * a batch are then parsed once per batch instead of once per file. The default of 1
+    * runs pyang for every file.
+    *
+    * @parameter default-value="1" expression="${yang.compileBatchSize}"
+    */
+   private int compileBatchSize = 1;
+
+   /**
+    * How files are grouped into batches: <code>directory</code>, or
+    * <code>dependencies</code> to keep modules connected by imports and includes together.
+    * A batch never mixes directories, pyang runs in the directory of its files.
+    *
+    * @parameter default-value="directory" expression="${yang.compileBatchGrouping}"
+    */
+   private String compileBatchGrouping = "directory";
+
+   /**
+    * Check the syntax of the files with the plugin's own yang parser before running pyang.
+    * Files with unbalanced braces, unterminated strings or missing semicolons then fail
+    * without starting pyang, and are reported with the line and column of the error.
+    *
+    * @parameter default-value="true" expression="${yang.syntaxCheck}"
+    */
+   private boolean syntaxCheck = true;
    
    public void execute() throws MojoExecutionException, MojoFailureException {
       getLog().info("GOAL is " + OperationType.COMPILE);
@@ -58,7 +93,12 @@ public class YangCompiler extends YangHelperMojo {
 
    @Override
    public String getCacheFile() {
-      return COMPILE_CACHE_PROPERTIES_FILENAME;
+      return COMPILE_CACHE_FILENAME;
+   }
+
+   @Override
+   boolean isDependencyAware() {
+      return true;
    }
 
    @Override
@@ -66,52 +106,115 @@ public class YangCompiler extends YangHelperMojo {
       return compileArgs;
    }
 
-   
+   void setCompileArgs(String[] compileArgs) {
+      this.compileArgs = compileArgs;
+   }
+
+   void setCompileBatchSize(int compileBatchSize) {
+      this.compileBatchSize = compileBatchSize;
+   }
+
+   void setCompileBatchGrouping(String compileBatchGrouping) {
+      this.compileBatchGrouping = compileBatchGrouping;
+   }
+
+   void setSyntaxCheck(boolean syntaxCheck) {
+      this.syntaxCheck = syntaxCheck;
+   }
+
+   @Override
+   boolean isSyntaxChecked() {
+      return syntaxCheck;
+   }
+
+   @Override
+   int getBatchSize() {
+      return compileBatchSize;
+   }
+
+   @Override
+   String getBatchGrouping() {
+      return compileBatchGrouping;
+   }
+
+   /**
+    * The pyang arguments validating the files, the same for a single file and for a batch,
+    * and those recorded in the configuration key: no output format, pyang only validates.
+    *
+    * @param files
+    * @return
+    * @throws IOException
+    */
+   List<String> getCompileArguments(List<File> files) throws IOException {
+      List<String> arguments = getPyangArguments(OperationType.COMPILE);
+      for (File file : files) {
+         arguments.add(file.getCanonicalPath());
+      }
+      return arguments;
+   }
+
    @Override
    public boolean performOperation(File file)
                   throws IOException {
-      StringBuilder result = new StringBuilder();
-      try {
-         List<String> commandString = getCommandString(OperationType.FORMAT);
-         commandString.add(file.getCanonicalPath());
-         ProcessBuilder pb = new ProcessBuilder(commandString);
-         pb.directory(file.getParentFile());
-         if(null != getYangMODPath()){
-            pb.environment().put("YANG_MODPATH",getYangMODPath());
+      ToolResult result = runPyang(getCompileArguments(Collections.singletonList(file)), file.getParentFile(), null);
+      if(!result.isSuccess()) {
+         getLog().error("Failed to compile file " + file.getName());
+         getLog().error(result.getError());
+         throw new RuntimeException(result.getError());
+      }
+      return true;
+   }
+
+   /**
+    * Validate the files with one pyang run and attribute the reported errors to the files.
+    * The files of a batch share a directory, which is the working directory of the run as
+    * when a file is validated on its own, so imports are found in the same places.
+    */
+   @Override
+   Map<File, String> performOperation(List<File> files) throws IOException {
+      File directory = files.get(0).getParentFile();
+      for (File file : files) {
+         if (!directory.equals(file.getParentFile())) {
+            getLog().debug("Batch spans several directories, validating file by file: " + files);
+            return null;
+         }
+      }
+      List<String> arguments = getCompileArguments(files);
+      ToolResult result = runPyang(arguments, directory, null);
+      Map<File, String> failures = new HashMap<File, String>();
+      if (result.isSuccess()) {
+         return failures;
+      }
+
+      Map<String, File> byPath = new HashMap<String, File>();
+      for (File file : files) {
+         byPath.put(file.getCanonicalPath(), file);
+      }
+      Map<File, StringBuilder> errors = new HashMap<File, StringBuilder>();
+      for (String line : StringUtils.split(result.getError(), "\n")) {
+         Matcher matcher = DIAGNOSTIC.matcher(line.trim());
+         if (!matcher.matches() || !"error".equals(matcher.group(3))) {
+            continue;
          }
-         getLog().debug("Executing command " + commandString.toString());
-         Process pr = pb.start();
-         BufferedReader input = new BufferedReader(new InputStreamReader(pr.getInputStream()));
-         String line=null;
-
-         while((line=input.readLine()) != null) {
-            result.append(line);
-            result.append("\n");
+         File file = byPath.get(new File(matcher.group(1)).getCanonicalPath());
+         if (file == null) {
+            // an error in an imported module: only a file by file run tells who is affected
+            getLog().debug("Cannot attribute pyang error to a file of the batch: " + line);
+            return null;
          }
-         int exitVal = pr.waitFor();
-         if(exitVal != 0) {
-            BufferedReader error = new BufferedReader(new InputStreamReader(pr.getErrorStream()));
-            StringBuilder errorBuilder = new StringBuilder();
-            String err=null;
-
-            while((err=error.readLine()) != null) {
-               errorBuilder.append(err);
-               errorBuilder.append("\n");
-            }
-            getLog().error("Failed to compile file " + file.getName());
-            getLog().error(errorBuilder.toString());
-               throw new RuntimeException(errorBuilder.toString());
+         StringBuilder builder = errors.get(file);
+         if (builder == null) {
+            builder = new StringBuilder();
+            errors.put(file, builder);
          }
-      } catch (IOException e) {
-         e.printStackTrace();
-      } catch (InterruptedException e) {
-         e.printStackTrace();
+         builder.append(line).append("\n");
       }
-
-      if (result == null) {
-         return false;
+      if (errors.isEmpty()) {
+         return null;
       }
-      return true;
-
+      for (Map.Entry<File, StringBuilder> entry : errors.entrySet()) {
+         failures.put(entry.getKey(), entry.getValue().toString());
+      }
+      return failures;
    }
 }
@@ -16,13 +16,20 @@ package com.anuta.internal;
  * limitations under the License.
  */
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.IOUtil;
 
 /**
  * Created by Aakash on 10/12/2015.
@@ -34,9 +41,10 @@ import org.apache.maven.plugin.MojoFailureException;
  *
  * @goal convert
  * @requiresProject false
+ * @threadSafe
  */
 public class YangConverter extends YangHelperMojo {
-   private static final String CONVERT_CACHE_PROPERTIES_FILENAME = "yin-yang-convert-cache.properties";
+   private static final String CONVERT_CACHE_FILENAME = "yin-yang-convert-cache.bin";
 
    /**
     * list of custom arguments which can be passed while converting yang to yin
@@ -45,12 +53,52 @@ public class YangConverter extends YangHelperMojo {
     * @parameter
     */
    private String[] convertArgs;
+
+   /**
+    * Directory of a content addressed cache of converted yin files, keyed by the
+    * yang content, the pyang version and the arguments. It can be shared between
+    * projects and build agents, for example on a mounted volume, so that files
+    * converted once do not need pyang again. Disabled when not specified.
+    *
+    * @parameter expression="${yang.outputCacheDirectory}"
+    */
+   private File outputCacheDirectory;
+
+   private YinWriter yinWriter;
+
+   /** the module index the yin writer resolves imports with */
+   private ModuleIndex yinWriterIndex;
+
+   private OutputCache outputCache;
    
    public void execute() throws MojoExecutionException, MojoFailureException {
       getLog().info("GOAL is " + OperationType.CONVERT);
       executeGoal(OperationType.CONVERT);
    }
 
+   @Override
+   void beforeOperations() {
+      if (outputCacheDirectory != null) {
+         outputCache = new OutputCache(outputCacheDirectory, ".yin");
+      }
+   }
+
+   @Override
+   void afterOperations() {
+      if (outputCache != null) {
+         getLog().info("Output cache " + outputCacheDirectory + ": " + outputCache.getRestoredCount()
+                  + " file(s) restored, " + outputCache.getStoredCount() + " file(s) stored");
+      }
+   }
+
+   void setConvertArgs(String[] convertArgs) {
+      this.convertArgs = convertArgs;
+   }
+
+   void setOutputCacheDirectory(File outputCacheDirectory) {
+      this.outputCacheDirectory = outputCacheDirectory;
+   }
+
    @Override
    public OperationType getOperation() {
       return OperationType.CONVERT;
@@ -58,7 +106,12 @@ public class YangConverter extends YangHelperMojo {
 
    @Override
    public String getCacheFile() {
-      return CONVERT_CACHE_PROPERTIES_FILENAME;
+      return CONVERT_CACHE_FILENAME;
+   }
+
+   @Override
+   boolean isDependencyAware() {
+      return true;
    }
 
    @Override
@@ -67,54 +120,153 @@ public class YangConverter extends YangHelperMojo {
    }
 
    @Override
-   boolean performOperation(File file) throws IOException {
+   boolean hasJavaBackend() {
+      return true;
+   }
 
-         StringBuilder result = new StringBuilder();
-         try {
-            List<String> commandString = getCommandString(OperationType.CONVERT);
-            commandString.add(file.getCanonicalPath());
-            ProcessBuilder pb = new ProcessBuilder(commandString);
-            pb.directory(file.getParentFile());
-            if(null != getYangMODPath()){
-               pb.environment().put("YANG_MODPATH",getYangMODPath());
-            }
-            Process pr = pb.start();
-            BufferedReader input = new BufferedReader(new InputStreamReader(pr.getInputStream()));
-            String line=null;
+   @Override
+   String getJavaBackendVersion() {
+      return YinWriter.VERSION;
+   }
 
-            while((line=input.readLine()) != null) {
-               result.append(line);
-               result.append("\n");
-            }
-            int exitVal = pr.waitFor();
-            if(exitVal != 0) {
-               BufferedReader error = new BufferedReader(new InputStreamReader(pr.getErrorStream()));
-               StringBuilder errorBuilder = new StringBuilder();
-               String err=null;
-
-               while((err=error.readLine()) != null) {
-                  errorBuilder.append(err);
-                  errorBuilder.append("\n");
-               }
-               getLog().error("Failed to convert file "+file.getName());
-               getLog().error(errorBuilder.toString());
-               throw new RuntimeException(errorBuilder.toString());
+   @Override
+   boolean performOperation(File file) throws IOException {
+      File yinFile = new File(getYinFileName(file));
+      String cacheKey = null;
+      if (outputCache != null) {
+         cacheKey = getOutputCacheKey(file);
+      }
+      if (cacheKey != null) {
+         OutputCache.Restore restore = outputCache.restore(cacheKey, yinFile);
+         if (restore != OutputCache.Restore.MISSING) {
+            getLog().debug("Restored " + yinFile + " from output cache");
+            if (restore == OutputCache.Restore.UNCHANGED) {
+               outputUnchanged(yinFile);
             }
-         } catch (InterruptedException e) {
-            e.printStackTrace();
+            return true;
+         }
+      }
+      boolean converted = convert(file, yinFile);
+      if (converted && cacheKey != null) {
+         try {
+            outputCache.store(cacheKey, yinFile);
+         } catch (IOException e) {
+            getLog().warn("Cannot store " + yinFile + " in output cache", e);
          }
+      }
+      return converted;
+   }
+
+   @Override
+   void copyResult(File processed, File file, boolean success) throws IOException {
+      if (!success) {
+         return;
+      }
+      File yinFile = new File(getYinFileName(file));
+      if (!AtomicFile.copyIfChanged(new File(getYinFileName(processed)), yinFile)) {
+         outputUnchanged(yinFile);
+      }
+   }
+
+   /**
+    * The output cache key: the yang content and everything else the yin output depends on.
+    * The yin output holds the namespaces and prefixes of the imported modules, so the key
+    * includes the content of the files the imports resolve to, instead of the search path:
+    * builds with the same modules in other directories share the entries.
+    *
+    * @param file
+    * @return the key, or null when the dependencies of the file are unknown
+    * @throws IOException
+    */
+   private String getOutputCacheKey(File file) throws IOException {
+      List<String> dependencyHashes = getResolvedDependencyHashes(file);
+      if (dependencyHashes == null) {
+         return null;
+      }
+      String contentHash;
+      InputStream in = null;
+      try {
+         in = new FileInputStream(file);
+         contentHash = DigestUtils.sha256Hex(in);
+      } finally {
+         IOUtil.close(in);
+      }
+      return OutputCache.key(contentHash, getToolVersion(), getPyangArguments(OperationType.CONVERT).toString(),
+               dependencyHashes.toString());
+   }
 
-         if (result == null) {
-            return false;
+   private boolean convert(File file, File yinFile) throws IOException {
+      if (isJavaBackend()) {
+         return convertWithJava(file, yinFile);
+      }
+      ToolResult result = runPyang(OperationType.CONVERT, file, yinFile);
+      if(!result.isSuccess()) {
+         getLog().error("Failed to convert file " + file.getName());
+         getLog().error(result.getError());
+         throw new RuntimeException(result.getError());
+      }
+      return true;
+   }
+
+   /**
+    * Convert using the built in yang parser and yin writer.
+    *
+    * @param file
+    * @param yinFile
+    * @return
+    * @throws IOException
+    */
+   private boolean convertWithJava(File file, File yinFile) throws IOException {
+      YangStatement module;
+      try {
+         module = YangParser.parseFile(file, getEncoding());
+      } catch (YangParseException e) {
+         throw failed(file, e);
+      }
+      File temp = AtomicFile.createTemp(yinFile);
+      boolean committed = false;
+      Writer yin = null;
+      try {
+         yin = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+         try {
+            getYinWriter().write(module, file, yin);
+         } catch (YangParseException e) {
+            // a statement which has no yin form
+            throw failed(file, e);
+         }
+         yin.close();
+         boolean changed = AtomicFile.commitIfChanged(temp, yinFile);
+         committed = true;
+         if (!changed) {
+            outputUnchanged(yinFile);
          }
-      
-         String convertedCode = result.toString();
-         File yinFile = new File(getYinFileName(file));
-         if(!yinFile.exists()){
-            yinFile.createNewFile();
+      } finally {
+         IOUtil.close(yin);
+         if (!committed) {
+            AtomicFile.discard(temp);
          }
-         writeStringToFile(convertedCode, yinFile);
-         return true;
+      }
+      return true;
+   }
+
+   /**
+    * Log the error in the file and return the failure to throw, like a failed pyang run.
+    */
+   private RuntimeException failed(File file, YangParseException e) {
+      getLog().error("Failed to convert file " + file.getName());
+      getLog().error(e.getMessage());
+      return new RuntimeException(e.getMessage(), e);
+   }
+
+   private synchronized YinWriter getYinWriter() {
+      // the modules parsed for one goal execution may change before the next, see the watch goal
+      ModuleIndex index = getModuleIndex();
+      if (yinWriter == null || yinWriterIndex != index) {
+         boolean prettyStrings = convertArgs != null && Arrays.asList(convertArgs).contains("--yin-pretty-strings");
+         yinWriter = new YinWriter(new YangModuleResolver(index, getEncoding()), prettyStrings);
+         yinWriterIndex = index;
+      }
+      return yinWriter;
    }
 
    private String getYinFileName(File yangFile){
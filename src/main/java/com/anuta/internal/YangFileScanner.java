@@ -0,0 +1,189 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.codehaus.plexus.util.AbstractScanner;
+
+/**
+ * Finds the yang files below directories with include and exclude patterns, see
+ * {@link AntPathMatcher}. Directories which are excluded or cannot hold an included file
+ * are not entered, the default excludes of version control directories always apply
+ * and symbolic links are followed. The file attributes read during the walk are returned
+ * with the files, so that they need not be read again.
+ */
+final class YangFileScanner {
+
+   private static final String YANG_EXTENSION = ".yang";
+
+   private static final AntPathMatcher[] DEFAULT_EXCLUDES = AntPathMatcher.compile(AbstractScanner.DEFAULTEXCLUDES);
+
+   private final AntPathMatcher[] includes;
+   private final AntPathMatcher[] excludes;
+
+   /**
+    * @param includes
+    * @param excludes
+    */
+   YangFileScanner(String[] includes, String[] excludes) {
+      this.includes = AntPathMatcher.compile(includes);
+      AntPathMatcher[] configured = AntPathMatcher.compile(excludes);
+      this.excludes = new AntPathMatcher[configured.length + DEFAULT_EXCLUDES.length];
+      System.arraycopy(configured, 0, this.excludes, 0, configured.length);
+      System.arraycopy(DEFAULT_EXCLUDES, 0, this.excludes, configured.length, DEFAULT_EXCLUDES.length);
+   }
+
+   /**
+    * Scan the directories, up to the given number of them concurrently.
+    *
+    * @param directories
+    * @param threads
+    * @return the files with their attributes, in the order of the directories
+    * @throws IOException
+    */
+   Map<File, BasicFileAttributes> scan(List<File> directories, int threads) throws IOException {
+      Map<File, BasicFileAttributes> files = new LinkedHashMap<File, BasicFileAttributes>();
+      int poolSize = Math.min(threads, directories.size());
+      if (poolSize <= 1) {
+         for (File directory : directories) {
+            files.putAll(scan(directory));
+         }
+         return files;
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ScannerThreadFactory());
+      try {
+         List<Future<Map<File, BasicFileAttributes>>> results = new ArrayList<Future<Map<File, BasicFileAttributes>>>();
+         for (final File directory : directories) {
+            results.add(executor.submit(new Callable<Map<File, BasicFileAttributes>>() {
+               public Map<File, BasicFileAttributes> call() throws IOException {
+                  return scan(directory);
+               }
+            }));
+         }
+         for (Future<Map<File, BasicFileAttributes>> result : results) {
+            files.putAll(result.get());
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while scanning " + directories, e);
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         throw new IOException("Unable to scan " + directories, cause);
+      } finally {
+         executor.shutdownNow();
+      }
+      return files;
+   }
+
+   /**
+    * @param directory
+    * @return the files below the directory with their attributes
+    * @throws IOException
+    */
+   Map<File, BasicFileAttributes> scan(File directory) throws IOException {
+      final Map<File, BasicFileAttributes> files = new LinkedHashMap<File, BasicFileAttributes>();
+      final Path root = directory.toPath();
+      Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+               new SimpleFileVisitor<Path>() {
+                  @Override
+                  public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                     if (dir.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                     }
+                     Path relativePath = root.relativize(dir);
+                     return isSkipped(relativePath) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                  }
+
+                  @Override
+                  public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                     if (attributes.isRegularFile() && file.getFileName().toString().endsWith(YANG_EXTENSION)
+                              && isIncluded(root.relativize(file))) {
+                        files.put(file.toFile(), attributes);
+                     }
+                     return FileVisitResult.CONTINUE;
+                  }
+
+                  @Override
+                  public FileVisitResult visitFileFailed(Path file, IOException e) {
+                     // unreadable directories and symbolic link loops are ignored
+                     return FileVisitResult.CONTINUE;
+                  }
+               });
+      return files;
+   }
+
+   private boolean isIncluded(Path relativePath) {
+      for (AntPathMatcher exclude : excludes) {
+         if (exclude.matches(relativePath)) {
+            return false;
+         }
+      }
+      for (AntPathMatcher include : includes) {
+         if (include.matches(relativePath)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private boolean isSkipped(Path relativeDirectory) {
+      for (AntPathMatcher exclude : excludes) {
+         if (exclude.matchesAllBelow(relativeDirectory)) {
+            return true;
+         }
+      }
+      for (AntPathMatcher include : includes) {
+         if (include.couldMatchBelow(relativeDirectory)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Names the scanner threads, which must not keep the JVM running.
+    */
+   private static class ScannerThreadFactory implements ThreadFactory {
+      private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+      public Thread newThread(Runnable r) {
+         Thread thread = new Thread(r, "yang-scanner-" + threadNumber.getAndIncrement());
+         thread.setDaemon(true);
+         return thread;
+      }
+   }
+}
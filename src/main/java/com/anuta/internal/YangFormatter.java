@@ -16,13 +16,19 @@ package com.anuta.internal;
  * limitations under the License.
  */
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.List;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
 
 /**
  * Created by Aakash on 10/12/2015.
@@ -34,9 +40,10 @@ import org.apache.maven.plugin.MojoFailureException;
  *
  * @goal format
  * @requiresProject false
+ * @threadSafe
  */
 public class YangFormatter extends YangHelperMojo {
-   private static final String FORMAT_CACHE_PROPERTIES_FILENAME = "yang-format-cache.properties";
+   private static final String FORMAT_CACHE_FILENAME = "yang-format-cache.bin";
 
    /**
     * list of custom arguments which can be passed while converting yang to yin
@@ -45,7 +52,35 @@ public class YangFormatter extends YangHelperMojo {
     * @parameter
     */
    private String[] formatArgs;
-   
+
+   /**
+    * Only report the files which are not formatted, without rewriting them. The goal fails
+    * when there are such files and failOnError is set.
+    *
+    * @parameter default-value="false" expression="${yang.formatCheck}"
+    */
+   private boolean formatCheck;
+
+   /**
+    * Spaces per nesting level, used by the java backend.
+    *
+    * @parameter default-value="2" expression="${yang.formatIndent}"
+    */
+   private int formatIndent = 2;
+
+   /**
+    * Line length from which an argument is moved to its own line by the java backend,
+    * 0 for no limit.
+    *
+    * @parameter default-value="80" expression="${yang.formatLineLength}"
+    */
+   private int formatLineLength = 80;
+
+   private final AtomicInteger unformattedCount = new AtomicInteger();
+
+   /** canonical files found unformatted by the check */
+   private final Set<File> unformattedFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
    public void execute() throws MojoExecutionException, MojoFailureException {
       getLog().info("GOAL is " + OperationType.FORMAT);
       executeGoal(OperationType.FORMAT);
@@ -58,7 +93,7 @@ public class YangFormatter extends YangHelperMojo {
 
    @Override
    public String getCacheFile() {
-      return FORMAT_CACHE_PROPERTIES_FILENAME;
+      return FORMAT_CACHE_FILENAME;
    }
 
    @Override
@@ -66,53 +101,161 @@ public class YangFormatter extends YangHelperMojo {
       return formatArgs;
    }
 
+   @Override
+   boolean hasJavaBackend() {
+      return true;
+   }
+
+   /**
+    * The layout options are part of the version, so that changing them formats the
+    * files again.
+    */
+   @Override
+   String getJavaBackendVersion() {
+      return YangWriter.VERSION + " indent " + formatIndent + " line " + formatLineLength;
+   }
+
+   @Override
+   boolean modifiesSource() {
+      return !formatCheck;
+   }
+
+   @Override
+   void beforeOperations() {
+      unformattedCount.set(0);
+      unformattedFiles.clear();
+   }
+
+   @Override
+   void afterOperations() throws MojoFailureException {
+      if (unformattedCount.get() > 0) {
+         String message = unformattedCount + " file(s) not formatted, run the format goal";
+         getLog().error(message);
+         if (isFailOnError()) {
+            throw new MojoFailureException(message);
+         }
+      }
+   }
+
+   /**
+    * A formatted file gives its content to its copies, an unformatted file found by the
+    * check makes them unformatted as well.
+    */
+   @Override
+   void copyResult(File processed, File file, boolean success) throws IOException {
+      if (formatCheck) {
+         if (!success && unformattedFiles.contains(processed)) {
+            getLog().error("File is not formatted: " + file);
+            unformattedCount.incrementAndGet();
+         }
+      } else if (success && !AtomicFile.copyIfChanged(processed, file)) {
+         outputUnchanged(file);
+      }
+   }
+
+   void setFormatArgs(String[] formatArgs) {
+      this.formatArgs = formatArgs;
+   }
+
+   void setFormatCheck(boolean formatCheck) {
+      this.formatCheck = formatCheck;
+   }
+
+   void setFormatIndent(int formatIndent) {
+      this.formatIndent = formatIndent;
+   }
+
+   void setFormatLineLength(int formatLineLength) {
+      this.formatLineLength = formatLineLength;
+   }
+
    
    @Override
    public boolean performOperation(File file)
                   throws IOException {
-      StringBuilder result = new StringBuilder();
+      if (formatCheck) {
+         return checkFormat(file);
+      }
+      format(file, file);
+      return true;
+   }
+
+   /**
+    * @param file
+    * @param output the file replaced by the formatted file, unless it has the same content
+    * @throws IOException
+    */
+   private void format(File file, File output) throws IOException {
+      if (isJavaBackend()) {
+         formatWithJava(file, output);
+         return;
+      }
+      ToolResult result = runPyang(OperationType.FORMAT, file, output);
+      if(!result.isSuccess()) {
+         getLog().error("Failed to format file " + file.getName());
+         getLog().error(result.getError());
+         throw new RuntimeException(result.getError());
+      }
+   }
+
+   /**
+    * Format using the built in yang parser and yang writer. Comments are kept with
+    * <code>--keep-comments</code>, like pyang does.
+    *
+    * @param file
+    * @param output
+    * @throws IOException
+    */
+   private void formatWithJava(File file, File output) throws IOException {
+      boolean keepComments = formatArgs != null && Arrays.asList(formatArgs).contains("--keep-comments");
+      YangStatement module;
       try {
-         List<String> commandString = getCommandString(OperationType.FORMAT);
-         commandString.add(file.getCanonicalPath());
-         ProcessBuilder pb = new ProcessBuilder(commandString);
-         pb.directory(file.getParentFile());
-         if(null != getYangMODPath()){
-            pb.environment().put("YANG_MODPATH",getYangMODPath());
-         }
-         getLog().debug("Executing command " + commandString.toString());
-         Process pr = pb.start();
-         BufferedReader input = new BufferedReader(new InputStreamReader(pr.getInputStream()));
-         String line=null;
-
-         while((line=input.readLine()) != null) {
-            result.append(line);
-            result.append("\n");
+         module = YangParser.parseFile(file, getEncoding(), keepComments);
+      } catch (YangParseException e) {
+         getLog().error("Failed to format file " + file.getName());
+         getLog().error(e.getMessage());
+         throw new RuntimeException(e.getMessage(), e);
+      }
+      File temp = AtomicFile.createTemp(output);
+      boolean committed = false;
+      Writer writer = null;
+      try {
+         writer = new BufferedWriter(WriterFactory.newWriter(temp, getEncoding()));
+         new YangWriter(formatIndent, formatLineLength).write(module, writer);
+         writer.close();
+         boolean changed = AtomicFile.commitIfChanged(temp, output);
+         committed = true;
+         if (!changed) {
+            outputUnchanged(output);
          }
-         int exitVal = pr.waitFor();
-         if(exitVal != 0) {
-            BufferedReader error = new BufferedReader(new InputStreamReader(pr.getErrorStream()));
-            StringBuilder errorBuilder = new StringBuilder();
-            String err=null;
-
-            while((err=error.readLine()) != null) {
-               errorBuilder.append(err);
-               errorBuilder.append("\n");
-            }
-            getLog().error("Failed to format file "+file.getName());
-            getLog().error(errorBuilder.toString());
-            throw new RuntimeException(errorBuilder.toString());
+      } finally {
+         IOUtil.close(writer);
+         if (!committed) {
+            AtomicFile.discard(temp);
          }
-      } catch (InterruptedException e) {
-         e.printStackTrace();
       }
+   }
 
-      if (result == null) {
-         return false;
+   /**
+    * Format the file into a temporary file and compare it with the file.
+    *
+    * @param file
+    * @return false when the file is not formatted
+    * @throws IOException
+    */
+   private boolean checkFormat(File file) throws IOException {
+      File formatted = File.createTempFile("yang-format", ".yang");
+      try {
+         format(file, formatted);
+         if (!AtomicFile.hasSameContent(formatted, file)) {
+            getLog().error("File is not formatted: " + file);
+            unformattedCount.incrementAndGet();
+            unformattedFiles.add(file.getCanonicalFile());
+            return false;
+         }
+         return true;
+      } finally {
+         AtomicFile.discard(formatted);
       }
-      
-      String formattedCode = result.toString();
-      writeStringToFile(formattedCode, file);
-      return true;
-
    }
 }
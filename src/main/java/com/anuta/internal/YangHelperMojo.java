@@ -10,8 +10,6 @@
  */
 package com.anuta.internal;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -19,27 +17,29 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.swing.text.BadLocationException;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
-import org.codehaus.plexus.components.io.fileselectors.FileSelector;
-import org.codehaus.plexus.components.io.fileselectors.IncludeExcludeFileSelector;
-import org.codehaus.plexus.components.io.resources.PlexusIoFileResource;
-import org.codehaus.plexus.components.io.resources.PlexusIoFileResourceCollection;
 import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.WriterFactory;
 
@@ -51,6 +51,8 @@ public abstract class YangHelperMojo extends AbstractMojo {
    private static final String[] DEFAULT_INCLUDES = new String[] { "**/*.yang" };
    private static final String[] DEFAULT_EXCLUDES = new String[] { "**/ietf*.yang" };
 
+   /** batch grouping putting files connected by imports and includes together */
+   static final String BATCH_BY_DEPENDENCIES = "dependencies";
 
    /**
     * Project's target directory as specified in the POM.
@@ -120,9 +122,33 @@ public abstract class YangHelperMojo extends AbstractMojo {
     */
    private String pyangVersion ;
 
-   private PlexusIoFileResourceCollection collection;
+   /**
+    * Id of the goal execution in the POM, which names its cache files.
+    *
+    * @parameter default-value="${mojoExecution.executionId}"
+    * @readonly
+    */
+   private String executionId;
+
+   /** counters of the current goal execution, see {@link #outputUnchanged(File)} */
+   private volatile ResultCollector currentResults;
+
+   /** the operation run of the goal execution in progress and its context */
+   private volatile OperationRun currentRun;
+   private volatile ExecutionContext currentContext;
 
-   private static int count = 0;
+   /** attributes of the files found by the last scan, used by the next execution only */
+   private Map<File, BasicFileAttributes> scannedAttributes;
+
+   /** nanoseconds the last scan took, reported by the next execution only */
+   private long scanNanos;
+
+   /**
+    * The operation runs of the last completed execution and their context, kept for
+    * {@link #rerunOperations(List, List, Collection, boolean)}. Null after a failed execution.
+    */
+   private List<OperationRun> lastRuns;
+   private ExecutionContext lastContext;
 
    /**
     * Whether the error is skipped.
@@ -137,10 +163,147 @@ public abstract class YangHelperMojo extends AbstractMojo {
     * @parameter
     */
    private String yangMODPath;
+
+   /**
+    * Number of files processed concurrently, started longest first by the durations
+    * recorded in the cache. When not specified, the number of available processors is used.
+    *
+    * @parameter expression="${yang.threads}"
+    */
+   private Integer threads;
+
+   /**
+    * Run pyang in long lived worker processes, one per thread, instead of
+    * starting a new pyang process for every file.
+    *
+    * @parameter default-value="false" expression="${yang.pyangWorkers}"
+    */
+   private boolean pyangWorkers;
+
+   /**
+    * Command used to start a pyang worker when pyangWorkers is enabled.
+    * When not specified, the bundled pyang_worker.py script is run with the
+    * interpreter of the pyang executable found on the path. Any program
+    * speaking the worker protocol, for example a stub in tests, can be used.
+    *
+    * @parameter
+    */
+   private String[] pyangWorkerCommand;
+
+   private PyangWorkerPool workerPool;
+
+   /**
+    * Number of pyang processes and pyang workers running at a time, shared by all goal
+    * executions in the JVM, for example the modules of a parallel reactor build. The largest
+    * value of the executions applies. When not specified, the number of available processors,
+    * or the threads of the execution when it has more.
+    *
+    * @parameter expression="${yang.maxProcesses}"
+    */
+   private Integer maxProcesses;
+
+   /**
+    * Directory shared by the builds on a host, for example on a CI agent, to limit their
+    * pyang processes and workers together to maxProcesses. Each running process holds a
+    * lock on one of the slot files in the directory.
+    *
+    * @parameter expression="${yang.processSlotDirectory}"
+    */
+   private File processSlotDirectory;
+
+   /** version line printed by <code>pyang -v</code>, null until checked */
+   private String installedPyangVersion;
+
+   /**
+    * Implementation used for the operation: <code>pyang</code>, or <code>java</code>
+    * for the built in implementation which does not need python.
+    * CONVERT and FORMAT have a java backend.
+    *
+    * @parameter default-value="pyang" expression="${yang.backend}"
+    */
+   private String backend = "pyang";
+
+   /**
+    * Time limit in seconds of one pyang run. A pyang process running longer is
+    * destroyed together with its child processes and the file counts as failed.
+    * When not specified, pyang runs are not limited.
+    *
+    * @parameter expression="${yang.timeout}"
+    */
+   private Integer timeout;
+
+   /**
+    * Time limit in seconds of the whole goal execution. Running pyang processes are
+    * destroyed when it expires, and the files not processed yet count as timed out.
+    * When not specified, the goal execution is not limited.
+    *
+    * @parameter expression="${yang.overallTimeout}"
+    */
+   private Integer overallTimeout;
+
+   /**
+    * Number of times a pyang run which timed out is repeated before the file counts as failed.
+    *
+    * @parameter default-value="0" expression="${yang.retries}"
+    */
+   private int retries;
+
+   /**
+    * Write the time spent per file in each phase (hash, lookup, parse, spawn, tool, write)
+    * as a JSON report with percentiles and the slowest files, and as a CSV file, into the
+    * target directory: yang-report-convert.json and yang-report-convert.csv for the convert goal.
+    *
+    * @parameter default-value="false" expression="${yang.buildReport}"
+    */
+   private boolean buildReport;
+
+   /**
+    * Number of slowest files listed per operation in the build report and the log.
+    *
+    * @parameter default-value="10" expression="${yang.buildReportSlowest}"
+    */
+   private int buildReportSlowest = 10;
+
+   /**
+    * Emit the per file timings of the build report as com.anuta.yang.File flight recorder
+    * events, recorded while a flight recording runs on java 9 or later.
+    *
+    * @parameter default-value="false" expression="${yang.jfrEvents}"
+    */
+   private boolean jfrEvents;
+
+   /**
+    * Process only one of the files with the same content whose imports and includes resolve
+    * to files with the same content, and give the others its results: its yin output, or its
+    * formatted content. Copies of a module in several directories then run pyang once.
+    *
+    * @parameter default-value="true" expression="${yang.deduplicate}"
+    */
+   private boolean deduplicate = true;
+
+   /** System.nanoTime() at which the overallTimeout expires, 0 for none */
+   private volatile long deadline;
+
+   /** the modules on the search path, indexed once per goal execution */
+   private volatile ModuleIndex moduleIndex;
    
    public abstract OperationType getOperation();
    
    public void executeGoal(OperationType operationType) throws MojoExecutionException, MojoFailureException {
+      executeOperations(Collections.<YangHelperMojo>singletonList(this));
+   }
+
+   /**
+    * Scan and hash the yang files once, then run the operations of the given mojos on
+    * every file, in order. Each operation keeps its own hash cache. An operation is not
+    * run on a file for which a previous operation failed.
+    *
+    * @param operations mojos configured like this one, see {@link #copyConfiguration(YangHelperMojo)}
+    * @throws MojoExecutionException
+    * @throws MojoFailureException
+    */
+   void executeOperations(List<? extends YangHelperMojo> operations)
+                  throws MojoExecutionException, MojoFailureException {
 
       Log log = getLog();
       if(null != excludes && excludes.length>0){
@@ -148,63 +311,810 @@ public abstract class YangHelperMojo extends AbstractMojo {
             log.info("Excluding file " + excl);
          }
       }
+      if (!checkTools(operations)) {
+         return;
+      }
+      executeOperations(operations, scanFiles());
+   }
 
-      if(!isPyangInstalled()){
+   /**
+    * @param operations
+    * @return false when pyang is needed but not installed. Pyang is only checked once.
+    */
+   boolean checkTools(List<? extends YangHelperMojo> operations) {
+      Log log = getLog();
+      boolean pyangNeeded = false;
+      for (YangHelperMojo operation : operations) {
+         if(operation.isJavaBackend() && !operation.hasJavaBackend()){
+            log.warn("No java backend for " + operation.getOperation() + ", using pyang.");
+         }
+         pyangNeeded |= operation.usesPyang();
+      }
+      if(pyangNeeded && installedPyangVersion == null && !isPyangInstalled()){
          log.error("Pyang is not installed. Skip conversion.");
-         return;
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Run the operations on the given files, see {@link #executeOperations(List)}.
+    *
+    * @param operations
+    * @param files the yang files, see {@link #scanFiles()}
+    * @return the files rewritten by an operation, see {@link #modifiesSource()}
+    * @throws MojoExecutionException
+    * @throws MojoFailureException
+    */
+   Set<File> executeOperations(List<? extends YangHelperMojo> operations, List<File> files)
+                  throws MojoExecutionException, MojoFailureException {
+      List<CacheLock> locks = HashCacheFiles.lock(operations, getLog());
+      try {
+         return runOperations(operations, files);
+      } finally {
+         HashCacheFiles.release(locks);
+      }
+   }
+
+   /**
+    * See {@link #executeOperations(List, List)}, with the hash caches locked.
+    */
+   private Set<File> runOperations(List<? extends YangHelperMojo> operations, List<File> files)
+                  throws MojoExecutionException, MojoFailureException {
+      Log log = getLog();
+      boolean pyangNeeded = false;
+      List<OperationType> operationTypes = new ArrayList<OperationType>();
+      for (YangHelperMojo operation : operations) {
+         pyangNeeded |= operation.usesPyang();
+         operationTypes.add(operation.getOperation());
       }
 
       long startClock = System.currentTimeMillis();
+      long goalDeadline = startDeadline();
+      lastRuns = null;
+
+      int numberOfFiles = files.size();
 
-      createResourceCollection();
+      log.info("Number of files for "+StringUtils.join(operationTypes.iterator(), ", ")+" "+numberOfFiles);
+      if (numberOfFiles > 0) {
 
-      List files = new ArrayList();
+         BuildReport report = createBuildReport();
+         ExecutionContext context = new ExecutionContext(getBasedirPath(), report);
+         long step = System.nanoTime();
+         ModuleIndex index = buildModuleIndex(null);
+         step = recordStep(report, "moduleIndex", step);
+         Map<File, BasicFileAttributes> attributes = scannedAttributes;
+         scannedAttributes = null;
+         List<String> cachePaths;
+         try {
+            cachePaths = context.addFiles(files, attributes);
+         } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read yang files", e);
+         }
+         step = recordStep(report, "cachePaths", step);
+         List<OperationRun> runs = new ArrayList<OperationRun>();
+         for (YangHelperMojo operation : operations) {
+            operation.installedPyangVersion = installedPyangVersion;
+            operation.deadline = goalDeadline;
+            operation.moduleIndex = index;
+            FileHashCache hashCache = HashCacheFiles.read(operation.getHashCacheFile(), log);
+            step = recordStep(report, "cacheLoad", step);
+            if (hashCache != null) {
+               hashCache.setConfiguration(operation.getConfigurationKey());
+               // keep the entries of all scanned files, also those an earlier operation fails on
+               for (String path : cachePaths) {
+                  hashCache.touch(path);
+               }
+            }
+            ModuleDependencyGraph dependencyGraph = null;
+            if (hashCache != null && operation.isDependencyAware()) {
+               try {
+                  dependencyGraph = new DependencyGraphBuilder(operation, context).build(files, hashCache);
+               } catch (IOException e) {
+                  throw new MojoExecutionException("Unable to read yang files", e);
+               }
+               step = recordStep(report, "dependencies", step);
+            }
+            operation.beforeOperations();
+            operation.currentResults = new ResultCollector();
+            OperationRun run = new OperationRun(operation, hashCache, dependencyGraph, operation.currentResults);
+            operation.currentRun = run;
+            operation.currentContext = context;
+            runs.add(run);
+         }
+         return processAndStore(files, runs, context, pyangNeeded, startClock);
+      }
+      return Collections.emptySet();
+   }
+
+   /**
+    * Run the operations of the last execution again, on the changed files and the files
+    * depending on them only. The hash caches, dependency graphs, module index and
+    * fingerprints of the last execution are kept in memory instead of being read again,
+    * so the caches must stay locked in between, see {@link HashCacheFiles#lock(List, Log)}. Files
+    * which failed or timed out before are processed again when they or their dependencies
+    * change. Runs {@link #executeOperations(List, List)} when the last execution failed.
+    *
+    * @param operations the operations of the last execution
+    * @param files the yang files, rescanned when files were added or removed
+    * @param changed the changed, added and deleted yang files
+    * @param rescanned true when the files were scanned again
+    * @return the files rewritten by an operation
+    * @throws MojoExecutionException
+    * @throws MojoFailureException
+    */
+   Set<File> rerunOperations(List<? extends YangHelperMojo> operations, List<File> files, Collection<File> changed,
+                  boolean rescanned) throws MojoExecutionException, MojoFailureException {
+      if (lastRuns == null) {
+         return executeOperations(operations, files);
+      }
+      Log log = getLog();
+      long startClock = System.currentTimeMillis();
+      long goalDeadline = startDeadline();
+      List<OperationRun> previousRuns = lastRuns;
+      lastRuns = null;
+
+      BuildReport report = createBuildReport();
+      ExecutionContext context = new ExecutionContext(lastContext, report);
+      List<File> processed = new ArrayList<File>();
+      List<OperationRun> runs = new ArrayList<OperationRun>();
+      boolean pyangNeeded = false;
       try {
-         if (directories != null) {
-            for (File directory : directories) {
-               if (directory.exists() && directory.isDirectory()) {
-                  collection.setBaseDir(directory);
-                  addCollectionFiles(files);
+         Set<File> changedFiles = new HashSet<File>();
+         for (File file : changed) {
+            File canonicalFile = file.getCanonicalFile();
+            changedFiles.add(canonicalFile);
+            context.forget(canonicalFile);
+         }
+         long step = System.nanoTime();
+         ModuleIndex index = previousRuns.get(0).mojo.moduleIndex;
+         List<String> cachePaths = null;
+         if (rescanned) {
+            index = buildModuleIndex(index);
+            step = recordStep(report, "moduleIndex", step);
+            List<File> added = new ArrayList<File>();
+            for (File file : files) {
+               if (!context.canonicalFiles.containsKey(file)) {
+                  // also the files of an added directory, which are not reported one by one
+                  added.add(file);
                }
             }
-         } else if (this.sourceDirectory != null && this.sourceDirectory.exists()
-                        && this.sourceDirectory.isDirectory()) {
-            log.info("Using Source Directory." + this.sourceDirectory);
-            collection.setBaseDir(this.sourceDirectory);
-            addCollectionFiles(files);
-         } else {
-            log.error("No source directory specified to scan yang files.");
+            Map<File, BasicFileAttributes> attributes = scannedAttributes;
+            scannedAttributes = null;
+            cachePaths = context.addFiles(files, attributes);
+            for (File file : added) {
+               changedFiles.add(context.canonicalFiles.get(file));
+            }
+            step = recordStep(report, "cachePaths", step);
+         }
+
+         Set<File> affected = new HashSet<File>(changedFiles);
+         for (OperationRun previous : previousRuns) {
+            YangHelperMojo operation = previous.mojo;
+            pyangNeeded |= operation.usesPyang();
+            operation.deadline = goalDeadline;
+            operation.moduleIndex = index;
+            FileHashCache hashCache = previous.hashCache;
+            if (hashCache != null && cachePaths != null) {
+               // the scanned files and the dependency graph built below put every path in use
+               hashCache.startRun();
+               for (String path : cachePaths) {
+                  hashCache.touch(path);
+               }
+            }
+            ModuleDependencyGraph dependencyGraph = previous.dependencyGraph;
+            if (dependencyGraph != null) {
+               // the files depending on deleted files are only found in the previous graph
+               affected.addAll(dependencyGraph.dependentsOf(changedFiles));
+               if (rescanned) {
+                  // added and removed files may change how the imports of any file resolve
+                  dependencyGraph = new DependencyGraphBuilder(operation, context).build(files, hashCache);
+               } else {
+                  dependencyGraph.clearInvalidated();
+                  new DependencyGraphBuilder(operation, context).update(dependencyGraph, changedFiles, hashCache);
+               }
+               affected.addAll(dependencyGraph.dependentsOf(changedFiles));
+               dependencyGraph.invalidate(affected);
+               step = recordStep(report, "dependencies", step);
+            }
+            operation.beforeOperations();
+            operation.currentResults = new ResultCollector();
+            OperationRun run = new OperationRun(operation, hashCache, dependencyGraph, operation.currentResults);
+            operation.currentRun = run;
+            operation.currentContext = context;
+            runs.add(run);
+         }
+         for (File file : files) {
+            File canonicalFile = context.canonicalFiles.get(file);
+            if (canonicalFile != null && (affected.contains(canonicalFile) || isInvalidated(runs, canonicalFile))) {
+               processed.add(file);
+            }
+         }
+      } catch (IOException e) {
+         throw new MojoExecutionException("Unable to read yang files", e);
+      }
+      List<OperationType> operationTypes = new ArrayList<OperationType>();
+      for (OperationRun run : runs) {
+         operationTypes.add(run.mojo.getOperation());
+      }
+      log.info("Number of files for " + StringUtils.join(operationTypes.iterator(), ", ") + " "
+               + processed.size() + " of " + files.size() + ", changed and their dependents");
+      if (processed.isEmpty()) {
+         // nothing to process, the state is still the one of the last execution
+         if (rescanned) {
+            // but the entries of deleted files are dropped
+            for (OperationRun run : runs) {
+               HashCacheFiles.store(run.hashCache, run.mojo.getHashCacheFile(), log);
+            }
+         }
+         lastRuns = runs;
+         lastContext = context;
+         return Collections.emptySet();
+      }
+      return processAndStore(processed, runs, context, pyangNeeded, startClock);
+   }
+
+   /**
+    * @return true when a run invalidated the file, also when only the resolution of its
+    *         dependencies changed, see {@link DependencyGraphBuilder#build(List, FileHashCache)}.
+    */
+   private static boolean isInvalidated(List<OperationRun> runs, File canonicalFile) {
+      for (OperationRun run : runs) {
+         if (run.dependencyGraph != null && run.dependencyGraph.isInvalidated(canonicalFile)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Process the files, report the results and store the hash caches, see
+    * {@link #runOperations(List, List)}.
+    *
+    * @param files
+    * @param runs
+    * @param context
+    * @param pyangNeeded
+    * @param startClock System.currentTimeMillis() at the start of the execution
+    * @return the files rewritten by an operation
+    * @throws MojoExecutionException
+    * @throws MojoFailureException
+    */
+   private Set<File> processAndStore(List<File> files, List<OperationRun> runs, ExecutionContext context,
+                  boolean pyangNeeded, long startClock) throws MojoExecutionException, MojoFailureException {
+      Log log = getLog();
+      BuildReport report = context.report;
+      int numberOfFiles = files.size();
+      // a pool started by startResidentWorkerPool is left running
+      boolean ownPool = workerPool == null;
+      if (ownPool && pyangWorkers && pyangNeeded) {
+         workerPool = startWorkerPool(Math.min(getThreadCount(), numberOfFiles));
+      }
+      for (OperationRun run : runs) {
+         run.mojo.workerPool = workerPool;
+      }
+      long step = System.nanoTime();
+      try {
+         new WorkScheduler(context, getThreadCount(), deduplicate ? new FileDeduplicator(this, context) : null,
+                  log).processFiles(files, runs);
+      } finally {
+         recordStep(report, "processing", step);
+         if (ownPool && workerPool != null) {
+            workerPool.close();
+            workerPool = null;
+         }
+         for (OperationRun run : runs) {
+            if (run.mojo != this) {
+               run.mojo.workerPool = null;
+            }
+         }
+      }
+      MojoFailureException failure = null;
+      for (OperationRun run : runs) {
+         run.resultCollector.logSummary(log, run.mojo.getOperation(), numberOfFiles);
+         step = System.nanoTime();
+         HashCacheFiles.store(run.hashCache, run.mojo.getHashCacheFile(), log);
+         recordStep(report, "cacheStore", step);
+         try {
+            run.mojo.afterOperations();
+         } catch (MojoFailureException e) {
+            if (failure == null) {
+               failure = e;
+            }
+         }
+      }
+      lastRuns = runs;
+      lastContext = context;
+      if (report != null) {
+         writeBuildReport(report);
+      }
+      long endClock = System.currentTimeMillis();
+
+      log.info("Approximate time taken: " + ((endClock - startClock) / 1000) + "s");
+      if (isDeadlineExpired()) {
+         String message = "Overall timeout of " + overallTimeout + "s expired";
+         log.error(message);
+         if (failOnError) {
+            throw new MojoFailureException(message);
+         }
+      }
+      if (failure != null) {
+         throw failure;
+      }
+      return context.rewritten;
+   }
+
+   /**
+    * Start the overallTimeout of an execution.
+    *
+    * @return System.nanoTime() at which the execution times out, 0 for none
+    */
+   private long startDeadline() {
+      long goalDeadline = 0;
+      if (overallTimeout != null && overallTimeout > 0) {
+         goalDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(overallTimeout);
+      }
+      deadline = goalDeadline;
+      return goalDeadline;
+   }
+
+   /**
+    * @return the report of an execution, null unless buildReport or jfrEvents is enabled
+    */
+   private BuildReport createBuildReport() {
+      if (!buildReport && !jfrEvents) {
+         return null;
+      }
+      JfrEvents events = jfrEvents ? JfrEvents.create() : null;
+      if (jfrEvents && events == null) {
+         getLog().warn("Flight recorder events need java 9 or later, not emitting them.");
+      }
+      BuildReport report = new BuildReport(getOperation().name().toLowerCase(), events);
+      if (scannedAttributes != null) {
+         report.step("scan", scanNanos);
+      }
+      return report;
+   }
+
+   /**
+    * @param report may be null
+    * @param step
+    * @param start System.nanoTime() the step started at
+    * @return System.nanoTime() now, the start of the next step
+    */
+   private static long recordStep(BuildReport report, String step, long start) {
+      long now = System.nanoTime();
+      if (report != null) {
+         report.step(step, now - start);
+      }
+      return now;
+   }
+
+   /**
+    * Write the build report into the target directory, see buildReport, and log the
+    * percentiles and the slowest files.
+    *
+    * @param report
+    */
+   private void writeBuildReport(BuildReport report) {
+      if (!buildReport) {
+         return;
+      }
+      Log log = getLog();
+      for (String line : report.summarize(buildReportSlowest)) {
+         log.info(line);
+      }
+      String name = "yang-report-" + getOperation().name().toLowerCase();
+      File json = new File(targetDirectory, name + ".json");
+      try {
+         report.writeJson(json, buildReportSlowest);
+         report.writeCsv(new File(targetDirectory, name + ".csv"));
+         log.info("Build report         : " + json);
+      } catch (IOException e) {
+         log.warn("Cannot write build report " + json, e);
+      }
+   }
+
+   /**
+    * Find the yang files in the configured directories, or the source directory.
+    *
+    * @return
+    * @throws MojoExecutionException
+    */
+   List<File> scanFiles() throws MojoExecutionException {
+      Log log = getLog();
+      List<File> scanDirectories = new ArrayList<File>();
+      if (directories != null) {
+         for (File directory : directories) {
+            if (directory.isDirectory()) {
+               scanDirectories.add(directory);
+            }
+         }
+      } else if (this.sourceDirectory != null && this.sourceDirectory.isDirectory()) {
+         log.info("Using Source Directory." + this.sourceDirectory);
+         scanDirectories.add(this.sourceDirectory);
+      } else {
+         log.error("No source directory specified to scan yang files.");
+      }
+
+      YangFileScanner scanner = new YangFileScanner(includes != null && includes.length > 0 ? includes
+               : DEFAULT_INCLUDES, excludes != null && excludes.length > 0 ? excludes : DEFAULT_EXCLUDES);
+      long start = System.nanoTime();
+      try {
+         scannedAttributes = scanner.scan(scanDirectories, getThreadCount());
+         scanNanos = System.nanoTime() - start;
+      } catch (IOException e) {
+         throw new MojoExecutionException("Unable to find files using includes/excludes", e);
+      }
+      return new ArrayList<File>(scannedAttributes.keySet());
+   }
+
+   /**
+    * Called before the operation is performed on the files of a goal execution.
+    */
+   void beforeOperations() {
+   }
+
+   /**
+    * Called after the operation was performed on all files of a goal execution, once its
+    * cache is stored.
+    *
+    * @throws MojoFailureException to fail the goal, after all operations are finished
+    */
+   void afterOperations() throws MojoFailureException {
+   }
+
+   /**
+    * @return true when a failed file fails the goal.
+    */
+   boolean isFailOnError() {
+      return failOnError;
+   }
+
+   /**
+    * Copy the configuration shared by all goals, so that a goal can run the operations
+    * of other goals on its files.
+    *
+    * @param source
+    */
+   void copyConfiguration(YangHelperMojo source) {
+      setLog(source.getLog());
+      targetDirectory = source.targetDirectory;
+      basedir = source.basedir;
+      sourceDirectory = source.sourceDirectory;
+      directories = source.directories;
+      includes = source.includes;
+      excludes = source.excludes;
+      encoding = source.encoding;
+      pyangVersion = source.pyangVersion;
+      failOnError = source.failOnError;
+      yangMODPath = source.yangMODPath;
+      threads = source.threads;
+      pyangWorkers = source.pyangWorkers;
+      pyangWorkerCommand = source.pyangWorkerCommand;
+      backend = source.backend;
+      timeout = source.timeout;
+      overallTimeout = source.overallTimeout;
+      retries = source.retries;
+      buildReport = source.buildReport;
+      buildReportSlowest = source.buildReportSlowest;
+      jfrEvents = source.jfrEvents;
+      executionId = source.executionId;
+      maxProcesses = source.maxProcesses;
+      processSlotDirectory = source.processSlotDirectory;
+      deduplicate = source.deduplicate;
+   }
+
+   /**
+    * Give a file the result the operation had on a file with the same content and the same
+    * dependencies, instead of performing the operation on it, see {@link FileDeduplicator}. Calls
+    * {@link #outputUnchanged(File)} when the output of the file is left unchanged. Nothing to
+    * do for an operation without output.
+    *
+    * @param processed the canonical file the operation was performed on
+    * @param file the canonical copy
+    * @param success false when the operation failed on the processed file, the copy fails too
+    * @throws IOException
+    */
+   void copyResult(File processed, File file, boolean success) throws IOException {
+   }
+
+   /**
+    * Keep pyang workers running across {@link #executeOperations(List, List)} calls,
+    * until {@link #stopWorkerPool()}, when pyangWorkers is enabled.
+    *
+    * @param operations
+    */
+   void startResidentWorkerPool(List<? extends YangHelperMojo> operations) {
+      boolean pyangNeeded = false;
+      for (YangHelperMojo operation : operations) {
+         pyangNeeded |= operation.usesPyang();
+      }
+      if (pyangWorkers && pyangNeeded && workerPool == null) {
+         workerPool = startWorkerPool(getThreadCount());
+      }
+   }
+
+   void stopWorkerPool() {
+      if (workerPool != null) {
+         workerPool.close();
+         workerPool = null;
+      }
+   }
+
+   /**
+    * Start the pyang worker pool. Falls back to a process per file, returning null,
+    * when the worker cannot be started.
+    *
+    * @param size
+    * @return
+    */
+   private PyangWorkerPool startWorkerPool(int size) {
+      Map<String, String> environment = new HashMap<String, String>();
+      if (null != getYangMODPath()) {
+         environment.put("YANG_MODPATH", getYangMODPath());
+      }
+      // the worker looks up the modules of the search path in the index, see ModuleIndex
+      environment.put("YANG_MODULE_INDEX", getModuleIndexFile().getAbsolutePath());
+      try {
+         List<String> command = getWorkerCommand();
+         getLog().info("Using " + size + " pyang worker(s): " + command);
+         PyangWorkerPool pool = new PyangWorkerPool(command, environment, size, getProcessLimiter(),
+                  processSlotDirectory, getLog());
+         pool.start();
+         return pool;
+      } catch (IOException e) {
+         getLog().warn("Cannot start pyang worker, running pyang once per file.", e);
+         return null;
+      }
+   }
+
+   /**
+    * @return the command to start a pyang worker.
+    * @throws IOException
+    */
+   private List<String> getWorkerCommand() throws IOException {
+      if (pyangWorkerCommand != null && pyangWorkerCommand.length > 0) {
+         return Arrays.asList(pyangWorkerCommand);
+      }
+      File pyang = findOnPath("pyang");
+      List<String> command = new ArrayList<String>(getInterpreter(pyang));
+      command.add(extractWorkerScript().getPath());
+      command.add(pyang == null ? "pyang" : pyang.getPath());
+      return command;
+   }
+
+   /**
+    * Read the interpreter from the #! line of the pyang script, so that the worker
+    * runs on the same python as pyang itself.
+    *
+    * @param pyang
+    * @return
+    */
+   private List<String> getInterpreter(File pyang) {
+      if (pyang != null) {
+         BufferedReader reader = null;
+         try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(pyang), "UTF-8"));
+            String line = reader.readLine();
+            if (line != null && line.startsWith("#!")) {
+               String[] interpreter = StringUtils.split(line.substring(2).trim());
+               if (interpreter.length > 0) {
+                  return Arrays.asList(interpreter);
+               }
+            }
+         } catch (IOException e) {
+            getLog().debug("Cannot read " + pyang, e);
+         } finally {
+            IOUtil.close(reader);
+         }
+      }
+      return Collections.singletonList("python");
+   }
+
+   private File findOnPath(String executable) {
+      String path = System.getenv("PATH");
+      if (path == null) {
+         return null;
+      }
+      for (String dir : StringUtils.split(path, File.pathSeparator)) {
+         File candidate = new File(dir, executable);
+         if (candidate.isFile()) {
+            return candidate;
+         }
+      }
+      return null;
+   }
+
+   private File extractWorkerScript() throws IOException {
+      InputStream in = YangHelperMojo.class.getResourceAsStream("pyang_worker.py");
+      if (in == null) {
+         throw new FileNotFoundException("pyang_worker.py");
+      }
+      File script = File.createTempFile("pyang-worker", ".py");
+      script.deleteOnExit();
+      OutputStream out = null;
+      try {
+         out = new FileOutputStream(script);
+         IOUtil.copy(in, out);
+      } finally {
+         IOUtil.close(in);
+         IOUtil.close(out);
+      }
+      return script;
+   }
+
+   /**
+    * @return the configured number of threads, or the number of available processors.
+    */
+   int getThreadCount() {
+      if (threads == null || threads.intValue() <= 0) {
+         return Runtime.getRuntime().availableProcessors();
+      }
+      return threads.intValue();
+   }
+
+   /**
+    * @return the limiter of the pyang processes of all goal executions in the JVM, raised
+    *         to the limit of this execution, see maxProcesses
+    */
+   ProcessLimiter getProcessLimiter() {
+      int limit = maxProcesses != null && maxProcesses.intValue() > 0 ? maxProcesses.intValue()
+               : Math.max(Runtime.getRuntime().availableProcessors(), getThreadCount());
+      return ProcessLimiter.get(limit);
+   }
+
+   public String getYangMODPath() {
+      return yangMODPath;
+   }
+
+   boolean isJavaBackend() {
+      return "java".equalsIgnoreCase(backend);
+   }
+
+   /**
+    * @return true when the goal has a java implementation, see backend.
+    */
+   boolean hasJavaBackend() {
+      return false;
+   }
+
+   /**
+    * @return true when the goal runs pyang.
+    */
+   boolean usesPyang() {
+      return !(isJavaBackend() && hasJavaBackend());
+   }
+
+   /**
+    * @return the version of the java implementation, see {@link #hasJavaBackend()}.
+    */
+   String getJavaBackendVersion() {
+      return null;
+   }
+
+   /**
+    * @return the implementation performing the operation with its version.
+    */
+   String getToolVersion() {
+      return usesPyang() ? installedPyangVersion : "java " + getJavaBackendVersion();
+   }
+
+   /**
+    * Key of everything besides the file content which the result of the operation depends
+    * on: the tool version, the command line and the YANG_MODPATH. A file recorded in the
+    * hash cache under another configuration is processed again.
+    *
+    * @return
+    */
+   String getConfigurationKey() {
+      StringBuilder key = new StringBuilder();
+      key.append(getToolVersion()).append('\n');
+      if (usesPyang()) {
+         key.append(getCommandString(getOperation()));
+      } else {
+         key.append(getPyangArguments(getOperation()));
+      }
+      key.append('\n').append(yangMODPath == null ? "" : yangMODPath);
+      return XXHash64.hashHex(key.toString());
+   }
+
+   /**
+    * Directories searched for imported modules: the YANG_MODPATH entries followed by
+    * the yang source directories.
+    *
+    * @return
+    */
+   List<File> getModuleSearchPath() {
+      List<File> searchPath = new ArrayList<File>();
+      if (yangMODPath != null) {
+         for (String dir : StringUtils.split(yangMODPath, File.pathSeparator)) {
+            searchPath.add(new File(dir));
          }
-      } catch (IOException e) {
-         throw new MojoExecutionException("Unable to find files using includes/excludes", e);
       }
+      if (directories != null) {
+         searchPath.addAll(Arrays.asList(directories));
+      } else if (sourceDirectory != null) {
+         searchPath.add(sourceDirectory);
+      }
+      return searchPath;
+   }
 
-      int numberOfFiles = files.size();
+   String getEncoding() {
+      return encoding;
+   }
 
-      log.info("Number of files for "+operationType+" "+numberOfFiles);
-      if (numberOfFiles > 0) {
+   /**
+    * @return the index of the modules on the search path of the goal execution.
+    */
+   synchronized ModuleIndex getModuleIndex() {
+      if (moduleIndex == null) {
+         moduleIndex = ModuleIndex.build(getModuleSearchPath(), null);
+      }
+      return moduleIndex;
+   }
 
-         String basedirPath = getBasedirPath();
-            Properties hashCache = readFileHashCacheFile();
-            ResultCollector resultCollector = new ResultCollector();
-            for (int i = 0, n = files.size(); i < n; i++) {
-               File file = (File) files.get(i);
-               performOperation(file, resultCollector,  hashCache, basedirPath);
-            }
-            log.info("\nOperation            : "+operationType);
-            log.info("Number of yang files : " + numberOfFiles);
-            log.info("Successful           : " + resultCollector.successCount + " file(s)");
-            log.info("Failed               : " + resultCollector.failCount + " file(s)");
-            log.info("Skipped              : " + resultCollector.skippedCount + " file(s)\n");
-            storeFileHashCache(hashCache);
-         long endClock = System.currentTimeMillis();
+   private File getModuleIndexFile() {
+      return new File(targetDirectory, ModuleIndex.FILE_NAME);
+   }
 
-         log.info("Approximate time taken: " + ((endClock - startClock) / 1000) + "s");
+   /**
+    * Index the modules on the search path, reusing the directories of the index stored by
+    * the previous build which did not change since, and store the index for the next build
+    * and the pyang workers. Files holding the same module revision are reported.
+    *
+    * @param previous the index of the last execution, null to read the stored one
+    * @return
+    */
+   private ModuleIndex buildModuleIndex(ModuleIndex previous) {
+      Log log = getLog();
+      File indexFile = getModuleIndexFile();
+      if (previous == null && indexFile.isFile()) {
+         try {
+            previous = ModuleIndex.read(indexFile);
+         } catch (IOException e) {
+            log.warn("Cannot load module index, indexing the search path again: " + e.getMessage());
+         }
       }
+      long start = System.currentTimeMillis();
+      ModuleIndex index = ModuleIndex.build(getModuleSearchPath(), previous);
+      log.debug("Indexed " + index.getDirectoryCount() + " directories of the module search path in "
+               + (System.currentTimeMillis() - start) + "ms" + (index.isModified() ? "" : ", unchanged"));
+      for (List<File> duplicate : index.getDuplicates()) {
+         reportDuplicate(duplicate);
+      }
+      if (index.isModified()) {
+         if (!targetDirectory.exists()) {
+            targetDirectory.mkdirs();
+         }
+         try {
+            index.write(indexFile);
+         } catch (IOException e) {
+            // a stale index must not be used by the workers
+            log.warn("Cannot store module index " + indexFile, e);
+            indexFile.delete();
+         }
+      }
+      return index;
    }
 
-   public String getYangMODPath() {
-      return yangMODPath;
+   private void reportDuplicate(List<File> files) {
+      File first = files.get(0);
+      boolean conflicting = false;
+      for (File file : files.subList(1, files.size())) {
+         try {
+            conflicting |= !AtomicFile.hasSameContent(first, file);
+         } catch (IOException e) {
+            conflicting = true;
+         }
+      }
+      String message = "Module " + first.getName() + " is found " + files.size() + " times on the search path: "
+               + files;
+      if (conflicting) {
+         getLog().warn(message + ", with different content. " + first + " is used.");
+      } else {
+         getLog().debug(message + ", with the same content.");
+      }
    }
 
    private double versionCompare(String version1, String version2) {
@@ -238,13 +1148,12 @@ public abstract class YangHelperMojo extends AbstractMojo {
     */
    private boolean isPyangInstalled(){
       try {
-         ProcessBuilder pb = new ProcessBuilder(getCommandString(OperationType.VERSION));
-         Process pr = pb.start();
-         int exitVal = pr.waitFor();
-         if(exitVal == 0){
-            BufferedReader input = new BufferedReader(new InputStreamReader(pr.getInputStream()));
-            String pyang_version = input.readLine();
+         ToolResult result = new ProcessRunner(getCommandString(OperationType.VERSION), null, null,
+                        timeout != null && timeout > 0 ? TimeUnit.SECONDS.toMillis(timeout) : 0, encoding).capture();
+         if(result.isSuccess()){
+            String pyang_version = result.getOutput().trim();
             getLog().info("using " + pyang_version);
+            installedPyangVersion = pyang_version;
             if(pyang_version.contains("pyang ")) {
                String version = pyang_version.substring(pyang_version.indexOf("pyang ") + 6);
                if (versionCompare(version, pyangVersion) != 0) {
@@ -256,200 +1165,440 @@ public abstract class YangHelperMojo extends AbstractMojo {
             return false;
          }
       } catch (IOException e) {
-         e.printStackTrace();
+         getLog().error("Cannot run " + getCommandString(OperationType.VERSION), e);
          return false;
-      } catch (InterruptedException e) {
-         e.printStackTrace();
       }
-      return false;
    }
 
+   public abstract String getCacheFile();
+
    /**
-    * Create a {@link PlexusIoFileResourceCollection} instance to be used by this mojo.
-    * This collection uses the includes and excludes to find the source files.
+    * @return the hash cache file in the target directory, named by {@link #getCacheFile()}
+    *         with the execution id appended unless it is a default execution, so that
+    *         executions of a goal with other configurations keep their own caches. Null
+    *         when the operation keeps no cache.
     */
-   void createResourceCollection() {
-      collection = new PlexusIoFileResourceCollection();
-      if (includes != null && includes.length > 0) {
-         collection.setIncludes(includes);
-      } else {
-         collection.setIncludes(DEFAULT_INCLUDES);
+   File getHashCacheFile() {
+      String cacheFileName = getCacheFile();
+      if (null == cacheFileName) {
+         return null;
       }
-      if(excludes != null && excludes.length > 0){
-         collection.setExcludes(excludes);
-      }else {
-         collection.setExcludes(DEFAULT_EXCLUDES);
+      if (executionId != null && executionId.length() > 0 && !executionId.startsWith("default")) {
+         int dot = cacheFileName.lastIndexOf('.');
+         cacheFileName = cacheFileName.substring(0, dot) + "-" + executionId.replaceAll("[^A-Za-z0-9._-]", "_")
+                  + cacheFileName.substring(dot);
+      }
+      return new File(targetDirectory, cacheFileName);
+   }
+
+   private String getBasedirPath() {
+      try {
+         return basedir.getCanonicalPath();
+      } catch (Exception e) {
+         return "";
       }
-      collection.setIncludingEmptyDirectories(false);
+   }
 
-      IncludeExcludeFileSelector fileSelector = new IncludeExcludeFileSelector();
-      fileSelector.setIncludes(DEFAULT_INCLUDES);
-      collection.setFileSelectors(new FileSelector[] { fileSelector });
+   /**
+    * @param file
+    * @param run
+    * @param context
+    * @return false when the operation failed on the file
+    */
+   boolean performOperation(File file, OperationRun run, ExecutionContext context) {
+      return performOperation(file, run, context, null);
+   }
 
+   /**
+    * @param file
+    * @param run
+    * @param context
+    * @param timing the row of the file in the build report when it was started already,
+    *           see {@link ExecutionContext#startTiming(OperationType, File)}
+    * @return false when the operation failed on the file
+    */
+   private boolean performOperation(File file, OperationRun run, ExecutionContext context,
+                  BuildReport.FileTiming timing) {
+      if (context.report != null) {
+         timing = timing == null ? context.startTiming(getOperation(), file) : context.report.resume(timing);
+      }
+      try {
+         return doOperation(file, run, context);
+      } catch (IOException e) {
+         run.resultCollector.failed(file);
+         getLog().warn(e);
+      } catch (BadLocationException e) {
+         run.resultCollector.failed(file);
+         getLog().warn(e);
+      } finally {
+         if (timing != null) {
+            context.report.finish(timing);
+         }
+      }
+      return false;
    }
 
    /**
-    * Add source files from the {@link PlexusIoFileResourceCollection} to the files list.
     *
-    * @param files
+    * @param file
+    * @param run
+    * @param context
+    * @return false when the operation failed on the file
     * @throws IOException
+    * @throws BadLocationException
     */
-   void addCollectionFiles(List files) throws IOException {
-      Iterator resources = collection.getResources();
-      while (resources.hasNext()) {
-         PlexusIoFileResource resource = (PlexusIoFileResource) resources.next();
-         files.add(resource.getFile());
+   private boolean doOperation(File file, OperationRun run, ExecutionContext context)
+                  throws IOException, BadLocationException {
+      Log log = getLog();
+      log.debug("Processing file: " + file);
+
+      File canonicalFile = file.getCanonicalFile();
+      FileHashCache hashCache = run.hashCache;
+      ModuleDependencyGraph dependencyGraph = run.dependencyGraph;
+      String path = context.getCachePath(canonicalFile);
+      Fingerprint original = context.getFingerprint(canonicalFile, hashCache, path);
+      long lookup = System.nanoTime();
+      boolean upToDate = run.isUpToDate(canonicalFile, original.hash, path);
+      BuildReport.record(BuildReport.Phase.LOOKUP, System.nanoTime() - lookup);
+      if (upToDate) {
+         // record the current stat of a touched file, so that it is not hashed again
+         run.hashCache.refresh(path, original);
+         log.debug("File Skipped");
+         run.resultCollector.skipped();
+         return true;
+      }
+      if (isDeadlineExpired()) {
+         log.warn("Overall timeout expired, not processing " + file);
+         run.resultCollector.timedOut(file);
+         if (hashCache != null) {
+            hashCache.invalidate(path);
+         }
+         return false;
       }
+      if (!checkSyntax(canonicalFile, run, context, original, path)) {
+         return false;
+      }
+      log.info(getOperation()+" file: " + file);
+      boolean success = executeOperation(file, canonicalFile, run, log, original, path);
+      recordRewrite(canonicalFile, original, success, hashCache, path, context);
+      return success;
    }
 
-   public abstract String getCacheFile();
-
-   private void storeFileHashCache(Properties props) {
-      String cacheFileName = getCacheFile();
-      if(null == cacheFileName){
+   /**
+    * Record the content the operation left the file with, when it modifies the source.
+    *
+    * @param canonicalFile
+    * @param original fingerprint of the file before the operation
+    * @param success false when the operation failed on the file
+    * @param hashCache may be null
+    * @param path
+    * @param context
+    * @throws IOException
+    */
+   void recordRewrite(File canonicalFile, Fingerprint original, boolean success, FileHashCache hashCache,
+                  String path, ExecutionContext context) throws IOException {
+      if (!modifiesSource()) {
          return;
       }
-      File cacheFile = new File(targetDirectory, cacheFileName);
-      try {
-         OutputStream out = new BufferedOutputStream(new FileOutputStream(cacheFile));
-         props.store(out, null);
-      } catch (FileNotFoundException e) {
-         getLog().warn("Cannot store file hash cache properties file", e);
-      } catch (IOException e) {
-         getLog().warn("Cannot store file hash cache properties file", e);
+      context.fingerprints.remove(canonicalFile);
+      // an unchanged file keeps its modification time, see AtomicFile.commitIfChanged
+      Fingerprint result = success ? Fingerprint.of(canonicalFile, original) : null;
+      if (result != null && hashCache != null) {
+         // record the rewritten content, the file is found with it on the next build
+         hashCache.refresh(path, result);
+      }
+      if (result != null && result.hash.equals(original.hash)) {
+         context.fingerprints.put(canonicalFile, result);
+      } else if (success) {
+         context.rewritten.add(canonicalFile);
       }
    }
 
-   private Properties readFileHashCacheFile() {
-      Properties props = new Properties();
+   /**
+    * Perform the operation on several files with a single {@link #performOperation(List)}
+    * call. Files which are up to date are skipped as usual. When the batch result cannot
+    * be attributed to the files, they are processed one by one instead.
+    *
+    * @param files
+    * @param run
+    * @param context
+    * @return the files the operation did not fail on
+    */
+   List<File> performBatchOperation(List<File> files, OperationRun run, ExecutionContext context) {
       Log log = getLog();
-      if (!targetDirectory.exists()) {
-         targetDirectory.mkdirs();
-      } else if (!targetDirectory.isDirectory()) {
-         log.warn("Something strange here as the " + "supposedly target directory is not a directory.");
-         return props;
-      }
-      String cacheFileName = getCacheFile();
-      if(null == cacheFileName){
-         return null;
+      List<File> passed = new ArrayList<File>(files.size());
+      List<File> toRun = new ArrayList<File>(files.size());
+      Map<File, Fingerprint> fingerprints = new HashMap<File, Fingerprint>();
+      // rows of the files to run, stopped until the batch is done
+      BuildReport report = context.report;
+      Map<File, BuildReport.FileTiming> timings = new HashMap<File, BuildReport.FileTiming>();
+      for (File file : files) {
+         BuildReport.FileTiming timing = report == null ? null : context.startTiming(getOperation(), file);
+         try {
+            File canonicalFile = file.getCanonicalFile();
+            String path = context.getCachePath(canonicalFile);
+            Fingerprint fingerprint = context.getFingerprint(canonicalFile, run.hashCache, path);
+            long lookup = System.nanoTime();
+            boolean upToDate = run.isUpToDate(canonicalFile, fingerprint.hash, path);
+            BuildReport.record(BuildReport.Phase.LOOKUP, System.nanoTime() - lookup);
+            if (upToDate) {
+               run.hashCache.refresh(path, fingerprint);
+               log.debug("File Skipped: " + file);
+               run.resultCollector.skipped();
+               passed.add(file);
+            } else if (checkSyntax(canonicalFile, run, context, fingerprint, path)) {
+               toRun.add(canonicalFile);
+               fingerprints.put(canonicalFile, fingerprint);
+               if (timing != null) {
+                  timings.put(canonicalFile, timing);
+                  report.stop(timing);
+                  timing = null;
+               }
+            }
+         } catch (IOException e) {
+            run.resultCollector.failed(file);
+            log.warn(e);
+         } finally {
+            if (timing != null) {
+               report.finish(timing);
+            }
+         }
       }
-      File cacheFile = new File(targetDirectory, cacheFileName);
-      if (!cacheFile.exists()) {
-         return props;
+      if (toRun.size() <= 1) {
+         for (File file : toRun) {
+            if (performOperation(file, run, context, timings.get(file))) {
+               passed.add(file);
+            }
+         }
+         return passed;
       }
 
+      log.info(getOperation() + " batch of " + toRun.size() + " file(s): " + toRun);
+      Map<File, String> failures;
+      // the batch is timed as a whole and shared equally by the rows of its files
+      BuildReport.FileTiming batchTiming = report == null ? null : report.start(getOperation().name(), null, null);
+      long start = System.nanoTime();
       try {
-         props.load(new BufferedInputStream(new FileInputStream(cacheFile)));
-      } catch (FileNotFoundException e) {
-         log.warn("Cannot load file hash cache properties file", e);
+         failures = performOperation(toRun);
       } catch (IOException e) {
-         log.warn("Cannot load file hash cache properties file", e);
+         log.warn("Batch " + getOperation() + " failed, processing the files one by one", e);
+         failures = null;
+      } finally {
+         if (batchTiming != null) {
+            batchTiming.addRest(BuildReport.Phase.TOOL, System.nanoTime() - start, 0);
+            report.stop(batchTiming);
+         }
+      }
+      if (failures == null) {
+         for (File file : toRun) {
+            if (performOperation(file, run, context, timings.get(file))) {
+               passed.add(file);
+            }
+         }
+         return passed;
       }
-      return props;
-   }
 
-   private String getBasedirPath() {
-      try {
-         return basedir.getCanonicalPath();
-      } catch (Exception e) {
-         return "";
+      long duration = (System.nanoTime() - start) / toRun.size();
+      String firstError = null;
+      for (File file : toRun) {
+         String error = failures.get(file);
+         BuildReport.FileTiming timing = timings.get(file);
+         if (timing != null) {
+            timing.addShare(batchTiming, toRun.size());
+            timing.setResult(error == null ? "success" : "failed");
+            report.finish(timing);
+         }
+         if (error == null) {
+            run.resultCollector.succeeded();
+            passed.add(file);
+         } else {
+            run.resultCollector.failed(file);
+            log.error("Failed to " + getOperation().name().toLowerCase() + " file " + file.getName());
+            log.error(error);
+            if (firstError == null) {
+               firstError = error;
+            }
+         }
+         run.putResult(context.getCachePath(file), file, fingerprints.get(file),
+                  error == null ? FileHashCache.Result.SUCCESS : FileHashCache.Result.FAILURE, duration);
       }
+      if (firstError != null && failOnError) {
+         throw new RuntimeException(firstError);
+      }
+      return passed;
    }
 
    /**
-    *  @param file
-    * @param resultCollector
-    * @param hashCache
-    * @param basedirPath
+    * @return the number of files the operation may process with a single
+    *         {@link #performOperation(List)} call, 1 when it does not batch.
     */
-   private void performOperation(File file, ResultCollector resultCollector, Properties hashCache,
-                  String basedirPath) {
-      try {
-         doOperation(file, resultCollector, hashCache, basedirPath);
-      } catch (IOException e) {
-         resultCollector.failCount++;
-         getLog().warn(e);
-      } catch (BadLocationException e) {
-         resultCollector.failCount++;
-         getLog().warn(e);
-      }
+   int getBatchSize() {
+      return 1;
    }
 
    /**
-    * @param str
-    * @return
-    * @throws UnsupportedEncodingException
+    * @return how batches are formed: by directory, or {@link #BATCH_BY_DEPENDENCIES}.
     */
-   private String md5hash(String str) throws UnsupportedEncodingException {
-      return DigestUtils.md5Hex(str.getBytes(encoding));
+   String getBatchGrouping() {
+      return null;
    }
 
    /**
+    * Perform the operation on several canonical files at once.
     *
+    * @param files
+    * @return the error of every file the operation failed on, or null when the result
+    *         cannot be attributed to the files and they must be processed one by one
+    * @throws IOException
+    */
+   Map<File, String> performOperation(List<File> files) throws IOException {
+      return null;
+   }
+
+   /**
+    * @return true when the result of the operation depends on the imported and included modules,
+    *         so that a file must be processed again when one of them changes.
+    */
+   boolean isDependencyAware() {
+      return false;
+   }
+
+   /**
     * @param file
-    * @param resultCollector
-    * @param hashCache
-    * @param basedirPath
+    * @return the sorted content hashes of the files the imports and includes of the file
+    *         resolve to, transitively, or null when the operation does not track dependencies
     * @throws IOException
-    * @throws BadLocationException
     */
-   private void doOperation(File file, ResultCollector resultCollector, Properties hashCache,
-                  String basedirPath)
-                  throws IOException, BadLocationException {
-      Log log = getLog();
-      log.debug("Processing file: " + file);
-      
-      String code = readFileAsString(file);
-      String originalHash = md5hash(code);
+   List<String> getResolvedDependencyHashes(File file) throws IOException {
+      OperationRun run = currentRun;
+      ExecutionContext context = currentContext;
+      if (run == null || run.dependencyGraph == null) {
+         return null;
+      }
+      List<String> hashes = new ArrayList<String>();
+      for (File dependency : run.dependencyGraph.getResolvedClosure(file.getCanonicalFile())) {
+         // hashed again when an earlier operation rewrote it, see recordRewrite
+         hashes.add(context.getFingerprint(dependency, run.hashCache,
+                  context.getCachePath(dependency)).hash);
+      }
+      Collections.sort(hashes);
+      return hashes;
+   }
+
+   /**
+    * @return true when the files are parsed before the operation runs an external tool on
+    *         them, so that syntax errors fail without starting it.
+    */
+   boolean isSyntaxChecked() {
+      return false;
+   }
 
-      String canonicalPath = file.getCanonicalPath();
-      String path = canonicalPath.substring(basedirPath.length());
-      if(hashCache != null) {
-         String cachedHash = hashCache.getProperty(path);
-         if (cachedHash != null && cachedHash.equals(originalHash)) {
-            log.debug("File Skipped");
-            resultCollector.skippedCount++;
-            return;
+   /**
+    * Parse the file when the operation checks the syntax, see {@link #isSyntaxChecked()},
+    * reusing the result of reading its dependencies. A file with a syntax error fails
+    * right away with the position of the error.
+    *
+    * @param canonicalFile
+    * @param run
+    * @param context
+    * @param fingerprint
+    * @param path
+    * @return false when the file has a syntax error
+    * @throws IOException
+    */
+   private boolean checkSyntax(File canonicalFile, OperationRun run, ExecutionContext context,
+                  Fingerprint fingerprint, String path) throws IOException {
+      if (!isSyntaxChecked()) {
+         return true;
+      }
+      long start = System.nanoTime();
+      YangParseException error = context.syntaxErrors.get(canonicalFile);
+      if (error == null && !context.dependencies.containsKey(canonicalFile)) {
+         try {
+            YangParser.parseFile(canonicalFile, encoding);
+         } catch (YangParseException e) {
+            error = e;
          }
+         BuildReport.record(BuildReport.Phase.PARSE, System.nanoTime() - start);
       }
-      log.info(getOperation()+" file: " + file);
-      executeOperation(file, resultCollector, hashCache, log, originalHash, path);
+      if (error == null) {
+         return true;
+      }
+      Log log = getLog();
+      log.error("Failed to " + getOperation().name().toLowerCase() + " file " + canonicalFile.getName());
+      log.error(error.getMessage());
+      run.resultCollector.failed(canonicalFile);
+      run.putResult(path, canonicalFile, fingerprint, FileHashCache.Result.FAILURE, System.nanoTime() - start);
+      if (failOnError) {
+         throw new RuntimeException(error.getMessage(), error);
+      }
+      return false;
+   }
 
+   /**
+    * @return true when the operation rewrites the yang file itself.
+    */
+   boolean modifiesSource() {
+      return false;
    }
 
    /**
     *
     * @param file
-    * @param resultCollector
-    * @param hashCache
+    * @param canonicalFile
+    * @param run
     * @param log
-    * @param originalHash
+    * @param original fingerprint of the file before the operation
     * @param path
-    * @return
+    * @return false when the operation failed
     * @throws IOException
     */
-   private boolean executeOperation(File file, ResultCollector resultCollector,
-                  Properties hashCache, Log log, String originalHash, String path){
+   private boolean executeOperation(File file, File canonicalFile, OperationRun run, Log log, Fingerprint original,
+                  String path) {
+      ResultCollector resultCollector = run.resultCollector;
+      FileHashCache hashCache = run.hashCache;
 
+      long start = System.nanoTime();
+      BuildReport.FileTiming timing = BuildReport.current();
+      long recorded = timing == null ? 0 : timing.getRecorded();
+      boolean success = false;
+      RuntimeException failure = null;
       try {
          if(performOperation(file)){
-            resultCollector.successCount++;
+            resultCollector.succeeded();
+            success = true;
          }else{
-            resultCollector.failCount++;
+            resultCollector.failed(file);
+         }
+      } catch (ToolTimeoutException e) {
+         log.error("Failed to " + getOperation().name().toLowerCase() + " file " + file.getName()
+                  + ": " + e.getMessage());
+         resultCollector.timedOut(file);
+         // the result says nothing about the file content, retry it on the next build
+         if(hashCache != null) {
+            hashCache.invalidate(path);
          }
+         if(failOnError) {
+            throw new RuntimeException(e.getMessage(), e);
+         }
+         return false;
       } catch (IOException e) {
-         e.printStackTrace();
-         resultCollector.failCount++;
+         log.error("Failed to " + getOperation().name().toLowerCase() + " file " + file.getName(), e);
+         resultCollector.failed(file);
       } catch (RuntimeException re){
-         resultCollector.failCount++;
-         if(failOnError) {
-            throw re;
+         resultCollector.failed(file);
+         failure = re;
+      } finally {
+         if (timing != null) {
+            timing.addRest(BuildReport.Phase.TOOL, System.nanoTime() - start, recorded);
          }
       }
-      if(hashCache != null) {
-         hashCache.setProperty(path, originalHash);
+      run.putResult(path, canonicalFile, original,
+               success ? FileHashCache.Result.SUCCESS : FileHashCache.Result.FAILURE, System.nanoTime() - start);
+      if(failure != null && failOnError) {
+         throw failure;
       }
-      return true;
+      return success;
    }
 
    public boolean isWindows(){
@@ -466,12 +1615,30 @@ public abstract class YangHelperMojo extends AbstractMojo {
     * @return
     */
    public List<String>  getCommandString(OperationType operation){
+      List<String> commandBuilder = getPyangExecutable();
+      commandBuilder.addAll(getPyangArguments(operation));
+      return commandBuilder;
+   }
+
+   /**
+    * @return the command starting pyang, without arguments.
+    */
+   List<String> getPyangExecutable(){
       List<String> commandBuilder = new ArrayList<String>();
       if(isWindows()){
          commandBuilder.addAll(Arrays.asList("cmd", "/c"));
       }
       commandBuilder.add("pyang");
-      
+      return commandBuilder;
+   }
+
+   /**
+    * get the pyang arguments for the operation, without the pyang executable.
+    * @param operation
+    * @return
+    */
+   List<String> getPyangArguments(OperationType operation){
+      List<String> commandBuilder = new ArrayList<String>();
       String[] arguments = getArguments();
       if(arguments != null && arguments.length > 0) {
          for(String arg : arguments){
@@ -493,64 +1660,202 @@ public abstract class YangHelperMojo extends AbstractMojo {
    
 
    /**
-    * Read the given file and return the content as a string.
+    * Write the given string to a file, unless the file already has the content.
     *
+    * @param str
     * @param file
-    * @return
-    * @throws java.io.IOException
+    * @throws IOException
     */
-   private String readFileAsString(File file) throws java.io.IOException {
-      StringBuilder fileData = new StringBuilder(1000);
-      BufferedReader reader = null;
+   public void writeStringToFile(String str, File file) throws IOException {
+      if (!file.exists() && file.isDirectory()) {
+         return;
+      }
+
+      File temp = AtomicFile.createTemp(file);
+      boolean committed = false;
+      BufferedWriter bw = null;
       try {
-         reader = new BufferedReader(ReaderFactory.newReader(file, encoding));
-         char[] buf = new char[1024];
-         int numRead = 0;
-         while ((numRead = reader.read(buf)) != -1) {
-            String readData = String.valueOf(buf, 0, numRead);
-            fileData.append(readData);
-            buf = new char[1024];
+         bw = new BufferedWriter(WriterFactory.newWriter(temp, encoding));
+         bw.write(str);
+         bw.close();
+         boolean changed = AtomicFile.commitIfChanged(temp, file);
+         committed = true;
+         if (!changed) {
+            outputUnchanged(file);
          }
       } finally {
-         IOUtil.close(reader);
+         IOUtil.close(bw);
+         if (!committed) {
+            AtomicFile.discard(temp);
+         }
       }
-      return fileData.toString();
    }
 
    /**
-    * Write the given string to a file.
+    * Run pyang for the operation on the given file, either on a pyang worker
+    * or in a new pyang process.
     *
-    * @param str
+    * @param operation
     * @param file
+    * @param outputFile the file replaced by the pyang output when pyang succeeds, or null
+    *           to discard the output
+    * @return
     * @throws IOException
     */
-   public void writeStringToFile(String str, File file) throws IOException {
-      if (!file.exists() && file.isDirectory()) {
-         return;
+   ToolResult runPyang(OperationType operation, File file, File outputFile) throws IOException {
+      List<String> arguments = getPyangArguments(operation);
+      arguments.add(file.getCanonicalPath());
+      return runPyang(arguments, file.getParentFile(), outputFile);
+   }
+
+   /**
+    * Run pyang with the given arguments, either on a pyang worker or in a new pyang process.
+    * The output is streamed to the output file, which is only replaced when pyang succeeds.
+    *
+    * @param arguments pyang arguments, without the pyang executable
+    * @param workingDirectory
+    * @param outputFile the file replaced by the pyang output, or null to discard the output
+    * @return the result, without output
+    * @throws IOException
+    */
+   ToolResult runPyang(List<String> arguments, File workingDirectory, File outputFile)
+                  throws IOException {
+      for (int attempt = 0;; attempt++) {
+         try {
+            return runPyangOnce(arguments, workingDirectory, outputFile);
+         } catch (ToolTimeoutException e) {
+            if (attempt >= retries || isDeadlineExpired()) {
+               throw e;
+            }
+            getLog().warn(e.getMessage() + ", retrying (" + (attempt + 1) + " of " + retries + ")");
+         }
       }
+   }
 
-      BufferedWriter bw = null;
+   private ToolResult runPyangOnce(List<String> arguments, File workingDirectory, File outputFile)
+                  throws IOException {
+      PyangWorkerPool pool = workerPool;
+      if (pool != null) {
+         getLog().debug("Executing pyang worker command " + arguments.toString());
+         ToolResult result = pool.execute(arguments, workingDirectory, getTimeoutMillis());
+         boolean changed = true;
+         if (outputFile != null && result.isSuccess()) {
+            changed = writeOutputFile(result.getOutput(), outputFile);
+         }
+         if (!changed) {
+            outputUnchanged(outputFile);
+         }
+         return new ToolResult(result.getExitCode(), null, result.getError(), changed);
+      }
+
+      List<String> commandString = getPyangExecutable();
+      commandString.addAll(arguments);
+      getLog().debug("Executing command " + commandString.toString());
+      ToolResult result;
+      ProcessLimiter.Permit permit = getProcessLimiter().acquire(processSlotDirectory);
       try {
-         bw = new BufferedWriter(WriterFactory.newWriter(file, encoding));
-         bw.write(str);
+         // the time waited for the permit does not count against the timeout
+         result = new ProcessRunner(commandString, workingDirectory, getPyangEnvironment(), getTimeoutMillis(),
+                        encoding).run(outputFile);
       } finally {
-         IOUtil.close(bw);
+         permit.release();
+      }
+      if (!result.isOutputChanged()) {
+         outputUnchanged(outputFile);
       }
+      return result;
    }
 
-   abstract boolean performOperation(File file)
-                  throws IOException;
+   /**
+    * Count an output file which was not rewritten because it already had the output
+    * content, so that its modification time does not trigger downstream work.
+    *
+    * @param outputFile
+    */
+   void outputUnchanged(File outputFile) {
+      getLog().debug("Output unchanged: " + outputFile);
+      BuildReport.unchanged();
+      ResultCollector results = currentResults;
+      if (results != null) {
+         results.unchangedCount.incrementAndGet();
+      }
+   }
+
+   /**
+    * @return the time limit of the next pyang run in milliseconds: the timeout, cut to
+    *         what is left of the overallTimeout. 0 when neither is set.
+    * @throws ToolTimeoutException when the overallTimeout already expired
+    */
+   long getTimeoutMillis() throws ToolTimeoutException {
+      long millis = timeout != null && timeout > 0 ? TimeUnit.SECONDS.toMillis(timeout) : 0;
+      long goalDeadline = deadline;
+      if (goalDeadline != 0) {
+         long left = TimeUnit.NANOSECONDS.toMillis(goalDeadline - System.nanoTime());
+         if (left <= 0) {
+            throw new ToolTimeoutException("Overall timeout of " + overallTimeout + "s expired");
+         }
+         millis = millis == 0 ? left : Math.min(millis, left);
+      }
+      return millis;
+   }
+
+   /**
+    * @return true when the overallTimeout of the goal execution expired.
+    */
+   boolean isDeadlineExpired() {
+      long goalDeadline = deadline;
+      return goalDeadline != 0 && goalDeadline - System.nanoTime() <= 0;
+   }
+
+   /**
+    * @return the environment variables passed to pyang processes.
+    */
+   Map<String, String> getPyangEnvironment() {
+      if (null == getYangMODPath()) {
+         return null;
+      }
+      return Collections.singletonMap("YANG_MODPATH", getYangMODPath());
+   }
 
-   class ResultCollector {
-      private int successCount;
-      private int failCount;
-      private int skippedCount;
+   /**
+    * Write the output of a pyang worker through a temporary file renamed onto the target,
+    * unless the target already has the output content.
+    *
+    * @param output
+    * @param outputFile
+    * @return false when the target was left unchanged
+    * @throws IOException
+    */
+   private boolean writeOutputFile(String output, File outputFile) throws IOException {
+      File temp = AtomicFile.createTemp(outputFile);
+      boolean committed = false;
+      Writer writer = null;
+      try {
+         writer = new OutputStreamWriter(new FileOutputStream(temp), PyangWorker.CHARSET);
+         writer.write(output);
+         writer.close();
+         boolean changed = AtomicFile.commitIfChanged(temp, outputFile);
+         committed = true;
+         return changed;
+      } finally {
+         IOUtil.close(writer);
+         if (!committed) {
+            AtomicFile.discard(temp);
+         }
+      }
    }
 
+   abstract boolean performOperation(File file)
+                  throws IOException;
+
    public enum OperationType {
       VERSION,
       COMPILE,
       CONVERT,
-      FORMAT
+      FORMAT,
+      /** COMPILE, FORMAT and CONVERT in one pass, see {@link YangProcessor} */
+      PROCESS,
+      /** PROCESS again whenever files change, see {@link YangWatcher} */
+      WATCH
    }
 }
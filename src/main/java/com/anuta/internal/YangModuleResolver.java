@@ -0,0 +1,138 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds and parses the modules imported by a yang file, the way pyang searches
+ * YANG_MODPATH: the directory of the importing file first, then the search path.
+ * Files are named <code>name.yang</code> or <code>name@revision.yang</code>, and looked
+ * up in a {@link ModuleIndex} instead of listing the directories.
+ */
+class YangModuleResolver {
+
+   private final ModuleIndex index;
+   private final String encoding;
+
+   private final Map<File, YangStatement> parsed = new ConcurrentHashMap<File, YangStatement>();
+
+   /**
+    * @param index the modules of the directories searched recursively
+    * @param encoding
+    */
+   YangModuleResolver(ModuleIndex index, String encoding) {
+      this.index = index;
+      this.encoding = encoding;
+   }
+
+   /**
+    * @param name module name
+    * @param revision required revision, or null for the latest one
+    * @param importingFile
+    * @return the parsed module, or null when it cannot be found or parsed
+    */
+   YangStatement resolve(String name, String revision, File importingFile) {
+      File file = findFile(name, revision, importingFile);
+      if (file == null) {
+         return null;
+      }
+      YangStatement module = parsed.get(file);
+      if (module == null) {
+         try {
+            module = YangParser.parseFile(file, encoding);
+         } catch (IOException e) {
+            return null;
+         }
+         parsed.put(file, module);
+      }
+      return module;
+   }
+
+   File findFile(String name, String revision, File importingFile) {
+      File dir = importingFile.getParentFile();
+      if (dir != null) {
+         File local = best(name, revision, listModuleFiles(dir, name));
+         if (local != null) {
+            return local;
+         }
+      }
+      return best(name, revision, index.getModuleFiles(name));
+   }
+
+   /**
+    * @return the file with the exact revision, or the one with the latest revision
+    *         when no revision is required.
+    */
+   private static File best(String name, String revision, List<File> candidates) {
+      File result = null;
+      String resultRevision = null;
+      for (File candidate : candidates) {
+         String candidateRevision = getRevision(name, candidate.getName());
+         if (revision != null) {
+            if (revision.equals(candidateRevision)) {
+               return candidate;
+            }
+         } else if (result == null || (candidateRevision != null
+                        && (resultRevision == null || candidateRevision.compareTo(resultRevision) > 0))) {
+            result = candidate;
+            resultRevision = candidateRevision;
+         }
+      }
+      return result;
+   }
+
+   private static String getRevision(String name, String fileName) {
+      int at = fileName.indexOf('@');
+      if (at != name.length()) {
+         return null;
+      }
+      return fileName.substring(at + 1, fileName.length() - ".yang".length());
+   }
+
+   /**
+    * Module name of a <code>name.yang</code> or <code>name@revision.yang</code> file, or null.
+    */
+   static String getModuleName(String fileName) {
+      if (!fileName.endsWith(".yang")) {
+         return null;
+      }
+      int at = fileName.indexOf('@');
+      return at > 0 ? fileName.substring(0, at) : fileName.substring(0, fileName.length() - ".yang".length());
+   }
+
+   private List<File> listModuleFiles(File dir, String name) {
+      List<File> result = new ArrayList<File>();
+      List<File> indexed = index.getDirectoryFiles(dir);
+      if (indexed != null) {
+         for (File file : indexed) {
+            if (name.equals(getModuleName(file.getName()))) {
+               result.add(file);
+            }
+         }
+         return result;
+      }
+      File[] files = dir.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            if (name.equals(getModuleName(file.getName())) && file.isFile()) {
+               result.add(file);
+            }
+         }
+      }
+      return result;
+   }
+}
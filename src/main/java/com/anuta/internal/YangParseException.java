@@ -0,0 +1,50 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.IOException;
+
+/**
+ * Syntax error in a yang file, with the position it was found at.
+ */
+class YangParseException extends IOException {
+
+   private static final long serialVersionUID = 1L;
+
+   private final String source;
+   private final int line;
+   private final int column;
+   private final String reason;
+
+   YangParseException(String source, int line, int column, String reason) {
+      super(source + ":" + line + ":" + column + ": error: " + reason);
+      this.source = source;
+      this.line = line;
+      this.column = column;
+      this.reason = reason;
+   }
+
+   String getSource() {
+      return source;
+   }
+
+   int getLine() {
+      return line;
+   }
+
+   int getColumn() {
+      return column;
+   }
+
+   String getReason() {
+      return reason;
+   }
+}
@@ -0,0 +1,279 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import com.anuta.internal.YangTokenizer.Token;
+import com.anuta.internal.YangTokenizer.TokenType;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+
+/**
+ * Builds the {@link YangStatement} tree of a yang file. Only the generic statement
+ * syntax is checked, keywords and their arguments are not validated.
+ */
+class YangParser {
+
+   private final YangTokenizer tokenizer;
+   private final boolean keepComments;
+
+   /** comments read since the last statement took them, see keepComments */
+   private List<String> pendingComments;
+   /** statement taking a comment on the line of its ';', '{' or '}' */
+   private YangStatement lineCommentTarget;
+   private int lineCommentLine;
+   private boolean lineCommentAtEnd;
+
+   YangParser(Reader reader, String source) {
+      this(reader, source, false);
+   }
+
+   /**
+    * @param reader
+    * @param source
+    * @param keepComments attach the comments to the statements, for formatting
+    */
+   YangParser(Reader reader, String source, boolean keepComments) {
+      this.tokenizer = new YangTokenizer(reader, source);
+      this.keepComments = keepComments;
+   }
+
+   /**
+    * Parse the module or submodule in the given file.
+    *
+    * @param file
+    * @param encoding file encoding, null for the platform encoding
+    * @return
+    * @throws IOException
+    */
+   static YangStatement parseFile(File file, String encoding) throws IOException {
+      return parseFile(file, encoding, false);
+   }
+
+   /**
+    * Parse the module or submodule in the given file.
+    *
+    * @param file
+    * @param encoding file encoding, null for the platform encoding
+    * @param keepComments attach the comments to the statements, for formatting
+    * @return
+    * @throws IOException
+    */
+   static YangStatement parseFile(File file, String encoding, boolean keepComments) throws IOException {
+      Reader reader = null;
+      try {
+         reader = new BufferedReader(ReaderFactory.newReader(file, encoding));
+         return new YangParser(reader, file.getPath(), keepComments).parseModule();
+      } finally {
+         IOUtil.close(reader);
+      }
+   }
+
+   /**
+    * Parse a single module or submodule statement, which must be the only statement of the input.
+    *
+    * @return
+    * @throws IOException
+    */
+   YangStatement parseModule() throws IOException {
+      Token token = nextToken();
+      if (token.type == TokenType.EOF) {
+         throw tokenizer.error(token.line, token.column, "no module or submodule found");
+      }
+      YangStatement module = parseStatement(token);
+      if (!"module".equals(module.getKeyword()) && !"submodule".equals(module.getKeyword())) {
+         throw tokenizer.error(token.line, token.column, "expected module or submodule, found " + token);
+      }
+      token = nextToken();
+      if (token.type != TokenType.EOF) {
+         throw tokenizer.error(token.line, token.column, "unexpected " + token + " after end of " + module.getKeyword());
+      }
+      module.addTrailingComments(takeComments());
+      return module;
+   }
+
+   /**
+    * Parse all statements up to the end of the input.
+    *
+    * @return
+    * @throws IOException
+    */
+   List<YangStatement> parseStatements() throws IOException {
+      List<YangStatement> statements = new ArrayList<YangStatement>();
+      Token token;
+      while ((token = nextToken()).type != TokenType.EOF) {
+         statements.add(parseStatement(token));
+      }
+      return statements;
+   }
+
+   private YangStatement parseStatement(Token keyword) throws IOException {
+      if (keyword.type != TokenType.STRING || !isKeyword(keyword.text)) {
+         throw tokenizer.error(keyword.line, keyword.column, "keyword expected, found " + keyword);
+      }
+      List<String> comments = takeComments();
+      Token token = nextToken();
+      String argument = null;
+      if (token.type == TokenType.STRING) {
+         argument = token.text;
+         token = nextToken();
+      } else if (token.type == TokenType.QUOTED) {
+         StringBuilder text = new StringBuilder(token.text);
+         token = nextToken();
+         while (token.type == TokenType.STRING && "+".equals(token.text)) {
+            Token part = nextToken();
+            if (part.type != TokenType.QUOTED) {
+               throw tokenizer.error(part.line, part.column, "quoted string expected after '+', found " + part);
+            }
+            text.append(part.text);
+            token = nextToken();
+         }
+         argument = text.toString();
+      }
+
+      YangStatement statement = new YangStatement(keyword.text, argument, keyword.line);
+      // comments within the statement header are moved before it
+      statement.addComments(comments);
+      statement.addComments(takeComments());
+      if (token.type == TokenType.SEMICOLON) {
+         setLineCommentTarget(statement, token);
+         return statement;
+      }
+      if (token.type != TokenType.LEFT_BRACE) {
+         throw tokenizer.error(token.line, token.column, "expected ';' or '{' after " + keyword + ", found " + token);
+      }
+      setLineCommentTarget(statement, token);
+      while (true) {
+         token = nextToken();
+         if (token.type == TokenType.RIGHT_BRACE) {
+            statement.addEndComments(takeComments());
+            setLineCommentTarget(statement, token);
+            lineCommentAtEnd = keepComments;
+            return statement;
+         }
+         if (token.type == TokenType.EOF) {
+            throw tokenizer.error(keyword.line, keyword.column, "missing '}' for " + keyword);
+         }
+         statement.addSubstatement(parseStatement(token));
+      }
+   }
+
+   /**
+    * @return the next token which is not a comment.
+    */
+   private Token nextToken() throws IOException {
+      Token token = tokenizer.next();
+      while (token.type == TokenType.COMMENT) {
+         if (keepComments) {
+            keepComment(token);
+         }
+         token = tokenizer.next();
+      }
+      lineCommentTarget = null;
+      return token;
+   }
+
+   private void setLineCommentTarget(YangStatement statement, Token end) {
+      if (keepComments) {
+         lineCommentTarget = statement;
+         lineCommentLine = end.line;
+         lineCommentAtEnd = false;
+      }
+   }
+
+   private void keepComment(Token comment) {
+      String text = normalizeComment(comment);
+      if (lineCommentTarget != null && comment.line == lineCommentLine && text.indexOf('\n') < 0) {
+         if (lineCommentAtEnd && lineCommentTarget.getEndLineComment() == null) {
+            lineCommentTarget.setEndLineComment(text);
+            return;
+         }
+         if (!lineCommentAtEnd && lineCommentTarget.getLineComment() == null) {
+            lineCommentTarget.setLineComment(text);
+            return;
+         }
+      }
+      lineCommentTarget = null;
+      if (pendingComments == null) {
+         pendingComments = new ArrayList<String>();
+      }
+      pendingComments.add(text);
+   }
+
+   /**
+    * @return the comments read since the last call, null when there are none.
+    */
+   private List<String> takeComments() {
+      List<String> comments = pendingComments;
+      pendingComments = null;
+      return comments;
+   }
+
+   /**
+    * Strip trailing whitespace, and from the continuation lines of a block comment the
+    * indentation up to the column of the comment start, so that it can be re-indented.
+    */
+   static String normalizeComment(Token comment) {
+      String[] lines = comment.text.split("\r?\n", -1);
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < lines.length; i++) {
+         String line = lines[i];
+         if (i > 0) {
+            text.append('\n');
+            int strip = 0;
+            while (strip < line.length() && strip < comment.column - 1
+                     && (line.charAt(strip) == ' ' || line.charAt(strip) == '\t')) {
+               strip++;
+            }
+            line = line.substring(strip);
+         }
+         int end = line.length();
+         while (end > 0 && (line.charAt(end - 1) == ' ' || line.charAt(end - 1) == '\t')) {
+            end--;
+         }
+         text.append(line, 0, end);
+      }
+      return text.toString();
+   }
+
+   /**
+    * An identifier, optionally prefixed: <code>[prefix:]identifier</code>.
+    */
+   static boolean isKeyword(String text) {
+      int colon = text.indexOf(':');
+      if (colon < 0) {
+         return isIdentifier(text);
+      }
+      return isIdentifier(text.substring(0, colon)) && isIdentifier(text.substring(colon + 1));
+   }
+
+   static boolean isIdentifier(String text) {
+      if (text.length() == 0) {
+         return false;
+      }
+      char first = text.charAt(0);
+      if (!Character.isLetter(first) && first != '_') {
+         return false;
+      }
+      for (int i = 1; i < text.length(); i++) {
+         char c = text.charAt(i);
+         if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+            return false;
+         }
+      }
+      return true;
+   }
+}
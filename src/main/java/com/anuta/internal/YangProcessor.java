@@ -0,0 +1,209 @@
+package com.anuta.internal;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Compile, format and convert yang files in one pass. The files are scanned and hashed
+ * once and each file goes through the configured operations in the order COMPILE,
+ * FORMAT, CONVERT. When an operation fails on a file the following ones are not run
+ * on it. Every operation uses the same cache file as its own goal in an execution with
+ * the same id.
+ *
+ * @goal process
+ * @requiresProject false
+ * @threadSafe
+ */
+public class YangProcessor extends YangHelperMojo {
+
+   /** order in which the operations are applied to a file */
+   private static final List<OperationType> PIPELINE =
+            Arrays.asList(OperationType.COMPILE, OperationType.FORMAT, OperationType.CONVERT);
+
+   /**
+    * Operations to run: COMPILE, FORMAT and/or CONVERT. All of them when not specified.
+    *
+    * @parameter
+    */
+   private String[] operations;
+
+   /**
+    * list of custom arguments which can be passed while compiling yang
+    *
+    * @parameter
+    */
+   private String[] compileArgs;
+
+   /**
+    * Number of files validated by a single pyang run, see the compile goal.
+    *
+    * @parameter default-value="1" expression="${yang.compileBatchSize}"
+    */
+   private int compileBatchSize = 1;
+
+   /**
+    * How compile batches are grouped: <code>directory</code> or <code>dependencies</code>.
+    *
+    * @parameter default-value="directory" expression="${yang.compileBatchGrouping}"
+    */
+   private String compileBatchGrouping = "directory";
+
+   /**
+    * Check the syntax with the plugin's own parser before running pyang, see the compile goal.
+    *
+    * @parameter default-value="true" expression="${yang.syntaxCheck}"
+    */
+   private boolean syntaxCheck = true;
+
+   /**
+    * list of custom arguments which can be passed while formatting yang
+    * Eg: --keep-comments
+    *
+    * @parameter
+    */
+   private String[] formatArgs;
+
+   /**
+    * Only report the files which are not formatted, see the format goal.
+    *
+    * @parameter default-value="false" expression="${yang.formatCheck}"
+    */
+   private boolean formatCheck;
+
+   /**
+    * Spaces per nesting level of the java format backend, see the format goal.
+    *
+    * @parameter default-value="2" expression="${yang.formatIndent}"
+    */
+   private int formatIndent = 2;
+
+   /**
+    * Line length of the java format backend, see the format goal.
+    *
+    * @parameter default-value="80" expression="${yang.formatLineLength}"
+    */
+   private int formatLineLength = 80;
+
+   /**
+    * list of custom arguments which can be passed while converting yang to yin
+    * Eg: --yin-pretty-strings
+    *
+    * @parameter
+    */
+   private String[] convertArgs;
+
+   /**
+    * Directory of the content addressed cache of converted yin files, see the convert goal.
+    *
+    * @parameter expression="${yang.outputCacheDirectory}"
+    */
+   private File outputCacheDirectory;
+
+   public void execute() throws MojoExecutionException, MojoFailureException {
+      getLog().info("GOAL is " + OperationType.PROCESS);
+      executeOperations(createOperations());
+   }
+
+   /**
+    * @return the operations run when none are configured.
+    */
+   List<OperationType> getDefaultOperations() {
+      return PIPELINE;
+   }
+
+   /**
+    * @return a mojo for every configured operation, in pipeline order.
+    * @throws MojoExecutionException
+    */
+   List<YangHelperMojo> createOperations() throws MojoExecutionException {
+      List<OperationType> configured = new ArrayList<OperationType>();
+      if (operations == null || operations.length == 0) {
+         configured.addAll(getDefaultOperations());
+      } else {
+         for (String operation : operations) {
+            OperationType type;
+            try {
+               type = OperationType.valueOf(operation.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+               throw new MojoExecutionException("Unknown operation " + operation + ", expected one of " + PIPELINE);
+            }
+            if (!PIPELINE.contains(type)) {
+               throw new MojoExecutionException("Unknown operation " + operation + ", expected one of " + PIPELINE);
+            }
+            configured.add(type);
+         }
+      }
+
+      List<YangHelperMojo> result = new ArrayList<YangHelperMojo>();
+      for (OperationType type : PIPELINE) {
+         if (!configured.contains(type)) {
+            continue;
+         }
+         YangHelperMojo mojo;
+         if (type == OperationType.COMPILE) {
+            YangCompiler compiler = new YangCompiler();
+            compiler.setCompileArgs(compileArgs);
+            compiler.setCompileBatchSize(compileBatchSize);
+            compiler.setCompileBatchGrouping(compileBatchGrouping);
+            compiler.setSyntaxCheck(syntaxCheck);
+            mojo = compiler;
+         } else if (type == OperationType.FORMAT) {
+            YangFormatter formatter = new YangFormatter();
+            formatter.setFormatArgs(formatArgs);
+            formatter.setFormatCheck(formatCheck);
+            formatter.setFormatIndent(formatIndent);
+            formatter.setFormatLineLength(formatLineLength);
+            mojo = formatter;
+         } else {
+            YangConverter converter = new YangConverter();
+            converter.setConvertArgs(convertArgs);
+            converter.setOutputCacheDirectory(outputCacheDirectory);
+            mojo = converter;
+         }
+         mojo.copyConfiguration(this);
+         result.add(mojo);
+      }
+      return result;
+   }
+
+   @Override
+   public OperationType getOperation() {
+      return OperationType.PROCESS;
+   }
+
+   @Override
+   public String getCacheFile() {
+      return null;
+   }
+
+   @Override
+   public String[] getArguments() {
+      return null;
+   }
+
+   @Override
+   boolean performOperation(File file) throws IOException {
+      throw new IllegalStateException("The process goal delegates to the mojos of its operations");
+   }
+}
@@ -0,0 +1,190 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A yang statement: keyword, optional argument and substatements.
+ */
+class YangStatement {
+
+   private final String keyword;
+   private final String argument;
+   private final int line;
+   private final List<YangStatement> substatements = new ArrayList<YangStatement>();
+
+   /*
+    * Comments are only kept when parsing for formatting, see YangParser. Their text
+    * includes the comment markers.
+    */
+   /** comments before the statement */
+   private List<String> comments;
+   /** comment on the line of the ';' or '{' ending the statement header */
+   private String lineComment;
+   /** comment on the line of the '}' ending the statement */
+   private String endLineComment;
+   /** comments after the last substatement */
+   private List<String> endComments;
+   /** comments after the statement, only for a module or submodule */
+   private List<String> trailingComments;
+
+   YangStatement(String keyword, String argument, int line) {
+      this.keyword = keyword;
+      this.argument = argument;
+      this.line = line;
+   }
+
+   /**
+    * @return the keyword as written, <code>prefix:identifier</code> for extensions.
+    */
+   String getKeyword() {
+      return keyword;
+   }
+
+   /**
+    * @return the argument, or null when the statement has none.
+    */
+   String getArgument() {
+      return argument;
+   }
+
+   int getLine() {
+      return line;
+   }
+
+   List<YangStatement> getSubstatements() {
+      return substatements;
+   }
+
+   void addSubstatement(YangStatement statement) {
+      substatements.add(statement);
+   }
+
+   List<String> getComments() {
+      return comments == null ? Collections.<String>emptyList() : comments;
+   }
+
+   void addComments(List<String> text) {
+      comments = add(comments, text);
+   }
+
+   /**
+    * @return the comment on the line of the ';' or '{' ending the statement header, or null.
+    */
+   String getLineComment() {
+      return lineComment;
+   }
+
+   void setLineComment(String text) {
+      lineComment = text;
+   }
+
+   /**
+    * @return the comment on the line of the '}' ending the statement, or null.
+    */
+   String getEndLineComment() {
+      return endLineComment;
+   }
+
+   void setEndLineComment(String text) {
+      endLineComment = text;
+   }
+
+   List<String> getEndComments() {
+      return endComments == null ? Collections.<String>emptyList() : endComments;
+   }
+
+   void addEndComments(List<String> text) {
+      endComments = add(endComments, text);
+   }
+
+   List<String> getTrailingComments() {
+      return trailingComments == null ? Collections.<String>emptyList() : trailingComments;
+   }
+
+   void addTrailingComments(List<String> text) {
+      trailingComments = add(trailingComments, text);
+   }
+
+   private static List<String> add(List<String> list, List<String> text) {
+      if (text == null || text.isEmpty()) {
+         return list;
+      }
+      if (list == null) {
+         list = new ArrayList<String>(text.size());
+      }
+      list.addAll(text);
+      return list;
+   }
+
+   boolean isExtension() {
+      return keyword.indexOf(':') > 0;
+   }
+
+   /**
+    * @return the prefix of an extension keyword, or null.
+    */
+   String getPrefix() {
+      int colon = keyword.indexOf(':');
+      return colon > 0 ? keyword.substring(0, colon) : null;
+   }
+
+   /**
+    * @return the keyword without its prefix.
+    */
+   String getIdentifier() {
+      return keyword.substring(keyword.indexOf(':') + 1);
+   }
+
+   /**
+    * @param keyword
+    * @return the first substatement with the keyword, or null.
+    */
+   YangStatement findFirst(String keyword) {
+      for (YangStatement statement : substatements) {
+         if (statement.keyword.equals(keyword)) {
+            return statement;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @param keyword
+    * @return the argument of the first substatement with the keyword, or null.
+    */
+   String findArgument(String keyword) {
+      YangStatement statement = findFirst(keyword);
+      return statement == null ? null : statement.argument;
+   }
+
+   /**
+    * @param keyword
+    * @return all substatements with the keyword.
+    */
+   List<YangStatement> findAll(String keyword) {
+      List<YangStatement> result = new ArrayList<YangStatement>();
+      for (YangStatement statement : substatements) {
+         if (statement.keyword.equals(keyword)) {
+            result.add(statement);
+         }
+      }
+      return result;
+   }
+
+   @Override
+   public String toString() {
+      return argument == null ? keyword : keyword + " " + argument;
+   }
+}
@@ -0,0 +1,290 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming tokenizer for the yang syntax of RFC 7950 section 6. Quoted strings are
+ * returned with quotes and escapes already processed; <code>+</code> concatenation is
+ * left to the parser, which sees it as an unquoted <code>+</code> token.
+ */
+class YangTokenizer {
+
+   enum TokenType {
+      /** unquoted string, which includes keywords */
+      STRING,
+      /** single or double quoted string */
+      QUOTED,
+      LEFT_BRACE,
+      RIGHT_BRACE,
+      SEMICOLON,
+      /** line or block comment, text includes the comment markers */
+      COMMENT,
+      EOF
+   }
+
+   static class Token {
+      final TokenType type;
+      final String text;
+      final int line;
+      final int column;
+
+      Token(TokenType type, String text, int line, int column) {
+         this.type = type;
+         this.text = text;
+         this.line = line;
+         this.column = column;
+      }
+
+      @Override
+      public String toString() {
+         return type == TokenType.EOF ? "end of file" : "'" + text + "'";
+      }
+   }
+
+   private static final int TAB_WIDTH = 8;
+
+   private final Reader reader;
+   private final String source;
+
+   private int peeked = -2;
+   /** the character after {@link #peeked}, -2 when not read yet */
+   private int peekedNext = -2;
+   private int line = 1;
+   /** 1 based column of the next character, tabs expanded to multiples of {@link #TAB_WIDTH} */
+   private int column = 1;
+
+   YangTokenizer(Reader reader, String source) {
+      this.reader = reader;
+      this.source = source;
+   }
+
+   String getSource() {
+      return source;
+   }
+
+   /**
+    * @return the next token, {@link TokenType#EOF} at the end of the input.
+    * @throws IOException
+    */
+   Token next() throws IOException {
+      int c = peek();
+      while (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\uFEFF') {
+         read();
+         c = peek();
+      }
+      int startLine = line;
+      int startColumn = column;
+      switch (c) {
+         case -1:
+            return new Token(TokenType.EOF, "", startLine, startColumn);
+         case '{':
+            read();
+            return new Token(TokenType.LEFT_BRACE, "{", startLine, startColumn);
+         case '}':
+            read();
+            return new Token(TokenType.RIGHT_BRACE, "}", startLine, startColumn);
+         case ';':
+            read();
+            return new Token(TokenType.SEMICOLON, ";", startLine, startColumn);
+         case '"':
+            read();
+            return new Token(TokenType.QUOTED, readDoubleQuoted(startLine, startColumn), startLine, startColumn);
+         case '\'':
+            read();
+            return new Token(TokenType.QUOTED, readSingleQuoted(startLine, startColumn), startLine, startColumn);
+         default:
+            break;
+      }
+
+      StringBuilder text = new StringBuilder();
+      if (c == '/') {
+         read();
+         int n = peek();
+         if (n == '/') {
+            text.append('/');
+            while ((c = peek()) != -1 && c != '\n' && c != '\r') {
+               text.append((char) read());
+            }
+            return new Token(TokenType.COMMENT, text.toString(), startLine, startColumn);
+         }
+         if (n == '*') {
+            text.append('/').append((char) read());
+            boolean star = false;
+            while (true) {
+               c = read();
+               if (c == -1) {
+                  throw error(startLine, startColumn, "unterminated comment");
+               }
+               text.append((char) c);
+               if (star && c == '/') {
+                  return new Token(TokenType.COMMENT, text.toString(), startLine, startColumn);
+               }
+               star = c == '*';
+            }
+         }
+         text.append('/');
+      }
+      while ((c = peek()) != -1 && !isSeparator(c) && !(c == '/' && isCommentStart(peekNext()))) {
+         if (c == '"' || c == '\'') {
+            throw error(line, column, "quote character in unquoted string");
+         }
+         text.append((char) read());
+      }
+      return new Token(TokenType.STRING, text.toString(), startLine, startColumn);
+   }
+
+   /**
+    * The characters that end an unquoted string. A comment start, <code>//</code> or
+    * <code>/*</code>, ends it as well, while a single <code>/</code> as in <code>a/b</code> paths
+    * does not (RFC 7950 6.1.3).
+    */
+   private static boolean isSeparator(int c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ';' || c == '{' || c == '}';
+   }
+
+   /**
+    * @param c the character after a <code>/</code>
+    */
+   private static boolean isCommentStart(int c) {
+      return c == '/' || c == '*';
+   }
+
+   private String readSingleQuoted(int startLine, int startColumn) throws IOException {
+      StringBuilder text = new StringBuilder();
+      int c;
+      while ((c = read()) != '\'') {
+         if (c == -1) {
+            throw error(startLine, startColumn, "unterminated string");
+         }
+         text.append((char) c);
+      }
+      return text.toString();
+   }
+
+   /**
+    * Read a double quoted string, processing escapes and stripping the indentation of
+    * continuation lines up to the column after the opening quote (RFC 7950 6.1.3).
+    */
+   private String readDoubleQuoted(int startLine, int startColumn) throws IOException {
+      StringBuilder text = new StringBuilder();
+      int indent = startColumn;
+      /** length of the text that trailing whitespace stripping must not cut into */
+      int keep = 0;
+      while (true) {
+         int c = read();
+         if (c == -1) {
+            throw error(startLine, startColumn, "unterminated string");
+         }
+         if (c == '"') {
+            return text.toString();
+         }
+         if (c == '\\') {
+            int e = read();
+            switch (e) {
+               case 'n':
+                  text.append('\n');
+                  break;
+               case 't':
+                  text.append('\t');
+                  break;
+               case '"':
+                  text.append('"');
+                  break;
+               case '\\':
+                  text.append('\\');
+                  break;
+               case -1:
+                  throw error(startLine, startColumn, "unterminated string");
+               default:
+                  text.append('\\').append((char) e);
+                  break;
+            }
+            keep = text.length();
+         } else if (c == '\n') {
+            int end = text.length();
+            while (end > keep && (text.charAt(end - 1) == ' ' || text.charAt(end - 1) == '\t')) {
+               end--;
+            }
+            text.setLength(end);
+            text.append('\n');
+            keep = text.length();
+            skipIndentation(indent, text);
+         } else if (c != '\r') {
+            text.append((char) c);
+         }
+      }
+   }
+
+   /**
+    * Skip the whitespace of a continuation line up to and including the indentation column.
+    * A tab reaching past that column is replaced by spaces for the columns past it.
+    */
+   private void skipIndentation(int indent, StringBuilder text) throws IOException {
+      int c = peek();
+      while ((c == ' ' || c == '\t') && column <= indent) {
+         int end = c == '\t' ? nextTabStop(column) : column + 1;
+         read();
+         if (end > indent + 1) {
+            for (int kept = indent + 1; kept < end; kept++) {
+               text.append(' ');
+            }
+            break;
+         }
+         c = peek();
+      }
+   }
+
+   private static int nextTabStop(int column) {
+      return ((column - 1) / TAB_WIDTH + 1) * TAB_WIDTH + 1;
+   }
+
+   private int peek() throws IOException {
+      if (peeked == -2) {
+         peeked = reader.read();
+      }
+      return peeked;
+   }
+
+   /**
+    * @return the character after the one {@link #peek()} returns
+    */
+   private int peekNext() throws IOException {
+      if (peek() == -1) {
+         return -1;
+      }
+      if (peekedNext == -2) {
+         peekedNext = reader.read();
+      }
+      return peekedNext;
+   }
+
+   private int read() throws IOException {
+      int c = peek();
+      peeked = peekedNext;
+      peekedNext = -2;
+      if (c == '\n') {
+         line++;
+         column = 1;
+      } else if (c == '\t') {
+         column = nextTabStop(column);
+      } else if (c != -1) {
+         column++;
+      }
+      return c;
+   }
+
+   YangParseException error(int atLine, int atColumn, String reason) {
+      return new YangParseException(source, atLine, atColumn, reason);
+   }
+}
@@ -0,0 +1,287 @@
+package com.anuta.internal;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Run the operations of the process goal, CONVERT unless configured otherwise, and then
+ * keep watching the yang directories and the YANG_MODPATH, running them again whenever
+ * yang files change, until the build is interrupted. Only the changed files and their
+ * dependents are processed again, with the hash caches, dependency graphs and module
+ * index of the operations kept in memory. The hash caches stay locked while watching, so
+ * other builds sharing the target directory wait until the watch ends. Pyang is checked,
+ * and pyang workers are started, only once.
+ *
+ * @goal watch
+ * @requiresProject false
+ * @threadSafe
+ */
+public class YangWatcher extends YangProcessor {
+
+   /**
+    * Milliseconds without further changes before the changed files are processed, so
+    * that a burst of changes, like a save of several files, is processed at once.
+    *
+    * @parameter default-value="200" expression="${yang.watchDelay}"
+    */
+   private int watchDelay = 200;
+
+   private WatchService watchService;
+
+   private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+   /** last seen content of the changed files and of the files rewritten by the operations */
+   private final Map<File, Fingerprint> knownContent = new HashMap<File, Fingerprint>();
+
+   public void execute() throws MojoExecutionException, MojoFailureException {
+      getLog().info("GOAL is " + OperationType.WATCH);
+      List<YangHelperMojo> operations = createOperations();
+      if (!checkTools(operations)) {
+         return;
+      }
+      try {
+         watchService = FileSystems.getDefault().newWatchService();
+         // register before the first scan, so that no change is missed in between
+         for (File directory : getModuleSearchPath()) {
+            if (directory.isDirectory()) {
+               register(directory.toPath());
+            }
+         }
+      } catch (IOException e) {
+         throw new MojoExecutionException("Cannot watch the yang directories", e);
+      }
+      startResidentWorkerPool(operations);
+      List<CacheLock> locks = null;
+      try {
+         locks = HashCacheFiles.lock(operations, getLog());
+         List<File> files = scanFiles();
+         runOperations(operations, files, null, false);
+         remember(files);
+         watch(operations, files);
+      } finally {
+         if (locks != null) {
+            HashCacheFiles.release(locks);
+         }
+         stopWorkerPool();
+         try {
+            watchService.close();
+         } catch (IOException e) {
+            getLog().debug(e);
+         }
+      }
+   }
+
+   @Override
+   List<OperationType> getDefaultOperations() {
+      return Arrays.asList(OperationType.CONVERT);
+   }
+
+   @Override
+   public OperationType getOperation() {
+      return OperationType.WATCH;
+   }
+
+   /**
+    * Process the changes until the thread is interrupted.
+    *
+    * @param operations
+    * @param files the scanned yang files
+    * @throws MojoExecutionException
+    */
+   private void watch(List<YangHelperMojo> operations, List<File> files) throws MojoExecutionException {
+      getLog().info("Watching " + watchedDirectories.size() + " directories for changes");
+      while (!Thread.currentThread().isInterrupted()) {
+         Set<File> changed = new TreeSet<File>();
+         boolean rescan;
+         try {
+            WatchKey key = watchService.take();
+            rescan = false;
+            while (key != null) {
+               rescan |= pollEvents(key, changed);
+               key = watchService.poll(watchDelay, TimeUnit.MILLISECONDS);
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+         } catch (ClosedWatchServiceException e) {
+            return;
+         }
+         removeUnchanged(changed);
+         if (changed.isEmpty() && !rescan) {
+            continue;
+         }
+
+         long start = System.currentTimeMillis();
+         getLog().info("Changed: " + changed);
+         if (rescan) {
+            files = scanFiles();
+         }
+         remember(runOperations(operations, files, changed, rescan));
+         getLog().info("Changes processed in " + (System.currentTimeMillis() - start) + "ms");
+      }
+   }
+
+   /**
+    * Run the operations, reporting failures instead of ending the watch.
+    *
+    * @param operations
+    * @param files
+    * @param changed the changed files, null to process all files
+    * @param rescanned true when the files were scanned again
+    * @return the files rewritten by the operations
+    */
+   private Set<File> runOperations(List<YangHelperMojo> operations, List<File> files, Set<File> changed,
+                  boolean rescanned) {
+      try {
+         if (changed == null) {
+            return executeOperations(operations, files);
+         }
+         return rerunOperations(operations, files, changed, rescanned);
+      } catch (MojoExecutionException e) {
+         getLog().error(e.getMessage(), e);
+      } catch (MojoFailureException e) {
+         getLog().error(e.getMessage());
+      } catch (RuntimeException e) {
+         // also unexpected errors, which may have no message
+         getLog().error(e.getMessage(), e);
+      }
+      return Collections.emptySet();
+   }
+
+   /**
+    * Collect the yang files changed in the directory of the key.
+    *
+    * @param key
+    * @param changed
+    * @return true when files or directories may have been added or removed
+    */
+   private boolean pollEvents(WatchKey key, Set<File> changed) {
+      Path directory = watchedDirectories.get(key);
+      boolean rescan = false;
+      for (WatchEvent<?> event : key.pollEvents()) {
+         WatchEvent.Kind<?> kind = event.kind();
+         if (kind == StandardWatchEventKinds.OVERFLOW || directory == null) {
+            rescan = true;
+            continue;
+         }
+         Path path = directory.resolve((Path) event.context());
+         if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+               register(path);
+            } catch (IOException e) {
+               getLog().warn("Cannot watch " + path + ": " + e.getMessage());
+            }
+            rescan = true;
+         } else if (path.getFileName().toString().endsWith(".yang")) {
+            changed.add(path.toFile().getAbsoluteFile());
+            rescan |= kind != StandardWatchEventKinds.ENTRY_MODIFY;
+         } else if (kind == StandardWatchEventKinds.ENTRY_DELETE && watchedDirectories.containsValue(path)) {
+            // a directory with yang files, not a temporary file of the operations
+            rescan = true;
+         }
+      }
+      if (!key.reset()) {
+         watchedDirectories.remove(key);
+      }
+      return rescan;
+   }
+
+   /**
+    * Drop the files whose content is the one last seen. Reading a file changes its access
+    * time, which is reported as a modification on some platforms, and files rewritten by
+    * the operations themselves, like formatted files, must not start another run.
+    *
+    * @param changed
+    */
+   private void removeUnchanged(Set<File> changed) {
+      for (Iterator<File> it = changed.iterator(); it.hasNext();) {
+         File file = it.next();
+         try {
+            File canonicalFile = file.getCanonicalFile();
+            Fingerprint known = knownContent.get(canonicalFile);
+            Fingerprint current = Fingerprint.of(canonicalFile, known);
+            knownContent.put(canonicalFile, current);
+            if (known != null && current.hash.equals(known.hash)) {
+               it.remove();
+            }
+         } catch (IOException e) {
+            // deleted, keep it as changed
+            knownContent.remove(file.getAbsoluteFile());
+         }
+      }
+   }
+
+   /**
+    * Remember the content of the files, like the ones rewritten by the operations.
+    *
+    * @param files
+    */
+   private void remember(Collection<File> files) {
+      for (File file : files) {
+         try {
+            File canonicalFile = file.getCanonicalFile();
+            knownContent.put(canonicalFile, Fingerprint.of(canonicalFile, knownContent.get(canonicalFile)));
+         } catch (IOException e) {
+            getLog().debug(e);
+         }
+      }
+   }
+
+   /**
+    * Watch the directory and its subdirectories.
+    *
+    * @param root
+    * @throws IOException
+    */
+   private void register(Path root) throws IOException {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+         @Override
+         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                     StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.put(key, dir);
+            return FileVisitResult.CONTINUE;
+         }
+      });
+   }
+}
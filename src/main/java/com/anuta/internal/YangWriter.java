@@ -0,0 +1,289 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a parsed yang module as yang, laid out like the output of
+ * <code>pyang -f yang</code>: one statement per line, indented by nesting depth, text
+ * arguments on their own line and blank lines between the groups of module level
+ * statements. Comments kept by the parser are written where they were found.
+ */
+class YangWriter {
+
+   /** changes whenever the output of the writer changes, see {@link FileHashCache} */
+   static final String VERSION = "3";
+
+   /** keywords whose argument is written on its own line */
+   private static final Set<String> NEWLINE_ARGUMENTS = new HashSet<String>(Arrays.asList("contact",
+            "description", "organization", "reference"));
+
+   /**
+    * keywords whose argument is an identifier, a number, a date or a keyword, and is only
+    * quoted when it needs to be. Other arguments, also those of extensions, are quoted.
+    */
+   private static final Set<String> UNQUOTED_ARGUMENTS = new HashSet<String>(Arrays.asList("action",
+            "anydata", "anyxml", "argument", "base", "belongs-to", "bit", "case", "choice", "config", "container",
+            "deviate", "enum", "extension", "feature", "fraction-digits", "grouping", "identity", "if-feature",
+            "import", "include", "key", "leaf", "leaf-list", "list", "mandatory", "max-elements", "min-elements",
+            "modifier", "module", "notification", "ordered-by", "position", "prefix", "require-instance",
+            "revision", "revision-date", "rpc", "status", "submodule", "type", "typedef", "uses", "value",
+            "yang-version", "yin-element"));
+
+   /** groups of module level statements, separated by a blank line */
+   private static final Map<String, String> GROUPS = new HashMap<String, String>();
+
+   static {
+      group("header", "yang-version", "namespace", "prefix", "belongs-to");
+      group("linkage", "import", "include");
+      group("meta", "organization", "contact", "description", "reference");
+      group("revision", "revision");
+      group("definition", "typedef", "grouping", "identity", "feature", "extension");
+   }
+
+   private static void group(String group, String... keywords) {
+      for (String keyword : keywords) {
+         GROUPS.put(keyword, group);
+      }
+   }
+
+   /** groups whose statements are each separated by a blank line */
+   private static final Set<String> SEPARATED_GROUPS = new HashSet<String>(Arrays.asList("revision",
+            "definition", "body"));
+
+   private final int indentSize;
+   private final int lineLength;
+
+   /**
+    * @param indentSize number of spaces per nesting level
+    * @param lineLength arguments making a line longer are moved to their own line, 0 for no limit
+    */
+   YangWriter(int indentSize, int lineLength) {
+      this.indentSize = indentSize;
+      this.lineLength = lineLength;
+   }
+
+   /**
+    * @param module
+    * @param out
+    * @throws IOException
+    */
+   void write(YangStatement module, Writer out) throws IOException {
+      writeStatement(module, 0, out);
+      writeComments(module.getTrailingComments(), "", out);
+   }
+
+   private void writeStatement(YangStatement statement, int level, Writer out) throws IOException {
+      String indent = indent(level);
+      writeComments(statement.getComments(), indent, out);
+      out.write(indent);
+      out.write(statement.getKeyword());
+      String argument = statement.getArgument();
+      if (argument != null) {
+         writeArgument(statement.getKeyword(), argument, indent, out);
+      }
+
+      List<YangStatement> substatements = statement.getSubstatements();
+      List<String> endComments = statement.getEndComments();
+      if (substatements.isEmpty() && endComments.isEmpty()) {
+         out.write(';');
+         writeLineComment(statement.getLineComment(), out);
+         if (statement.getEndLineComment() != null) {
+            out.write(indent);
+            out.write(statement.getEndLineComment());
+            out.write('\n');
+         }
+         return;
+      }
+      out.write(" {");
+      writeLineComment(statement.getLineComment(), out);
+      YangStatement previous = null;
+      for (YangStatement substatement : substatements) {
+         if (level == 0 && previous != null && isSeparated(previous, substatement)) {
+            out.write('\n');
+         }
+         writeStatement(substatement, level + 1, out);
+         previous = substatement;
+      }
+      writeComments(endComments, indent(level + 1), out);
+      out.write(indent);
+      out.write('}');
+      writeLineComment(statement.getEndLineComment(), out);
+   }
+
+   private static void writeLineComment(String comment, Writer out) throws IOException {
+      if (comment != null) {
+         out.write(' ');
+         out.write(comment);
+      }
+      out.write('\n');
+   }
+
+   private void writeArgument(String keyword, String argument, String indent, Writer out) throws IOException {
+      boolean multiline = argument.indexOf('\n') >= 0;
+      boolean quoted = multiline || !UNQUOTED_ARGUMENTS.contains(keyword) || needsQuotes(argument);
+      char quote = quoted ? getQuote(argument, multiline) : 0;
+      boolean newline = NEWLINE_ARGUMENTS.contains(keyword) || (lineLength > 0 && !multiline
+               && indent.length() + keyword.length() + argument.length() + (quoted ? 4 : 2) > lineLength);
+      String argumentIndent;
+      if (newline) {
+         argumentIndent = indent + indent(1);
+         out.write('\n');
+         out.write(argumentIndent);
+      } else {
+         argumentIndent = null;
+         out.write(' ');
+      }
+      if (!quoted) {
+         out.write(argument);
+         return;
+      }
+
+      out.write(quote);
+      if (quote == '\'') {
+         // single quoted strings are read verbatim, continuation lines must not be indented
+         out.write(argument);
+         out.write(quote);
+         return;
+      }
+      // continuation lines are aligned after the opening quote, which reading strips again
+      int column = (argumentIndent != null ? argumentIndent.length() : indent.length() + keyword.length() + 1) + 1;
+      String continuation = spaces(column);
+      int start = 0;
+      while (true) {
+         int end = argument.indexOf('\n', start);
+         String line = argument.substring(start, end < 0 ? argument.length() : end);
+         if (start > 0 && line.length() > 0) {
+            out.write(continuation);
+         }
+         writeEscaped(line, out);
+         if (end < 0) {
+            break;
+         }
+         out.write('\n');
+         start = end + 1;
+      }
+      out.write(quote);
+   }
+
+   private static void writeEscaped(String text, Writer out) throws IOException {
+      for (int i = 0; i < text.length(); i++) {
+         char c = text.charAt(i);
+         if (c == '"' || c == '\\') {
+            out.write('\\');
+            out.write(c);
+         } else if (c == '\t') {
+            out.write("\\t");
+         } else {
+            out.write(c);
+         }
+      }
+   }
+
+   /**
+    * Double quotes, or single quotes for a line with quotes or backslashes which then
+    * needs no escapes, and for lines with trailing blanks, which double quoted strings lose.
+    */
+   private static char getQuote(String argument, boolean multiline) {
+      if (argument.indexOf('\'') >= 0) {
+         return '"';
+      }
+      if (multiline) {
+         return hasTrailingBlanks(argument) ? '\'' : '"';
+      }
+      return argument.indexOf('"') >= 0 || argument.indexOf('\\') >= 0 ? '\'' : '"';
+   }
+
+   private static boolean hasTrailingBlanks(String argument) {
+      int end = argument.indexOf('\n');
+      while (end >= 0) {
+         if (end > 0 && argument.charAt(end - 1) == ' ') {
+            return true;
+         }
+         end = argument.indexOf('\n', end + 1);
+      }
+      return false;
+   }
+
+   /**
+    * @param argument
+    * @return true when the argument cannot be written as an unquoted string
+    */
+   static boolean needsQuotes(String argument) {
+      if (argument.length() == 0 || argument.contains("//") || argument.contains("/*") || argument.contains("*/")) {
+         return true;
+      }
+      for (int i = 0; i < argument.length(); i++) {
+         switch (argument.charAt(i)) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case ';':
+            case '{':
+            case '}':
+            case '"':
+            case '\'':
+               return true;
+            default:
+               break;
+         }
+      }
+      return false;
+   }
+
+   private static boolean isSeparated(YangStatement previous, YangStatement statement) {
+      String group = getGroup(statement);
+      return !group.equals(getGroup(previous)) || SEPARATED_GROUPS.contains(group);
+   }
+
+   private static String getGroup(YangStatement statement) {
+      String group = GROUPS.get(statement.getKeyword());
+      return group == null ? "body" : group;
+   }
+
+   private void writeComments(List<String> comments, String indent, Writer out) throws IOException {
+      for (String comment : comments) {
+         int start = 0;
+         while (true) {
+            int end = comment.indexOf('\n', start);
+            String line = comment.substring(start, end < 0 ? comment.length() : end);
+            if (line.length() > 0) {
+               out.write(indent);
+               out.write(line);
+            }
+            out.write('\n');
+            if (end < 0) {
+               break;
+            }
+            start = end + 1;
+         }
+      }
+   }
+
+   private String indent(int level) {
+      return spaces(level * indentSize);
+   }
+
+   private static String spaces(int count) {
+      char[] spaces = new char[count];
+      Arrays.fill(spaces, ' ');
+      return new String(spaces);
+   }
+}
@@ -0,0 +1,306 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ * 
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a parsed yang module as YIN (RFC 7950 section 13), laid out like the
+ * output of <code>pyang -f yin</code>.
+ */
+class YinWriter {
+
+   static final String YIN_NAMESPACE = "urn:ietf:params:xml:ns:yang:yin:1";
+
+   /** changes whenever the output of the writer changes, see {@link OutputCache} */
+   static final String VERSION = "2";
+
+   private static final String INDENT = "  ";
+
+   /** keyword to argument mapping of RFC 7950 section 13.1, null for keywords without argument */
+   private static final Map<String, YinArgument> ARGUMENTS = new HashMap<String, YinArgument>();
+
+   static {
+      attribute("name", "action", "anydata", "anyxml", "argument", "base", "bit", "case", "choice",
+               "container", "enum", "extension", "feature", "grouping", "identity", "if-feature", "leaf",
+               "leaf-list", "list", "module", "notification", "rpc", "submodule", "type", "typedef", "units",
+               "uses");
+      attribute("value", "config", "default", "deviate", "error-app-tag", "fraction-digits", "key", "length",
+               "mandatory", "max-elements", "min-elements", "modifier", "ordered-by", "path", "pattern",
+               "position", "prefix", "presence", "range", "require-instance", "status", "value", "yang-version",
+               "yin-element");
+      attribute("target-node", "augment", "deviation", "refine");
+      attribute("module", "belongs-to", "import", "include");
+      attribute("condition", "must", "when");
+      attribute("date", "revision", "revision-date");
+      attribute("uri", "namespace");
+      attribute("tag", "unique");
+      element("text", "contact", "description", "organization", "reference");
+      element("value", "error-message");
+      ARGUMENTS.put("input", null);
+      ARGUMENTS.put("output", null);
+   }
+
+   private static void attribute(String argument, String... keywords) {
+      for (String keyword : keywords) {
+         ARGUMENTS.put(keyword, new YinArgument(argument, false));
+      }
+   }
+
+   private static void element(String argument, String... keywords) {
+      for (String keyword : keywords) {
+         ARGUMENTS.put(keyword, new YinArgument(argument, true));
+      }
+   }
+
+   private final YangModuleResolver resolver;
+   private final boolean prettyStrings;
+
+   /**
+    * @param resolver finds imported modules for their namespaces and extension definitions
+    * @param prettyStrings indent element arguments, like <code>--yin-pretty-strings</code>
+    */
+   YinWriter(YangModuleResolver resolver, boolean prettyStrings) {
+      this.resolver = resolver;
+      this.prettyStrings = prettyStrings;
+   }
+
+   /**
+    * Write the module, parsed from the given file, as a YIN document.
+    *
+    * @param module
+    * @param file
+    * @param out
+    * @throws IOException
+    */
+   void write(YangStatement module, File file, Writer out) throws IOException {
+      ModuleContext context = new ModuleContext(module, file);
+      try {
+         XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+         xml.writeStartDocument("UTF-8", "1.0");
+         xml.writeCharacters("\n");
+         xml.writeStartElement(module.getKeyword());
+         xml.writeAttribute("name", module.getArgument());
+         xml.writeDefaultNamespace(YIN_NAMESPACE);
+         for (Map.Entry<String, String> namespace : context.namespaces.entrySet()) {
+            xml.writeNamespace(namespace.getKey(), namespace.getValue());
+         }
+         writeSubstatements(xml, context, module, INDENT);
+         xml.writeEndElement();
+         xml.writeCharacters("\n");
+         xml.writeEndDocument();
+         xml.flush();
+      } catch (XMLStreamException e) {
+         throw new IOException("Cannot write yin for " + file, e);
+      }
+   }
+
+   private void writeSubstatements(XMLStreamWriter xml, ModuleContext context, YangStatement statement,
+                  String indent) throws XMLStreamException, IOException {
+      for (YangStatement substatement : statement.getSubstatements()) {
+         writeStatement(xml, context, substatement, indent);
+      }
+      xml.writeCharacters("\n" + indent.substring(INDENT.length()));
+   }
+
+   private void writeStatement(XMLStreamWriter xml, ModuleContext context, YangStatement statement,
+                  String indent) throws XMLStreamException, IOException {
+      String tag = statement.getKeyword();
+      YinArgument argument;
+      if (statement.isExtension()) {
+         if (!context.namespaces.containsKey(statement.getPrefix())) {
+            throw new YangParseException(context.file.getPath(), statement.getLine(), 1, "prefix "
+                     + statement.getPrefix() + " is not defined");
+         }
+         argument = context.getExtensionArgument(statement);
+      } else if (ARGUMENTS.containsKey(tag)) {
+         argument = ARGUMENTS.get(tag);
+      } else {
+         throw new YangParseException(context.file.getPath(), statement.getLine(), 1, "unknown keyword " + tag);
+      }
+
+      xml.writeCharacters("\n" + indent);
+      boolean empty = statement.getSubstatements().isEmpty();
+      if (argument == null || !argument.element) {
+         if (empty) {
+            xml.writeEmptyElement(tag);
+         } else {
+            xml.writeStartElement(tag);
+         }
+         if (argument != null && statement.getArgument() != null) {
+            xml.writeAttribute(argument.name, statement.getArgument());
+         }
+         if (empty) {
+            return;
+         }
+      } else {
+         xml.writeStartElement(tag);
+         xml.writeCharacters("\n" + indent + INDENT);
+         xml.writeStartElement(argument.name);
+         String text = statement.getArgument() == null ? "" : statement.getArgument();
+         if (prettyStrings) {
+            xml.writeCharacters("\n");
+            writePrettyText(xml, indent + INDENT + INDENT, text);
+            xml.writeCharacters("\n" + indent + INDENT);
+         } else {
+            xml.writeCharacters(text);
+         }
+         xml.writeEndElement();
+      }
+      writeSubstatements(xml, context, statement, indent + INDENT);
+      xml.writeEndElement();
+   }
+
+   private static void writePrettyText(XMLStreamWriter xml, String indent, String text) throws XMLStreamException {
+      int start = 0;
+      while (start <= text.length()) {
+         int end = text.indexOf('\n', start);
+         String line = end < 0 ? text.substring(start) : text.substring(start, end);
+         if (line.length() > 0) {
+            xml.writeCharacters(indent + line);
+         }
+         if (end < 0) {
+            break;
+         }
+         xml.writeCharacters("\n");
+         start = end + 1;
+      }
+   }
+
+   /**
+    * Name and placement of a statement argument in YIN.
+    */
+   static class YinArgument {
+      final String name;
+      final boolean element;
+
+      YinArgument(String name, boolean element) {
+         this.name = name;
+         this.element = element;
+      }
+   }
+
+   /**
+    * Prefix bindings of the module being written.
+    */
+   private class ModuleContext {
+      final File file;
+      final YangStatement module;
+      /** prefix to namespace, in declaration order */
+      final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+      /** prefix to the module defining its extensions */
+      final Map<String, YangStatement> modules = new HashMap<String, YangStatement>();
+
+      ModuleContext(YangStatement module, File file) throws YangParseException {
+         this.file = file;
+         this.module = module;
+         String prefix = module.findArgument("prefix");
+         if (prefix != null) {
+            bind(prefix, module.findArgument("namespace"), module);
+         } else {
+            YangStatement belongsTo = module.findFirst("belongs-to");
+            if (belongsTo != null && belongsTo.findArgument("prefix") != null) {
+               // the prefix of a submodule is bound to the namespace of its module
+               YangStatement parent = resolver.resolve(belongsTo.getArgument(), null, file);
+               if (parent == null) {
+                  throw new YangParseException(file.getPath(), belongsTo.getLine(), 1, "module "
+                           + belongsTo.getArgument() + " not found");
+               }
+               bind(belongsTo.findArgument("prefix"), parent.findArgument("namespace"), parent);
+            }
+         }
+         for (YangStatement imported : module.findAll("import")) {
+            String importPrefix = imported.findArgument("prefix");
+            if (importPrefix != null) {
+               YangStatement importedModule = resolver.resolve(imported.getArgument(),
+                        imported.findArgument("revision-date"), file);
+               if (importedModule != null) {
+                  bind(importPrefix, importedModule.findArgument("namespace"), importedModule);
+               }
+            }
+         }
+      }
+
+      private void bind(String prefix, String namespace, YangStatement definingModule) {
+         if (namespace != null) {
+            namespaces.put(prefix, namespace);
+         }
+         modules.put(prefix, definingModule);
+      }
+
+      /**
+       * Find the extension definition to place its argument, like pyang: no argument
+       * when the definition is unknown, an attribute unless yin-element is true. It is
+       * searched in the module of the prefix, then in the module written, and in the
+       * submodules they include.
+       */
+      YinArgument getExtensionArgument(YangStatement statement) {
+         YangStatement definingModule = modules.get(statement.getPrefix());
+         if (definingModule == null) {
+            return null;
+         }
+         YangStatement extension = findExtension(definingModule, statement.getIdentifier());
+         if (extension == null && definingModule != module) {
+            extension = findExtension(module, statement.getIdentifier());
+         }
+         if (extension == null) {
+            return null;
+         }
+         YangStatement extensionArgument = extension.findFirst("argument");
+         if (extensionArgument == null) {
+            return null;
+         }
+         if ("true".equals(extensionArgument.findArgument("yin-element"))) {
+            return new YinArgument(statement.getPrefix() + ":" + extensionArgument.getArgument(), true);
+         }
+         return new YinArgument(extensionArgument.getArgument(), false);
+      }
+
+      private YangStatement findExtension(YangStatement definingModule, String name) {
+         return findExtension(definingModule, name,
+                  Collections.newSetFromMap(new IdentityHashMap<YangStatement, Boolean>()));
+      }
+
+      /**
+       * Search the module and the submodules it includes, which may include others.
+       */
+      private YangStatement findExtension(YangStatement definingModule, String name, Set<YangStatement> searched) {
+         if (!searched.add(definingModule)) {
+            return null;
+         }
+         for (YangStatement extension : definingModule.findAll("extension")) {
+            if (name.equals(extension.getArgument())) {
+               return extension;
+            }
+         }
+         for (YangStatement include : definingModule.findAll("include")) {
+            YangStatement submodule = resolver.resolve(include.getArgument(), include.findArgument("revision-date"),
+                     file);
+            YangStatement extension = submodule == null ? null : findExtension(submodule, name, searched);
+            if (extension != null) {
+               return extension;
+            }
+         }
+         return null;
+      }
+   }
+}
@@ -0,0 +1,264 @@
+# Long lived pyang worker used by the yin-yang-plugin.
+#
+# The plugin starts this script once per build and sends it pyang command
+# lines over stdin, so that the interpreter and the pyang plugins are only
+# loaded once instead of once per yang file.
+#
+# Every frame is a 4 byte big endian length followed by that many bytes of
+# UTF-8 text. Integers are sent as the bare 4 byte value.
+#
+#   worker -> plugin  frame(greeting)                   once, when ready
+#   plugin -> worker  int(argc) frame(cwd) frame(arg)*  one request
+#   worker -> plugin  int(exit) frame(stdout) frame(stderr)
+#
+# The worker exits when stdin is closed.
+#
+# When YANG_MODULE_INDEX names the module index stored by the plugin (see
+# ModuleIndex.java), the directories of the index are not listed again by
+# every request: pyang's file repository takes their modules from the index.
+import os
+import runpy
+import struct
+import sys
+import traceback
+
+try:
+    from io import StringIO
+except ImportError:
+    from StringIO import StringIO
+
+PROTOCOL = 'pyang-worker 1'
+
+if hasattr(sys.stdin, 'buffer'):
+    channel_in = sys.stdin.buffer
+    channel_out = sys.stdout.buffer
+else:
+    channel_in = sys.stdin
+    channel_out = sys.stdout
+
+
+def read_exact(n):
+    data = b''
+    while len(data) < n:
+        chunk = channel_in.read(n - len(data))
+        if not chunk:
+            return None
+        data += chunk
+    return data
+
+
+def read_int():
+    data = read_exact(4)
+    if data is None:
+        return None
+    return struct.unpack('>i', data)[0]
+
+
+def read_frame():
+    n = read_int()
+    if n is None:
+        return None
+    return read_exact(n).decode('utf-8')
+
+
+def write_int(value):
+    channel_out.write(struct.pack('>i', value))
+
+
+def write_frame(text):
+    if not isinstance(text, bytes):
+        text = text.encode('utf-8')
+    write_int(len(text))
+    channel_out.write(text)
+
+
+def load_runner(pyang_script):
+    try:
+        from pyang.scripts import pyang_tool
+        return pyang_tool.run
+    except ImportError:
+        pass
+    # pyang 1.x keeps run() in the bin/pyang script itself
+    namespace = runpy.run_path(pyang_script, run_name='pyang_worker_tool')
+    return namespace['run']
+
+
+class ModuleIndex(object):
+    """The module index of the plugin, read again when the file changes."""
+
+    HEADER = 'yang-module-index 1'
+
+    def __init__(self, path):
+        self.path = path
+        self.stamp = None
+        self.files = {}
+
+    def get(self):
+        """Return the module files below each indexed root, or None."""
+        try:
+            st = os.stat(self.path)
+        except OSError:
+            self.stamp = None
+            self.files = {}
+            return None
+        stamp = (st.st_mtime, st.st_size)
+        if stamp != self.stamp:
+            self.files = self.read()
+            self.stamp = stamp
+        return self.files
+
+    def read(self):
+        roots = []
+        directories = {}
+        current = None
+        with open(self.path, 'rb') as f:
+            lines = f.read().decode('utf-8').split('\n')
+        if not lines or lines[0] != self.HEADER:
+            return {}
+        for line in lines[2:]:
+            fields = line.split('\t', 2)
+            if fields[0] == 'R':
+                roots.append(fields[1])
+            elif fields[0] == 'D':
+                current = ([], [])
+                directories[fields[2]] = current
+            elif fields[0] == 'F':
+                current[0].append(fields[1])
+            elif fields[0] == 'S':
+                current[1].append(fields[1])
+        files = {}
+        for root in roots:
+            found = []
+            self.collect(root, directories, found, set())
+            files[root] = found
+        return files
+
+    def collect(self, d, directories, found, seen):
+        if d not in directories or d in seen:
+            return
+        seen.add(d)
+        names, subdirectories = directories[d]
+        for name in names:
+            found.append(os.path.join(d, name))
+        for name in subdirectories:
+            self.collect(os.path.join(d, name), directories, found, seen)
+
+
+def install_module_index(path):
+    """Make pyang take the modules of indexed directories from the index."""
+    try:
+        from pyang import repository
+        repository_class = repository.FileRepository
+    except (ImportError, AttributeError):
+        try:
+            import pyang
+            repository_class = pyang.FileRepository
+        except (ImportError, AttributeError):
+            return
+    try:
+        from pyang import syntax
+        re_filename = syntax.re_filename
+    except (ImportError, AttributeError):
+        return
+    setup = getattr(repository_class, '_setup', None)
+    if setup is None:
+        return
+    index = ModuleIndex(path)
+
+    def indexed_setup(self, ctx):
+        files = index.get()
+        if not files or getattr(self, 'no_path_recurse', False):
+            return setup(self, ctx)
+        dirs = self.dirs
+        modules = []
+        listed = []
+
+        def list_dirs():
+            # directories which are not indexed are listed by pyang itself
+            if listed:
+                self.dirs = listed[:]
+                setup(self, ctx)
+                modules.extend(self.modules)
+                del listed[:]
+
+        try:
+            for d in dirs:
+                found = files.get(os.path.abspath(d)) if d not in ('', '.') else None
+                if found is None:
+                    listed.append(d)
+                    continue
+                list_dirs()
+                for absfilename in found:
+                    m = re_filename.search(os.path.basename(absfilename))
+                    if m is not None:
+                        (name, rev, format) = m.groups()
+                        modules.append((name, rev, (format, absfilename)))
+            list_dirs()
+        finally:
+            self.dirs = dirs
+        self.modules = modules
+
+    repository_class._setup = indexed_setup
+
+
+def reset_plugins():
+    # pyang registers its plugins on every run; start from an empty list so
+    # that their options are not added twice.
+    try:
+        from pyang import plugin
+        del plugin.plugins[:]
+    except (ImportError, AttributeError):
+        pass
+
+
+def execute(run, cwd, args):
+    out = StringIO()
+    err = StringIO()
+    saved = sys.argv, sys.stdout, sys.stderr
+    code = 0
+    try:
+        os.chdir(cwd)
+        reset_plugins()
+        sys.argv = ['pyang'] + args
+        sys.stdout = out
+        sys.stderr = err
+        run()
+    except SystemExit:
+        status = sys.exc_info()[1].code
+        if status is None:
+            code = 0
+        elif isinstance(status, int):
+            code = status
+        else:
+            err.write(str(status) + '\n')
+            code = 1
+    except Exception:
+        traceback.print_exc(file=err)
+        code = 1
+    finally:
+        sys.argv, sys.stdout, sys.stderr = saved
+    return code, out.getvalue(), err.getvalue()
+
+
+def main():
+    pyang_script = sys.argv[1] if len(sys.argv) > 1 else 'pyang'
+    run = load_runner(pyang_script)
+    if os.environ.get('YANG_MODULE_INDEX'):
+        install_module_index(os.environ['YANG_MODULE_INDEX'])
+    write_frame(PROTOCOL)
+    channel_out.flush()
+    while True:
+        argc = read_int()
+        if argc is None:
+            break
+        cwd = read_frame()
+        args = [read_frame() for _ in range(argc)]
+        code, out, err = execute(run, cwd, args)
+        write_int(code)
+        write_frame(out)
+        write_frame(err)
+        channel_out.flush()
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,126 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Include and exclude patterns, compared with the matching of the plexus DirectoryScanner,
+ * and the pruning of directories which cannot hold a match.
+ */
+public class AntPathMatcherTest extends TestCase {
+
+   private static final String[] PATHS = { "a.yang", "models/a.yang", "models/sub/b.yang",
+            "models/sub/deep/c.yang", "test/models/d.yang", "Models/e.yang", "models", "models/sub",
+            "a.yang/b.yang" };
+
+   private static Path path(String path) {
+      return Paths.get(path.replace('/', File.separatorChar));
+   }
+
+   /**
+    * The pattern matches the same paths as in the plexus DirectoryScanner.
+    */
+   private static void assertSameAsPlexus(String pattern) {
+      AntPathMatcher matcher = AntPathMatcher.compile(pattern);
+      // DirectoryScanner appends ** to patterns ending with a separator
+      String plexusPattern = pattern.endsWith("/") ? pattern + "**" : pattern;
+      plexusPattern = plexusPattern.replace('/', File.separatorChar);
+      for (String path : PATHS) {
+         String platformPath = path.replace('/', File.separatorChar);
+         assertEquals(pattern + " on " + path, SelectorUtils.matchPath(plexusPattern, platformPath, true),
+                  matcher.matches(path(path)));
+      }
+   }
+
+   public void testWildcards() {
+      assertSameAsPlexus("*.yang");
+      assertSameAsPlexus("models/*.yang");
+      assertSameAsPlexus("?odels/*.yang");
+      assertSameAsPlexus("models/s?b/*");
+      assertSameAsPlexus("*/*/*.yang");
+      assertSameAsPlexus("models/sub/b.yang");
+   }
+
+   public void testAnyDirectories() {
+      assertSameAsPlexus("**/*.yang");
+      assertSameAsPlexus("**");
+      assertSameAsPlexus("models/**");
+      assertSameAsPlexus("models/**/*.yang");
+      assertSameAsPlexus("**/sub/**");
+      assertSameAsPlexus("**/models/*.yang");
+   }
+
+   public void testConsecutiveAnyDirectoriesCollapse() {
+      assertSameAsPlexus("**/**/*.yang");
+      assertSameAsPlexus("models/**/**/*.yang");
+      assertSameAsPlexus("**/**");
+      AntPathMatcher collapsed = AntPathMatcher.compile("models/**/**/**/c.yang");
+      assertTrue(collapsed.matches(path("models/c.yang")));
+      assertTrue(collapsed.matches(path("models/sub/deep/c.yang")));
+   }
+
+   public void testTrailingSeparator() {
+      assertSameAsPlexus("models/");
+      assertSameAsPlexus("**/sub/");
+      assertTrue(AntPathMatcher.compile("models\\").matches(path("models/sub/b.yang")));
+      assertTrue(AntPathMatcher.compile("models/**/").matches(path("models/sub/b.yang")));
+   }
+
+   public void testRegex() {
+      String separator = File.separator.equals("\\") ? "\\\\" : File.separator;
+      assertSameAsPlexus("%regex[.*sub.*]");
+      assertSameAsPlexus("%regex[models" + separator + "[^" + separator + "]*\\.yang]");
+      assertSameAsPlexus("%regex[[a-z]\\.yang]");
+      // a regular expression cannot prune
+      AntPathMatcher regex = AntPathMatcher.compile("%regex[nothing]");
+      assertTrue(regex.couldMatchBelow(path("models")));
+      assertFalse(regex.matchesAllBelow(path("models")));
+   }
+
+   public void testAntSyntax() {
+      assertSameAsPlexus("%ant[models/*.yang]");
+      assertSameAsPlexus("%ant[**/sub/**]");
+   }
+
+   public void testCouldMatchBelow() {
+      AntPathMatcher matcher = AntPathMatcher.compile("models/sub/*.yang");
+      assertTrue(matcher.couldMatchBelow(path("models")));
+      assertTrue(matcher.couldMatchBelow(path("models/sub")));
+      assertFalse(matcher.couldMatchBelow(path("models/sub/deep")));
+      assertFalse(matcher.couldMatchBelow(path("test")));
+      assertFalse(matcher.couldMatchBelow(path("Models")));
+
+      matcher = AntPathMatcher.compile("m*/**/*.yang");
+      assertTrue(matcher.couldMatchBelow(path("models/sub/deep")));
+      assertFalse(matcher.couldMatchBelow(path("test/models")));
+
+      assertTrue(AntPathMatcher.compile("**/*.yang").couldMatchBelow(path("test/models")));
+      assertFalse(AntPathMatcher.compile("*.yang").couldMatchBelow(path("models")));
+   }
+
+   public void testMatchesAllBelow() {
+      assertTrue(AntPathMatcher.compile("test/").matchesAllBelow(path("test")));
+      assertTrue(AntPathMatcher.compile("test/**").matchesAllBelow(path("test")));
+      assertTrue(AntPathMatcher.compile("test/**").matchesAllBelow(path("test/models")));
+      assertFalse(AntPathMatcher.compile("test/**").matchesAllBelow(path("models")));
+      assertTrue(AntPathMatcher.compile("**/sub/**").matchesAllBelow(path("models/sub")));
+      assertTrue(AntPathMatcher.compile("**/sub/**").matchesAllBelow(path("models/sub/deep")));
+      assertFalse(AntPathMatcher.compile("**/sub/**").matchesAllBelow(path("models")));
+      // only some files below match
+      assertFalse(AntPathMatcher.compile("test/**/*.yang").matchesAllBelow(path("test")));
+      assertFalse(AntPathMatcher.compile("test/*").matchesAllBelow(path("test")));
+   }
+}
@@ -0,0 +1,290 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import junit.framework.TestCase;
+
+/**
+ * The binary format of the hash cache: round trip of the entries, the layout of the
+ * header, the front coded paths and the checksum, and rejection of damaged files.
+ */
+public class FileHashCacheTest extends TestCase {
+
+   private static final String CONFIGURATION_A = "pyang 1.6 --strict";
+
+   private static final String CONFIGURATION_B = "pyang 1.6 --lint \u00e9";
+
+   private File file;
+
+   protected void setUp() throws IOException {
+      file = File.createTempFile("hash-cache", ".bin");
+   }
+
+   protected void tearDown() {
+      file.delete();
+   }
+
+   /**
+    * A cache with two configurations, entries without one, numbers of every varint length,
+    * an unknown modification time, absent, empty and non empty dependency lists, and a
+    * dependency which did not resolve.
+    */
+   private FileHashCache createCache() {
+      FileHashCache cache = new FileHashCache();
+      cache.put("/src/models/a.yang", new Fingerprint("0000000000000001", 0, Fingerprint.UNKNOWN));
+      cache.setConfiguration(CONFIGURATION_A);
+      cache.put("/src/models/ab.yang", new Fingerprint("ffffffffffffffff", 127, 0),
+               Arrays.asList("a"), Arrays.asList("/src/models/a.yang"), FileHashCache.Result.SUCCESS, 128);
+      cache.put("/src/models/sub/c.yang", new Fingerprint("8000000000000000", 1L << 35, 1350000000000L),
+               Collections.<String>emptyList(), Collections.<String>emptyList(), FileHashCache.Result.FAILURE,
+               Long.MAX_VALUE);
+      cache.setConfiguration(CONFIGURATION_B);
+      cache.put("/src/other/d\u00e9.yang", new Fingerprint("0123456789abcdef", 16384, Long.MAX_VALUE - 1),
+               Arrays.asList("ab", "c@2012-10-18"), Arrays.asList("/src/models/ab.yang", ""),
+               FileHashCache.Result.SUCCESS, 0);
+      return cache;
+   }
+
+   private static void assertEntry(FileHashCache cache, String path, String hash, long size, long lastModified,
+            List<String> dependencies, List<String> resolved, long duration) {
+      Fingerprint fingerprint = cache.getFingerprint(path);
+      assertNotNull(path, fingerprint);
+      assertEquals(hash, fingerprint.hash);
+      assertEquals(size, fingerprint.size);
+      assertEquals(lastModified, fingerprint.lastModified);
+      assertEquals(dependencies, cache.getDependencies(path));
+      assertEquals(resolved, cache.getResolvedDependencies(path));
+      assertEquals(duration, cache.getDuration(path));
+   }
+
+   public void testRoundTrip() throws IOException {
+      createCache().write(file);
+      FileHashCache cache = FileHashCache.read(file);
+
+      assertEquals(4, cache.size());
+      assertEntry(cache, "/src/models/a.yang", "0000000000000001", 0, Fingerprint.UNKNOWN, null, null, -1);
+      assertEntry(cache, "/src/models/ab.yang", "ffffffffffffffff", 127, 0, Arrays.asList("a"),
+               Arrays.asList("/src/models/a.yang"), 128);
+      assertEntry(cache, "/src/models/sub/c.yang", "8000000000000000", 1L << 35, 1350000000000L,
+               Collections.<String>emptyList(), Collections.<String>emptyList(), Long.MAX_VALUE);
+      assertEntry(cache, "/src/other/d\u00e9.yang", "0123456789abcdef", 16384, Long.MAX_VALUE - 1,
+               Arrays.asList("ab", "c@2012-10-18"), Arrays.asList("/src/models/ab.yang", ""), 0);
+
+      // results and configurations come back through isCurrent
+      cache.setConfiguration(CONFIGURATION_A);
+      assertTrue(cache.isCurrent("/src/models/ab.yang", "ffffffffffffffff"));
+      assertFalse(cache.isCurrent("/src/models/sub/c.yang", "8000000000000000"));
+      assertFalse(cache.isCurrent("/src/other/d\u00e9.yang", "0123456789abcdef"));
+      cache.setConfiguration(CONFIGURATION_B);
+      assertTrue(cache.isCurrent("/src/other/d\u00e9.yang", "0123456789abcdef"));
+      assertFalse(cache.isCurrent("/src/models/ab.yang", "ffffffffffffffff"));
+      cache.setConfiguration(null);
+      assertFalse(cache.isCurrent("/src/models/a.yang", "0000000000000001"));
+
+      // a cache read back writes the same bytes
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      cache.write(file);
+      assertTrue(Arrays.equals(bytes, Files.readAllBytes(file.toPath())));
+   }
+
+   public void testEmptyCache() throws IOException {
+      new FileHashCache().write(file);
+      assertEquals(0, FileHashCache.read(file).size());
+   }
+
+   public void testLayout() throws IOException {
+      createCache().write(file);
+      byte[] bytes = Files.readAllBytes(file.toPath());
+
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length - 8);
+      assertEquals(crc.getValue(), ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong());
+
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      assertEquals("YYHC", new String(bytes, 0, 4, "US-ASCII"));
+      in.readInt();
+      assertEquals(FileHashCache.VERSION, in.readInt());
+      // each configuration is stored once
+      assertEquals(2, in.readInt());
+      assertEquals(CONFIGURATION_A, in.readUTF());
+      assertEquals(CONFIGURATION_B, in.readUTF());
+      assertEquals(4, in.readInt());
+
+      // a.yang: nothing shared, 0 size in one byte, unknown time stored as 0, no configuration,
+      // no duration, result NONE, no dependencies
+      assertEquals(0, in.readUnsignedShort());
+      assertEquals("/src/models/a.yang", in.readUTF());
+      assertEquals(1L, in.readLong());
+      assertEquals(0, in.readUnsignedByte());
+      assertEquals(0, in.readUnsignedByte());
+      assertEquals(0, in.readUnsignedByte());
+      assertEquals(0, in.readUnsignedByte());
+      assertEquals(FileHashCache.Result.NONE.ordinal(), in.readByte());
+      assertEquals(0, in.readUnsignedByte());
+
+      // ab.yang shares "/src/models/a" with a.yang; 127 fits in one byte, 128 takes two
+      assertEquals("/src/models/a".length(), in.readUnsignedShort());
+      assertEquals("b.yang", in.readUTF());
+      assertEquals(-1L, in.readLong());
+      assertEquals(127, in.readUnsignedByte());
+      assertEquals(1, in.readUnsignedByte());
+      assertEquals(1, in.readUnsignedByte());
+      assertEquals(0x80, in.readUnsignedByte());
+      assertEquals(0x01, in.readUnsignedByte());
+      assertEquals(FileHashCache.Result.SUCCESS.ordinal(), in.readByte());
+      // one dependency, each followed by the path it resolved to
+      assertEquals(2, in.readUnsignedByte());
+      assertEquals("a", in.readUTF());
+      assertEquals("/src/models/a.yang", in.readUTF());
+
+      // sub/c.yang shares "/src/models/"
+      assertEquals("/src/models/".length(), in.readUnsignedShort());
+      assertEquals("sub/c.yang", in.readUTF());
+   }
+
+   /**
+    * One cache instance kept for two runs, as by the watch goal: a file deleted between the
+    * runs is pruned by the second run, although the first run put it.
+    */
+   public void testPruneAcrossRuns() throws IOException {
+      createCache().write(file);
+      FileHashCache cache = FileHashCache.read(file);
+      // entries read from the file and not touched are pruned
+      cache.touch("/src/models/a.yang");
+      cache.touch("/src/models/ab.yang");
+      cache.put("/src/models/sub/c.yang", new Fingerprint("8000000000000000", 1, 0));
+      assertEquals(1, cache.prune());
+      assertEquals(3, cache.size());
+
+      cache.startRun();
+      cache.touch("/src/models/a.yang");
+      cache.put("/src/models/sub/c.yang", new Fingerprint("8000000000000000", 1, 0),
+               Collections.<String>emptyList(), Collections.<String>emptyList(), FileHashCache.Result.SUCCESS, 5);
+      assertEquals(1, cache.prune());
+      assertEquals(2, cache.size());
+      assertNull(cache.getFingerprint("/src/models/ab.yang"));
+      assertNotNull(cache.getFingerprint("/src/models/a.yang"));
+
+      // without a new run, the paths of the run are still in use
+      assertEquals(0, cache.prune());
+      assertEquals(2, cache.size());
+   }
+
+   public void testTruncatedCacheIsRejected() throws IOException {
+      createCache().write(file);
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      for (int length = 0; length < bytes.length; length++) {
+         Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+         assertRejected("truncated to " + length);
+      }
+   }
+
+   public void testCorruptedCacheIsRejected() throws IOException {
+      createCache().write(file);
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      for (int i = 0; i < bytes.length; i++) {
+         byte[] corrupted = bytes.clone();
+         corrupted[i] ^= 0x10;
+         Files.write(file.toPath(), corrupted);
+         assertRejected("byte " + i + " changed");
+      }
+   }
+
+   public void testOldVersionIsRejected() throws IOException {
+      createCache().write(file);
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      ByteBuffer.wrap(bytes).putInt(4, FileHashCache.VERSION - 1);
+      Files.write(file.toPath(), withChecksum(bytes));
+      String message = assertRejected("old version");
+      assertTrue(message, message.indexOf("version " + (FileHashCache.VERSION - 1)) >= 0);
+   }
+
+   public void testOtherFileIsRejected() throws IOException {
+      createCache().write(file);
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      ByteBuffer.wrap(bytes).putInt(0, 0x504b0304);
+      Files.write(file.toPath(), withChecksum(bytes));
+      assertRejected("wrong magic number");
+   }
+
+   /**
+    * Damage behind a valid checksum, as written by a broken writer, is rejected as well.
+    */
+   public void testMalformedContentIsRejected() throws IOException {
+      FileHashCache cache = new FileHashCache();
+      cache.put("/a.yang", new Fingerprint("0000000000000001", 0, 0), null, null, FileHashCache.Result.SUCCESS, 0);
+      cache.write(file);
+      byte[] original = Files.readAllBytes(file.toPath());
+      byte[] bytes = original.clone();
+      // header 12 bytes, entry count 4, prefix 2, path 2 + 7, hash 8, size, time,
+      // configuration and duration 1 each: then the result
+      int result = 12 + 4 + 2 + 2 + "/a.yang".length() + 8 + 4;
+      assertEquals(FileHashCache.Result.SUCCESS.ordinal(), bytes[result]);
+      bytes[result] = 7;
+      Files.write(file.toPath(), withChecksum(bytes));
+      assertRejected("unknown result");
+
+      // a duration which does not end within 64 bits
+      List<Byte> malformed = new ArrayList<Byte>();
+      for (int i = 0; i < original.length - 8; i++) {
+         malformed.add(original[i]);
+         if (i == result - 2) {
+            for (int j = 0; j < 10; j++) {
+               malformed.add((byte) 0xFF);
+            }
+         }
+      }
+      byte[] damaged = new byte[malformed.size() + 8];
+      for (int i = 0; i < malformed.size(); i++) {
+         damaged[i] = malformed.get(i);
+      }
+      Files.write(file.toPath(), withChecksum(damaged));
+      String message = assertRejected("malformed number");
+      assertTrue(message, message.startsWith("Malformed number"));
+
+      // more entries announced than stored
+      bytes = original.clone();
+      ByteBuffer.wrap(bytes).putInt(12, 2);
+      Files.write(file.toPath(), withChecksum(bytes));
+      assertRejected("missing entry");
+   }
+
+   /**
+    * @param bytes a cache file, the last 8 bytes are replaced by the checksum of the others
+    */
+   private static byte[] withChecksum(byte[] bytes) {
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length - 8);
+      ByteBuffer.wrap(bytes).putLong(bytes.length - 8, crc.getValue());
+      return bytes;
+   }
+
+   private String assertRejected(String what) {
+      try {
+         FileHashCache.read(file);
+         fail("Accepted a cache file with " + what);
+         return null;
+      } catch (IOException e) {
+         return e.getMessage();
+      }
+   }
+}
@@ -0,0 +1,110 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Hashing of files read in chunks, which must give the hash of the whole content, and the
+ * reuse of recorded fingerprints.
+ */
+public class FingerprintTest extends TestCase {
+
+   private File file;
+
+   protected void setUp() throws IOException {
+      file = File.createTempFile("fingerprint", ".yang");
+   }
+
+   protected void tearDown() {
+      file.delete();
+   }
+
+   private static byte[] bytes(int length) {
+      byte[] bytes = new byte[length];
+      new Random(length).nextBytes(bytes);
+      return bytes;
+   }
+
+   public void testKnownHashes() {
+      assertEquals("ef46db3751d8e999", XXHash64.toHex(XXHash64.hash(ByteBuffer.allocate(0), 0)));
+      assertEquals("44bc2cf5ad770999", XXHash64.hashHex("abc"));
+   }
+
+   /**
+    * Chunks of every length up to two stripes, so that stripes are split at every offset.
+    */
+   public void testStreamingHashOfChunks() {
+      byte[] bytes = bytes(1000);
+      for (int length : new int[] { 0, 1, 31, 32, 33, 100, 1000 }) {
+         long expected = XXHash64.hash(ByteBuffer.wrap(bytes, 0, length), 7);
+         for (int chunk = 1; chunk <= 65; chunk++) {
+            XXHash64.Streaming hash = new XXHash64.Streaming(7);
+            for (int start = 0; start < length; start += chunk) {
+               ByteBuffer buffer = ByteBuffer.wrap(bytes, start, Math.min(chunk, length - start));
+               hash.update(buffer);
+               assertEquals(start, buffer.position());
+            }
+            assertEquals(length + " bytes in chunks of " + chunk, expected, hash.digest());
+         }
+      }
+   }
+
+   /**
+    * Files smaller than the buffer, filling it exactly, and spanning several chunks.
+    */
+   public void testHashOfFiles() throws IOException {
+      for (int length : new int[] { 0, 5, 64 * 1024 - 1, 64 * 1024, 64 * 1024 + 1, 3 * 64 * 1024 + 17,
+               2 * 1024 * 1024 }) {
+         byte[] bytes = bytes(length);
+         Files.write(file.toPath(), bytes);
+         assertEquals(length + " bytes", XXHash64.toHex(XXHash64.hash(ByteBuffer.wrap(bytes), 0)),
+                  Fingerprint.hash(file.toPath()));
+      }
+   }
+
+   /**
+    * A large file is replaced right after its content was hashed for the comparison, no
+    * mapping keeps it open.
+    */
+   public void testHashedFileCanBeReplaced() throws IOException {
+      byte[] bytes = bytes(2 * 1024 * 1024);
+      Files.write(file.toPath(), bytes);
+      String hash = Fingerprint.hash(file.toPath());
+      bytes[bytes.length / 2] ^= 1;
+      File other = File.createTempFile("fingerprint", ".yang", file.getParentFile());
+      Files.write(other.toPath(), bytes);
+      assertTrue(AtomicFile.commitIfChanged(other, file));
+      assertFalse(other.exists());
+      assertFalse(hash.equals(Fingerprint.hash(file.toPath())));
+   }
+
+   public void testUnchangedFileIsNotRead() throws IOException {
+      Files.write(file.toPath(), bytes(100));
+      assertTrue(file.setLastModified(System.currentTimeMillis() - 10000));
+      Fingerprint fingerprint = Fingerprint.of(file, null);
+      assertFalse(fingerprint.lastModified == Fingerprint.UNKNOWN);
+      // a fingerprint with another hash but the same size and time is taken as is
+      Fingerprint recorded = new Fingerprint("0000000000000000", fingerprint.size, fingerprint.lastModified);
+      assertSame(recorded, Fingerprint.of(file, recorded));
+
+      // a file modified just now is hashed, but its time is not trusted
+      Files.write(file.toPath(), bytes(101));
+      fingerprint = Fingerprint.of(file, recorded);
+      assertEquals(Fingerprint.hash(file.toPath()), fingerprint.hash);
+      assertEquals(Fingerprint.UNKNOWN, fingerprint.lastModified);
+   }
+}
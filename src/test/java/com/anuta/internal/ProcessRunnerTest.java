@@ -0,0 +1,79 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * Output decoding and the timeout of {@link ProcessRunner}, with {@link StubPyangWorker} as
+ * the tool. The stub prints its greeting, then waits for requests on stdin until it is closed.
+ */
+public class ProcessRunnerTest extends TestCase {
+
+   private static final String TEXT = "\u00e9\u20ac";
+
+   /** the text as an argument of the stub */
+   private static final String ESCAPED_TEXT = "\\u00e9\\u20ac";
+
+   public void testCaptureUsesEncoding() throws IOException {
+      ToolResult result = new ProcessRunner(StubPyangWorker.command("--greeting", ESCAPED_TEXT), null, null, 0,
+               "UTF-8").capture();
+      assertTrue(result.isSuccess());
+      // the greeting frame: its length, then the UTF-8 bytes
+      assertTrue(result.getOutput(), result.getOutput().endsWith(TEXT));
+
+      result = new ProcessRunner(StubPyangWorker.command("--greeting", ESCAPED_TEXT), null, null, 0,
+               "ISO-8859-1").capture();
+      assertTrue(result.getOutput(), result.getOutput().endsWith("\u00c3\u00a9\u00e2\u0082\u00ac"));
+   }
+
+   public void testCaptureWithinTimeout() throws IOException {
+      ToolResult result = new ProcessRunner(StubPyangWorker.command(), null, null, 60000, "UTF-8").capture();
+      assertTrue(result.isSuccess());
+      assertTrue(result.getOutput(), result.getOutput().endsWith(PyangWorker.PROTOCOL));
+   }
+
+   public void testReaperExpiresRunningProcess() throws Exception {
+      Process process = new ProcessBuilder(StubPyangWorker.command()).start();
+      ProcessRunner.Reaper reaper = ProcessRunner.schedule(process, 100);
+      process.waitFor();
+      assertTrue(reaper.isExpired());
+   }
+
+   /**
+    * A timeout expiring after the process exited, before the runner cancels the reaper.
+    */
+   public void testReaperDoesNotExpireExitedProcess() throws Exception {
+      Process process = new ProcessBuilder(StubPyangWorker.command()).start();
+      process.getOutputStream().close();
+      process.waitFor();
+      ProcessRunner.Reaper reaper = ProcessRunner.schedule(process, 1);
+      Thread.sleep(300);
+      assertFalse(reaper.isExpired());
+      reaper.cancel();
+      assertFalse(reaper.isExpired());
+   }
+
+   public void testCancelledReaper() throws Exception {
+      Process process = new ProcessBuilder(StubPyangWorker.command()).start();
+      try {
+         ProcessRunner.Reaper reaper = ProcessRunner.schedule(process, 200);
+         reaper.cancel();
+         Thread.sleep(400);
+         assertFalse(reaper.isExpired());
+         assertTrue(process.isAlive());
+      } finally {
+         process.destroy();
+         process.waitFor();
+      }
+   }
+}
@@ -0,0 +1,139 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Replacement of dead workers and release of their process permits, with {@link StubPyangWorker}.
+ */
+public class PyangWorkerPoolTest extends TestCase {
+
+   private static final File CWD = new File(System.getProperty("java.io.tmpdir"));
+
+   private ProcessLimiter limiter;
+   private PyangWorkerPool pool;
+
+   protected void setUp() {
+      limiter = ProcessLimiter.get(1);
+   }
+
+   protected void tearDown() {
+      if (pool != null) {
+         pool.close();
+      }
+   }
+
+   private PyangWorkerPool createPool(int size) {
+      return new PyangWorkerPool(StubPyangWorker.command(), null, size, limiter, null, new SystemStreamLog());
+   }
+
+   public void testReplacesDeadWorker() throws Exception {
+      pool = createPool(1);
+      pool.start();
+      assertEquals("first", pool.execute(Arrays.asList("echo", "first"), CWD, 0).getOutput());
+      // a dead worker is given back as broken, its permit lets the next worker start
+      for (int i = 0; i < 3; i++) {
+         try {
+            pool.execute(Arrays.asList("exit"), CWD, 0);
+            fail("a dead worker answered");
+         } catch (IOException e) {
+            // expected
+         }
+         assertEquals("next " + i, pool.execute(Arrays.asList("echo", "next", "" + i), CWD, 0).getOutput());
+      }
+      pool.close();
+      pool = null;
+      assertAllPermitsFree();
+   }
+
+   public void testReplacesTimedOutWorker() throws Exception {
+      pool = createPool(1);
+      try {
+         pool.execute(Arrays.asList("sleep", "60000"), CWD, 200);
+         fail("request did not time out");
+      } catch (ToolTimeoutException e) {
+         // expected
+      }
+      assertEquals("after", pool.execute(Arrays.asList("echo", "after"), CWD, 0).getOutput());
+   }
+
+   public void testConcurrentRequests() throws Exception {
+      pool = createPool(3);
+      final List<String> outputs = new ArrayList<String>();
+      final List<Throwable> failures = new ArrayList<Throwable>();
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < 6; i++) {
+         final String word = "t" + i;
+         Thread thread = new Thread() {
+            public void run() {
+               try {
+                  String output = pool.execute(Arrays.asList("echo", word), CWD, 0).getOutput();
+                  synchronized (outputs) {
+                     outputs.add(output);
+                  }
+               } catch (Throwable e) {
+                  synchronized (failures) {
+                     failures.add(e);
+                  }
+               }
+            }
+         };
+         thread.start();
+         threads.add(thread);
+      }
+      for (Thread thread : threads) {
+         thread.join(60000);
+      }
+      assertEquals(failures.toString(), 0, failures.size());
+      assertEquals(6, outputs.size());
+      for (int i = 0; i < 6; i++) {
+         assertTrue(outputs.contains("t" + i));
+      }
+      pool.close();
+      pool = null;
+      assertAllPermitsFree();
+   }
+
+   public void testBrokenCommand() throws Exception {
+      pool = new PyangWorkerPool(Arrays.asList(new File(CWD, "no-such-worker").getPath()), null, 1, limiter, null,
+               new SystemStreamLog());
+      try {
+         pool.start();
+         fail("the worker started");
+      } catch (IOException e) {
+         // expected
+      }
+      assertAllPermitsFree();
+   }
+
+   private void assertAllPermitsFree() throws IOException {
+      List<ProcessLimiter.Permit> permits = new ArrayList<ProcessLimiter.Permit>();
+      try {
+         for (int i = 0, n = limiter.getLimit(); i < n; i++) {
+            ProcessLimiter.Permit permit = limiter.tryAcquire(null, 5, TimeUnit.SECONDS);
+            assertNotNull("permit " + i + " of " + n + " was not released", permit);
+            permits.add(permit);
+         }
+      } finally {
+         for (ProcessLimiter.Permit permit : permits) {
+            permit.release();
+         }
+      }
+   }
+}
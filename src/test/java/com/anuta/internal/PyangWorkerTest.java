@@ -0,0 +1,125 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Framing, large outputs, timeouts and dead workers, with {@link StubPyangWorker}.
+ */
+public class PyangWorkerTest extends TestCase {
+
+   private static final File CWD = new File(System.getProperty("java.io.tmpdir"));
+
+   private PyangWorker worker;
+
+   protected void setUp() throws Exception {
+      worker = new PyangWorker(StubPyangWorker.command(), null);
+   }
+
+   protected void tearDown() {
+      worker.destroy();
+   }
+
+   public void testFraming() throws IOException {
+      ToolResult result = worker.execute(Arrays.asList("echo", "a b", "", "\u00fcml\u00e4ut \u20ac"), CWD, 0);
+      assertEquals(0, result.getExitCode());
+      assertEquals("a b  \u00fcml\u00e4ut \u20ac", result.getOutput());
+      assertEquals(CWD.getPath(), result.getError());
+
+      // the worker keeps serving requests
+      for (int i = 0; i < 20; i++) {
+         assertEquals("request " + i, worker.execute(Arrays.asList("echo", "request", "" + i), CWD, 0).getOutput());
+      }
+   }
+
+   public void testEmptyRequest() throws IOException {
+      ToolResult result = worker.execute(Arrays.<String>asList(), CWD, 0);
+      assertEquals(2, result.getExitCode());
+      assertEquals("", result.getOutput());
+   }
+
+   public void testFailure() throws IOException {
+      ToolResult result = worker.execute(Arrays.asList("fail", "1", "m.yang:3: error: bad"), CWD, 0);
+      assertFalse(result.isSuccess());
+      assertEquals(1, result.getExitCode());
+      assertEquals("m.yang:3: error: bad", result.getError());
+      assertTrue(worker.execute(Arrays.asList("echo"), CWD, 0).isSuccess());
+   }
+
+   public void testLargeOutput() throws IOException {
+      // far beyond the pipe buffer, and not a multiple of the multi byte pattern
+      int count = 5 * 1024 * 1024 + 7;
+      String output = worker.execute(Arrays.asList("large", "" + count), CWD, 0).getOutput();
+      assertEquals(count, output.length());
+      String pattern = StubPyangWorker.LARGE_PATTERN;
+      assertTrue(output.startsWith(pattern + pattern));
+      int last = output.length() - output.length() % pattern.length();
+      assertEquals(pattern.substring(0, count - last), output.substring(last));
+      assertEquals("after", worker.execute(Arrays.asList("echo", "after"), CWD, 0).getOutput());
+   }
+
+   public void testTimeout() throws Exception {
+      assertTrue(worker.execute(Arrays.asList("sleep", "10"), CWD, 5000).isSuccess());
+      long start = System.currentTimeMillis();
+      try {
+         worker.execute(Arrays.asList("sleep", "60000"), CWD, 300);
+         fail("request did not time out");
+      } catch (ToolTimeoutException e) {
+         assertTrue(e.getMessage(), e.getMessage().contains("timed out after 300ms"));
+      }
+      assertTrue(System.currentTimeMillis() - start < 30000);
+      assertExits(worker);
+   }
+
+   public void testWorkerExit() throws Exception {
+      try {
+         worker.execute(Arrays.asList("exit"), CWD, 0);
+         fail("a dead worker answered");
+      } catch (ToolTimeoutException e) {
+         fail("a dead worker is not a timeout");
+      } catch (IOException e) {
+         // expected
+      }
+      assertExits(worker);
+   }
+
+   public void testUnexpectedGreeting() {
+      List<String> command = StubPyangWorker.command("--greeting", "pyang-worker 0");
+      try {
+         new PyangWorker(command, null);
+         fail("the greeting was accepted");
+      } catch (IOException e) {
+         assertTrue(e.getMessage(), e.getMessage().contains("pyang-worker 0"));
+      }
+   }
+
+   public void testCommandExitsBeforeGreeting() {
+      File java = new File(System.getProperty("java.home"), "bin/java");
+      try {
+         new PyangWorker(Arrays.asList(java.getPath(), "-version"), null);
+         fail("the worker was ready");
+      } catch (IOException e) {
+         assertTrue(e.getMessage(), e.getMessage().contains("exited before it was ready"));
+      }
+   }
+
+   private static void assertExits(PyangWorker worker) throws InterruptedException {
+      for (int i = 0; i < 200 && worker.isAlive(); i++) {
+         Thread.sleep(50);
+      }
+      assertFalse("the worker is still running", worker.isAlive());
+   }
+}
@@ -0,0 +1,145 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A pyang worker speaking the protocol of pyang_worker.py without python or pyang, for the
+ * tests of {@link PyangWorker} and {@link PyangWorkerPool}. The first argument of a request
+ * is the command:
+ * <ul>
+ * <li><code>echo arg...</code>: prints the arguments separated by spaces, and the working
+ * directory to stderr</li>
+ * <li><code>fail code message</code>: exits the request with the code and the message on stderr</li>
+ * <li><code>large count</code>: prints count characters, some of them multi byte in UTF-8</li>
+ * <li><code>sleep millis</code>: answers after the given time</li>
+ * <li><code>exit</code>: the worker exits without answering</li>
+ * </ul>
+ * <code>--greeting text</code> on the command line replaces the greeting. Its
+ * <code>\\uXXXX</code> escapes are decoded, as arguments only pass through in the
+ * platform encoding.
+ */
+public class StubPyangWorker {
+
+   static final String LARGE_PATTERN = "abcdefghij\u00e9\u20ac\n";
+
+   public static void main(String[] args) throws IOException, InterruptedException {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+      String greeting = args.length == 2 && "--greeting".equals(args[0]) ? unescape(args[1]) : PyangWorker.PROTOCOL;
+      writeFrame(out, greeting);
+      out.flush();
+      while (true) {
+         int argc;
+         try {
+            argc = in.readInt();
+         } catch (EOFException e) {
+            return;
+         }
+         String cwd = readFrame(in);
+         List<String> arguments = new ArrayList<String>();
+         for (int i = 0; i < argc; i++) {
+            arguments.add(readFrame(in));
+         }
+         String command = arguments.isEmpty() ? "" : arguments.get(0);
+         List<String> rest = arguments.subList(Math.min(1, arguments.size()), arguments.size());
+         int code = 0;
+         String output = "";
+         String error = "";
+         if ("echo".equals(command)) {
+            output = join(rest);
+            error = new File(cwd).getPath();
+         } else if ("fail".equals(command)) {
+            code = Integer.parseInt(rest.get(0));
+            error = rest.get(1);
+         } else if ("large".equals(command)) {
+            int count = Integer.parseInt(rest.get(0));
+            StringBuilder builder = new StringBuilder(count);
+            while (builder.length() < count) {
+               builder.append(LARGE_PATTERN);
+            }
+            builder.setLength(count);
+            output = builder.toString();
+         } else if ("sleep".equals(command)) {
+            Thread.sleep(Long.parseLong(rest.get(0)));
+         } else if ("exit".equals(command)) {
+            System.exit(3);
+         } else {
+            code = 2;
+            error = "Unknown command " + arguments;
+         }
+         out.writeInt(code);
+         writeFrame(out, output);
+         writeFrame(out, error);
+         out.flush();
+      }
+   }
+
+   /**
+    * @param arguments of the stub worker, after the class name
+    * @return the command starting the stub worker with the java running the tests
+    */
+   static List<String> command(String... arguments) {
+      List<String> command = new ArrayList<String>();
+      command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(StubPyangWorker.class.getName());
+      command.addAll(Arrays.asList(arguments));
+      return command;
+   }
+
+   private static String unescape(String text) {
+      StringBuilder builder = new StringBuilder(text.length());
+      for (int i = 0; i < text.length(); i++) {
+         if (text.startsWith("\\u", i) && i + 6 <= text.length()) {
+            builder.append((char) Integer.parseInt(text.substring(i + 2, i + 6), 16));
+            i += 5;
+         } else {
+            builder.append(text.charAt(i));
+         }
+      }
+      return builder.toString();
+   }
+
+   private static String join(List<String> words) {
+      StringBuilder builder = new StringBuilder();
+      for (String word : words) {
+         if (builder.length() > 0) {
+            builder.append(' ');
+         }
+         builder.append(word);
+      }
+      return builder.toString();
+   }
+
+   private static void writeFrame(DataOutputStream out, String text) throws IOException {
+      byte[] bytes = text.getBytes(PyangWorker.CHARSET);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readFrame(DataInputStream in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new String(bytes, PyangWorker.CHARSET);
+   }
+}
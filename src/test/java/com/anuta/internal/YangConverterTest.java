@@ -0,0 +1,134 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Incremental conversions with the java backend: a file whose imported module is deleted
+ * or found elsewhere is converted again, although its own content did not change.
+ */
+public class YangConverterTest extends TestCase {
+
+   private static final String A = "module a {\n  namespace \"urn:a\";\n  prefix a;\n"
+            + "  import b { prefix b; }\n  b:note \"hello\";\n  leaf x { type string; }\n}\n";
+   private static final String B = "module b {\n  namespace \"urn:b\";\n  prefix b;\n"
+            + "  extension note { argument text; }\n}\n";
+
+   private File root;
+   private File source;
+
+   protected void setUp() throws IOException {
+      root = File.createTempFile("yang-converter", "");
+      assertTrue(root.delete() && root.mkdir());
+      source = new File(root, "src");
+      assertTrue(source.mkdir());
+      FileUtils.fileWrite(new File(source, "a.yang").getPath(), A);
+   }
+
+   protected void tearDown() throws IOException {
+      FileUtils.deleteDirectory(root);
+   }
+
+   /**
+    * Collects the summary lines of an execution.
+    */
+   private static class CollectingLog extends SystemStreamLog {
+      final List<String> lines = new ArrayList<String>();
+
+      public void info(CharSequence content) {
+         lines.add(content.toString());
+      }
+
+      public void debug(CharSequence content) {
+      }
+
+      int count(String label) {
+         for (String line : lines) {
+            if (line.startsWith(label)) {
+               return Integer.parseInt(line.substring(line.indexOf(':') + 1).trim().split(" ")[0]);
+            }
+         }
+         throw new AssertionError("no " + label + " in " + lines);
+      }
+   }
+
+   private static void set(Object mojo, String name, Object value) throws Exception {
+      for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+         try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(mojo, value);
+            return;
+         } catch (NoSuchFieldException e) {
+            // declared by a superclass
+         }
+      }
+      fail("no field " + name);
+   }
+
+   private CollectingLog convert(File modulePath) throws Exception {
+      YangConverter converter = new YangConverter();
+      set(converter, "basedir", root);
+      set(converter, "sourceDirectory", source);
+      set(converter, "targetDirectory", new File(root, "target"));
+      set(converter, "encoding", "UTF-8");
+      set(converter, "backend", "java");
+      set(converter, "failOnError", Boolean.FALSE);
+      if (modulePath != null) {
+         set(converter, "yangMODPath", modulePath.getPath());
+      }
+      CollectingLog log = new CollectingLog();
+      converter.setLog(log);
+      converter.execute();
+      return log;
+   }
+
+   public void testDeletedImportedModule() throws Exception {
+      File b = new File(source, "b.yang");
+      FileUtils.fileWrite(b.getPath(), B);
+      assertEquals(2, convert(null).count("Successful"));
+      assertEquals(2, convert(null).count("Skipped"));
+
+      assertTrue(b.delete());
+      CollectingLog log = convert(null);
+      assertEquals(0, log.count("Skipped"));
+      assertEquals(1, log.count("Failed "));
+   }
+
+   public void testImportedModuleOnModulePath() throws Exception {
+      File first = new File(root, "first");
+      File second = new File(root, "second");
+      assertTrue(first.mkdir() && second.mkdir());
+      File b = new File(first, "b.yang");
+      FileUtils.fileWrite(b.getPath(), B);
+      assertEquals(1, convert(first).count("Successful"));
+      assertEquals(1, convert(first).count("Skipped"));
+
+      // the same content found in another directory
+      assertTrue(b.renameTo(new File(second, "b.yang")));
+      CollectingLog log = convert(second);
+      assertEquals(0, log.count("Skipped"));
+      assertEquals(1, log.count("Successful"));
+
+      assertTrue(new File(second, "b.yang").delete());
+      log = convert(second);
+      assertEquals(0, log.count("Skipped"));
+      assertEquals(1, log.count("Failed "));
+   }
+}
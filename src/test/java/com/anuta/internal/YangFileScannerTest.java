@@ -0,0 +1,144 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * The scanner finds the same yang files as the plexus DirectoryScanner it replaces, on a
+ * sample tree, also where it prunes directories.
+ */
+public class YangFileScannerTest extends TestCase {
+
+   private static final String[] FILES = { "a.yang", "notes.txt", "a.yang.orig", "models/x.yang",
+            "models/y.yang", "models/sub/z.yang", "models/sub/deep/w.yang", "models/sub/deep/readme.txt",
+            "Models/cap.yang", "test/t.yang", "test/data/td.yang", "vendor/cisco/c.yang",
+            "vendor/juniper/j.yang", "vendor/juniper/sub/js.yang", "CVS/cvs.yang", ".svn/svn.yang",
+            "models/.git/g.yang", "empty/.keep" };
+
+   private File root;
+
+   protected void setUp() throws IOException {
+      root = File.createTempFile("yang-scanner", "");
+      assertTrue(root.delete() && root.mkdir());
+      for (String name : FILES) {
+         File file = new File(root, name.replace('/', File.separatorChar));
+         file.getParentFile().mkdirs();
+         FileUtils.fileWrite(file.getPath(), "module m { }\n");
+      }
+   }
+
+   protected void tearDown() throws IOException {
+      FileUtils.deleteDirectory(root);
+   }
+
+   private Set<String> scan(String[] includes, String[] excludes) throws IOException {
+      Map<File, BasicFileAttributes> files = new YangFileScanner(includes, excludes).scan(root);
+      Set<String> paths = new TreeSet<String>();
+      for (File file : files.keySet()) {
+         assertTrue(file.toString(), files.get(file).isRegularFile());
+         paths.add(root.toPath().relativize(file.toPath()).toString());
+      }
+      return paths;
+   }
+
+   private Set<String> scanWithPlexus(String[] includes, String[] excludes) {
+      DirectoryScanner scanner = new DirectoryScanner();
+      scanner.setBasedir(root);
+      scanner.setIncludes(includes);
+      scanner.setExcludes(excludes);
+      scanner.addDefaultExcludes();
+      scanner.scan();
+      Set<String> paths = new TreeSet<String>();
+      for (String path : scanner.getIncludedFiles()) {
+         if (path.endsWith(".yang")) {
+            paths.add(path);
+         }
+      }
+      return paths;
+   }
+
+   private void assertSameAsPlexus(String[] includes, String[] excludes) throws IOException {
+      String patterns = Arrays.toString(includes) + " excluding " + Arrays.toString(excludes);
+      Set<String> expected = scanWithPlexus(includes, excludes);
+      assertFalse(patterns + " matches nothing", expected.isEmpty());
+      assertEquals(patterns, expected, scan(includes, excludes));
+   }
+
+   private void assertSameAsPlexus(String include, String exclude) throws IOException {
+      assertSameAsPlexus(new String[] { include }, exclude == null ? new String[0] : new String[] { exclude });
+   }
+
+   public void testDefaultPatterns() throws IOException {
+      assertSameAsPlexus("**/*.yang", null);
+      assertEquals(11, scan(new String[] { "**/*.yang" }, new String[0]).size());
+   }
+
+   public void testIncludes() throws IOException {
+      assertSameAsPlexus("*.yang", null);
+      assertSameAsPlexus("models/*.yang", null);
+      assertSameAsPlexus("?odels/**/*.yang", null);
+      assertSameAsPlexus("vendor/*/*.yang", null);
+      assertSameAsPlexus("**/deep/*", null);
+      assertSameAsPlexus(new String[] { "models/*.yang", "vendor/**" }, new String[0]);
+   }
+
+   public void testAnyDirectoriesCollapse() throws IOException {
+      assertSameAsPlexus("**/**/*.yang", null);
+      assertSameAsPlexus("models/**/**/*.yang", null);
+      assertSameAsPlexus("**/sub/**/**/*.yang", null);
+   }
+
+   public void testTrailingSeparator() throws IOException {
+      assertSameAsPlexus("models/", null);
+      assertSameAsPlexus("**/*.yang", "test/");
+      assertSameAsPlexus("**/*.yang", "vendor/*/");
+      assertSameAsPlexus("vendor/", "**/sub/");
+   }
+
+   public void testRegex() throws IOException {
+      String separator = File.separator.equals("\\") ? "\\\\" : File.separator;
+      assertSameAsPlexus("**/*.yang", "%regex[.*sub.*]");
+      assertSameAsPlexus("%regex[vendor" + separator + "[cj].*\\.yang]", null);
+      assertSameAsPlexus("%regex[models" + separator + "[^" + separator + "]*\\.yang]", "%regex[.*x\\.yang]");
+   }
+
+   /**
+    * Excludes of whole directories, which the scanner does not enter, and includes which
+    * cannot match below most directories.
+    */
+   public void testPruning() throws IOException {
+      assertSameAsPlexus("**/*.yang", "**/test/**");
+      assertSameAsPlexus("**/*.yang", "models/sub/**");
+      assertSameAsPlexus("models/sub/deep/*.yang", null);
+      assertSameAsPlexus("vendor/juniper/sub/*.yang", "vendor/cisco/**");
+      assertSameAsPlexus(new String[] { "test/*.yang", "**/deep/**" }, new String[] { "models/*" });
+   }
+
+   public void testScanOrderOfDirectories() throws IOException {
+      File models = new File(root, "models");
+      File vendor = new File(root, "vendor");
+      Map<File, BasicFileAttributes> files = new YangFileScanner(new String[] { "**/*.yang" }, new String[0])
+               .scan(Arrays.asList(vendor, models), 2);
+      assertEquals(7, files.size());
+      File first = files.keySet().iterator().next();
+      assertTrue(first.toString(), first.getPath().startsWith(vendor.getPath() + File.separator));
+   }
+}
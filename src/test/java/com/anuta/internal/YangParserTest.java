@@ -0,0 +1,89 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.IOException;
+import java.io.StringReader;
+import junit.framework.TestCase;
+
+/**
+ * Statements, arguments and <code>+</code> concatenation.
+ */
+public class YangParserTest extends TestCase {
+
+   private static YangStatement parse(String text) throws IOException {
+      return new YangParser(new StringReader(text), "test.yang").parseModule();
+   }
+
+   public void testStatements() throws IOException {
+      YangStatement module = parse("module m {\n  namespace \"urn:m\";\n  prefix m;\n  container c { leaf l { type string; } }\n}");
+      assertEquals("module", module.getKeyword());
+      assertEquals("m", module.getArgument());
+      assertEquals("urn:m", module.findArgument("namespace"));
+      assertEquals("m", module.findArgument("prefix"));
+      YangStatement leaf = module.findFirst("container").findFirst("leaf");
+      assertEquals("l", leaf.getArgument());
+      assertEquals("string", leaf.findArgument("type"));
+      assertEquals(4, leaf.getLine());
+   }
+
+   public void testConcatenation() throws IOException {
+      YangStatement module = parse("module m { description \"a\" + 'b\\n' +\n  \"c\"; }");
+      assertEquals("ab\\nc", module.findArgument("description"));
+   }
+
+   public void testConcatenationNeedsQuotedStrings() {
+      assertError("module m { description \"a\" + b; }", "quoted string expected after '+', found 'b'");
+   }
+
+   public void testPlusInUnquotedArgument() throws IOException {
+      assertEquals("a+b", parse("module m { prefix a+b; }").findArgument("prefix"));
+   }
+
+   public void testStatementWithoutArgument() throws IOException {
+      YangStatement input = parse("module m { rpc r { input { leaf x { type int8; } } } }").findFirst("rpc")
+               .findFirst("input");
+      assertNull(input.getArgument());
+      assertEquals(1, input.getSubstatements().size());
+   }
+
+   public void testExtensionKeyword() throws IOException {
+      YangStatement statement = parse("module m { ext:doc \"x\"; }").getSubstatements().get(0);
+      assertTrue(statement.isExtension());
+      assertEquals("ext", statement.getPrefix());
+      assertEquals("doc", statement.getIdentifier());
+      assertEquals("x", statement.getArgument());
+   }
+
+   public void testCommentsAreSkipped() throws IOException {
+      YangStatement module = parse("// head\nmodule m { /* a */ prefix p;// b\n }");
+      assertEquals("p", module.findArgument("prefix"));
+   }
+
+   public void testErrors() {
+      assertError("module m { prefix p }", "expected ';' or '{' after 'prefix', found '}'");
+      assertError("module m { prefix p;", "missing '}' for 'module'");
+      assertError("container c { }", "expected module or submodule, found 'container'");
+      assertError("module m { } module n { }", "unexpected 'module' after end of module");
+      assertError("module m { \"x\"; }", "keyword expected, found 'x'");
+   }
+
+   private static void assertError(String text, String reason) {
+      try {
+         parse(text);
+         fail("no error in " + text);
+      } catch (YangParseException e) {
+         assertEquals(reason, e.getReason());
+      } catch (IOException e) {
+         fail(e.toString());
+      }
+   }
+}
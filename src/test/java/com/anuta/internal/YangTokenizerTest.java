@@ -0,0 +1,141 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import com.anuta.internal.YangTokenizer.Token;
+import com.anuta.internal.YangTokenizer.TokenType;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tokens of RFC 7950 section 6: unquoted strings, quoting, comments and positions.
+ */
+public class YangTokenizerTest extends TestCase {
+
+   private static List<Token> tokenize(String text) throws IOException {
+      YangTokenizer tokenizer = new YangTokenizer(new StringReader(text), "test.yang");
+      List<Token> tokens = new ArrayList<Token>();
+      Token token;
+      while ((token = tokenizer.next()).type != TokenType.EOF) {
+         tokens.add(token);
+      }
+      return tokens;
+   }
+
+   private static String describe(String text) throws IOException {
+      StringBuilder builder = new StringBuilder();
+      for (Token token : tokenize(text)) {
+         if (builder.length() > 0) {
+            builder.append(' ');
+         }
+         builder.append(token.type).append('[').append(token.text).append(']');
+      }
+      return builder.toString();
+   }
+
+   public void testSeparators() throws IOException {
+      assertEquals("STRING[leaf] STRING[a] LEFT_BRACE[{] STRING[type] STRING[string] SEMICOLON[;] RIGHT_BRACE[}]",
+               describe("leaf a{type string;}"));
+   }
+
+   public void testSlashInUnquotedString() throws IOException {
+      assertEquals("STRING[path] STRING[/a/b] SEMICOLON[;]", describe("path /a/b;"));
+      assertEquals("STRING[a/] STRING[/]", describe("a/ /"));
+   }
+
+   public void testLineCommentEndsUnquotedString() throws IOException {
+      assertEquals("STRING[a] COMMENT[// c] STRING[b]", describe("a// c\nb"));
+      assertEquals("STRING[/a/b] COMMENT[//c]", describe("/a/b//c"));
+   }
+
+   public void testBlockCommentEndsUnquotedString() throws IOException {
+      assertEquals("STRING[a] COMMENT[/* c */] STRING[b]", describe("a/* c */b"));
+      assertEquals("STRING[a/] COMMENT[/*x*/]", describe("a/ /*x*/"));
+      assertEquals("STRING[a] COMMENT[//**/]", describe("a//**/"));
+   }
+
+   public void testSingleQuotedKeepsEverything() throws IOException {
+      assertEquals("QUOTED[a\\n \"b\" // c]", describe("'a\\n \"b\" // c'"));
+   }
+
+   public void testDoubleQuotedEscapes() throws IOException {
+      assertEquals("QUOTED[a\nb\tc\"d\\e\\x]", describe("\"a\\nb\\tc\\\"d\\\\e\\x\""));
+   }
+
+   public void testDoubleQuotedStripsIndentation() throws IOException {
+      // the quote is at column 15
+      String text = "  description \"first  \n"
+               + "               second\n"
+               + "                 third\n"
+               + "      short\";";
+      Token token = tokenize(text).get(1);
+      assertEquals(TokenType.QUOTED, token.type);
+      // up to the column after the opening quote, and trailing whitespace before line breaks
+      assertEquals("first\nsecond\n  third\nshort", token.text);
+   }
+
+   public void testDoubleQuotedKeepsEscapedTrailingWhitespace() throws IOException {
+      assertEquals("a\t\nb", tokenize("\"a\\t  \n b\"").get(0).text);
+   }
+
+   public void testDoubleQuotedTabIndentation() throws IOException {
+      // the quote is at column 9, a tab reaches column 9 and is stripped
+      assertEquals("x\ny", tokenize("\t\"x\n\t y\"").get(0).text);
+      // a tab reaching past the indentation is kept as spaces for the columns past it
+      assertEquals("x\n      y", tokenize(" \"x\n\ty\"").get(0).text);
+   }
+
+   public void testDoubleQuotedMixedIndentation() throws IOException {
+      // the quote is at column 5: 3 of the 8 columns of the tab are past it
+      assertEquals("x\n     y", tokenize("    \"x\n\t  y\"").get(0).text);
+      // the quote is at column 9: spaces and a tab up to column 8, then a space
+      assertEquals("x\ny\nz", tokenize(" \t\"x\n  \ty\n\t z\"").get(0).text);
+      // the quote is at column 3: the whitespace after the first tab is kept as it is
+      assertEquals("x\n     \t y", tokenize("  \"x\n \t\t y\"").get(0).text);
+      // a tab past a blank continuation line is trailing whitespace
+      assertEquals("x\n\ny", tokenize("  \"x\n\t\n   y\"").get(0).text);
+   }
+
+   public void testPositions() throws IOException {
+      List<Token> tokens = tokenize("module m {\n\tprefix\tp;\n}");
+      Token prefix = tokens.get(3);
+      assertEquals("prefix", prefix.text);
+      assertEquals(2, prefix.line);
+      assertEquals(9, prefix.column);
+      assertEquals(17, tokens.get(4).column);
+   }
+
+   public void testQuoteInUnquotedString() {
+      assertError("ab\"c\"", 1, 3, "quote character in unquoted string");
+   }
+
+   public void testUnterminated() {
+      assertError("a \"b\n c", 1, 3, "unterminated string");
+      assertError("'b", 1, 1, "unterminated string");
+      assertError("a\n /* c", 2, 2, "unterminated comment");
+   }
+
+   private static void assertError(String text, int line, int column, String reason) {
+      try {
+         tokenize(text);
+         fail("no error in " + text);
+      } catch (YangParseException e) {
+         assertEquals(reason, e.getReason());
+         assertEquals(line, e.getLine());
+         assertEquals(column, e.getColumn());
+      } catch (IOException e) {
+         fail(e.toString());
+      }
+   }
+}
@@ -0,0 +1,130 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Yang output of the java format backend, which must read back to the same statements.
+ */
+public class YangWriterTest extends TestCase {
+
+   private static YangStatement parse(String text, boolean keepComments) throws IOException {
+      return new YangParser(new StringReader(text), "test.yang", keepComments).parseModule();
+   }
+
+   private static String format(String text, int indent, int lineLength, boolean keepComments) throws IOException {
+      StringWriter out = new StringWriter();
+      new YangWriter(indent, lineLength).write(parse(text, keepComments), out);
+      return out.toString();
+   }
+
+   public void testLayout() throws IOException {
+      String text = "module m { yang-version 1.1; namespace \"urn:m\"; prefix m; import b { prefix b; }"
+               + " organization \"o\"; description \"d\"; revision 2020-01-01; revision 2019-01-01;"
+               + " typedef t { type string; } container c { leaf l { type t; } } leaf x { type int8; } }";
+      assertEquals("module m {\n"
+               + "  yang-version 1.1;\n"
+               + "  namespace \"urn:m\";\n"
+               + "  prefix m;\n"
+               + "\n"
+               + "  import b {\n"
+               + "    prefix b;\n"
+               + "  }\n"
+               + "\n"
+               + "  organization\n"
+               + "    \"o\";\n"
+               + "  description\n"
+               + "    \"d\";\n"
+               + "\n"
+               + "  revision 2020-01-01;\n"
+               + "\n"
+               + "  revision 2019-01-01;\n"
+               + "\n"
+               + "  typedef t {\n"
+               + "    type string;\n"
+               + "  }\n"
+               + "\n"
+               + "  container c {\n"
+               + "    leaf l {\n"
+               + "      type t;\n"
+               + "    }\n"
+               + "  }\n"
+               + "\n"
+               + "  leaf x {\n"
+               + "    type int8;\n"
+               + "  }\n"
+               + "}\n", format(text, 2, 80, false));
+   }
+
+   public void testIndentAndLineLength() throws IOException {
+      String formatted = format("module m { container c { must \"a-rather-long-condition\"; } }", 4, 30, false);
+      assertEquals("module m {\n    container c {\n        must\n            \"a-rather-long-condition\";\n"
+               + "    }\n}\n", formatted);
+   }
+
+   public void testMultilineText() throws IOException {
+      // the quote is at column 24: the input lines lose all their indentation, and are
+      // aligned after the quote of the output
+      String formatted = format("module m { description \"one\n   two\n\n"
+               + "                           three\"; }", 2, 80, false);
+      assertEquals("module m {\n  description\n    \"one\n     two\n\n        three\";\n}\n", formatted);
+   }
+
+   public void testQuoting() throws IOException {
+      String formatted = format("module m { prefix m; container c { presence 'say \"hi\"'; }"
+               + " leaf l { type string; default 'a\\b'; } }", 2, 80, false);
+      assertTrue(formatted, formatted.contains("    presence 'say \"hi\"';\n"));
+      assertTrue(formatted, formatted.contains("    default 'a\\b';\n"));
+   }
+
+   public void testCommentSequencesAreQuoted() throws IOException {
+      assertTrue(YangWriter.needsQuotes("a//b"));
+      assertTrue(YangWriter.needsQuotes("a/*b"));
+      assertTrue(YangWriter.needsQuotes("a*/b"));
+      assertFalse(YangWriter.needsQuotes("/a/b"));
+      assertFalse(YangWriter.needsQuotes("a*b"));
+   }
+
+   public void testKeepsComments() throws IOException {
+      String text = "// head\nmodule m {\n  prefix m; // the prefix\n  /* block\n     comment */\n"
+               + "  leaf l { type string; }\n}\n";
+      assertEquals("// head\nmodule m {\n  prefix m; // the prefix\n\n  /* block\n     comment */\n"
+               + "  leaf l {\n    type string;\n  }\n}\n", format(text, 2, 80, true));
+   }
+
+   public void testReadsBackToTheSameStatements() throws IOException {
+      String text = "module m { namespace \"urn:m\"; prefix m;\n"
+               + " description \"tab\\there, \\\"quotes\\\" and \\\\ backslash\n  second line  \n\";\n"
+               + " container c { must \"../x = 'y'\"; presence \"\"; description 'trailing  \n  kept'; }\n"
+               + " leaf p { type string; default \"a//b\"; } leaf q { type string; pattern '[a-z]+/*'; }"
+               + " ext:e \"x y\"; ext:f 'z'; }";
+      YangStatement original = parse(text, false);
+      YangStatement formatted = parse(format(text, 2, 40, false), false);
+      assertSameStatements(original, formatted);
+      assertEquals(format(text, 2, 40, false), format(format(text, 2, 40, false), 2, 40, false));
+   }
+
+   private static void assertSameStatements(YangStatement expected, YangStatement actual) {
+      assertEquals(expected.getKeyword(), actual.getKeyword());
+      assertEquals(expected.getKeyword(), expected.getArgument(), actual.getArgument());
+      List<YangStatement> expectedSubstatements = expected.getSubstatements();
+      List<YangStatement> actualSubstatements = actual.getSubstatements();
+      assertEquals(expected.getKeyword(), expectedSubstatements.size(), actualSubstatements.size());
+      for (int i = 0; i < expectedSubstatements.size(); i++) {
+         assertSameStatements(expectedSubstatements.get(i), actualSubstatements.get(i));
+      }
+   }
+}
@@ -0,0 +1,189 @@
+/*
+ * This computer program is the confidential information and proprietary trade
+ * secret of Anuta Networks, Inc. Possessions and use of this program must
+ * conform strictly to the license agreement between the user and
+ * Anuta Networks, Inc., and receipt or possession does not convey any rights
+ * to divulge, reproduce, or allow others to use this program without specific
+ * written authorization of Anuta Networks, Inc.
+ *
+ * Copyright (c) 2011-2012 Anuta Networks, Inc. All Rights Reserved.
+ */
+package com.anuta.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import junit.framework.TestCase;
+
+/**
+ * YIN output: argument placement, extensions and the namespaces of imported modules.
+ */
+public class YinWriterTest extends TestCase {
+
+   private File dir;
+
+   protected void setUp() throws IOException {
+      dir = File.createTempFile("yin-writer", "");
+      assertTrue(dir.delete() && dir.mkdir());
+   }
+
+   protected void tearDown() {
+      for (File file : dir.listFiles()) {
+         file.delete();
+      }
+      dir.delete();
+   }
+
+   private File write(String name, String content) throws IOException {
+      File file = new File(dir, name);
+      Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+         out.write(content);
+      } finally {
+         out.close();
+      }
+      return file;
+   }
+
+   private String toYin(File file, boolean prettyStrings) throws IOException {
+      ModuleIndex index = ModuleIndex.build(Collections.<File>emptyList(), null);
+      YinWriter writer = new YinWriter(new YangModuleResolver(index, "UTF-8"), prettyStrings);
+      StringWriter out = new StringWriter();
+      writer.write(YangParser.parseFile(file, "UTF-8"), file, out);
+      return out.toString();
+   }
+
+   public void testLayout() throws IOException {
+      File file = write("m.yang", "module m {\n  namespace \"urn:m\";\n  prefix m;\n"
+               + "  description \"a < b\";\n  container c {\n    presence \"x & y\";\n  }\n}\n");
+      assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+               + "<module name=\"m\" xmlns=\"urn:ietf:params:xml:ns:yang:yin:1\" xmlns:m=\"urn:m\">\n"
+               + "  <namespace uri=\"urn:m\"/>\n"
+               + "  <prefix value=\"m\"/>\n"
+               + "  <description>\n"
+               + "    <text>a &lt; b</text>\n"
+               + "  </description>\n"
+               + "  <container name=\"c\">\n"
+               + "    <presence value=\"x &amp; y\"/>\n"
+               + "  </container>\n"
+               + "</module>\n", toYin(file, false));
+   }
+
+   public void testPrettyStrings() throws IOException {
+      File file = write("m.yang", "module m {\n  namespace \"urn:m\";\n  prefix m;\n"
+               + "  description\n    \"one\n     two\";\n}\n");
+      String yin = toYin(file, true);
+      assertTrue(yin, yin.contains("  <description>\n    <text>\n      one\n      two\n    </text>\n  </description>\n"));
+   }
+
+   public void testImportNamespaces() throws IOException {
+      write("b.yang", "module b { namespace \"urn:b\"; prefix bb; }");
+      write("c@2020-01-01.yang", "module c { namespace \"urn:c:old\"; prefix c; }");
+      write("c@2021-01-01.yang", "module c { namespace \"urn:c\"; prefix c; }");
+      File file = write("a.yang", "module a {\n  namespace \"urn:a\";\n  prefix a;\n"
+               + "  import b { prefix x; }\n  import c { prefix c; }\n  import missing { prefix z; }\n}\n");
+      String yin = toYin(file, false);
+      // bound with the prefix of the import, latest revision, unresolved imports left out
+      assertTrue(yin, yin.contains("xmlns:a=\"urn:a\" xmlns:x=\"urn:b\" xmlns:c=\"urn:c\">"));
+      assertFalse(yin, yin.contains("xmlns:z"));
+      assertTrue(yin, yin.contains("  <import module=\"b\">\n    <prefix value=\"x\"/>\n  </import>\n"));
+   }
+
+   public void testImportRevision() throws IOException {
+      write("c@2020-01-01.yang", "module c { namespace \"urn:c:old\"; prefix c; }");
+      write("c@2021-01-01.yang", "module c { namespace \"urn:c\"; prefix c; }");
+      File file = write("a.yang", "module a { namespace \"urn:a\"; prefix a;\n"
+               + "  import c { prefix c; revision-date 2020-01-01; } }");
+      assertTrue(toYin(file, false).contains("xmlns:c=\"urn:c:old\""));
+   }
+
+   public void testSubmoduleNamespace() throws IOException {
+      write("p.yang", "module p { namespace \"urn:p\"; prefix p; include s; }");
+      File file = write("s.yang", "submodule s { belongs-to p { prefix pp; } }");
+      String yin = toYin(file, false);
+      assertTrue(yin, yin.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<submodule name=\"s\" "
+               + "xmlns=\"urn:ietf:params:xml:ns:yang:yin:1\" xmlns:pp=\"urn:p\">"));
+   }
+
+   public void testExtensions() throws IOException {
+      write("e.yang", "module e {\n  namespace \"urn:e\";\n  prefix e;\n"
+               + "  extension doc { argument text { yin-element true; } }\n"
+               + "  extension tag { argument name; }\n"
+               + "  extension flag;\n}\n");
+      File file = write("a.yang", "module a {\n  namespace \"urn:a\";\n  prefix a;\n"
+               + "  import e { prefix ext; }\n"
+               + "  ext:doc \"some text\";\n"
+               + "  ext:tag \"t1\";\n"
+               + "  ext:flag;\n"
+               + "  ext:unknown \"dropped\";\n}\n");
+      String yin = toYin(file, false);
+      // yin-element true: an element named with the prefix of the extension
+      assertTrue(yin, yin.contains("  <ext:doc>\n    <ext:text>some text</ext:text>\n  </ext:doc>\n"));
+      // an attribute otherwise
+      assertTrue(yin, yin.contains("  <ext:tag name=\"t1\"/>\n"));
+      assertTrue(yin, yin.contains("  <ext:flag/>\n"));
+      // like pyang, the argument of an unknown extension is not written
+      assertTrue(yin, yin.contains("  <ext:unknown/>\n"));
+   }
+
+   public void testLocalExtension() throws IOException {
+      File file = write("a.yang", "module a {\n  namespace \"urn:a\";\n  prefix a;\n"
+               + "  extension note { argument text { yin-element true; } }\n  a:note \"n\";\n}\n");
+      assertTrue(toYin(file, false).contains("  <a:note>\n    <a:text>n</a:text>\n  </a:note>\n"));
+   }
+
+   public void testExtensionInSubmodule() throws IOException {
+      write("e.yang", "module e { namespace \"urn:e\"; prefix e; include es; }");
+      write("es.yang", "submodule es { belongs-to e { prefix e; } include es2; }");
+      write("es2.yang", "submodule es2 { belongs-to e { prefix e; }\n"
+               + "  extension doc { argument text { yin-element true; } } }");
+      write("as.yang", "submodule as { belongs-to a { prefix a; }\n  extension tag { argument name; } }");
+      File file = write("a.yang", "module a {\n  namespace \"urn:a\";\n  prefix a;\n"
+               + "  include as;\n  import e { prefix ext; }\n"
+               + "  ext:doc \"some text\";\n  a:tag \"t1\";\n}\n");
+      String yin = toYin(file, false);
+      // defined in a submodule included by a submodule of the imported module
+      assertTrue(yin, yin.contains("  <ext:doc>\n    <ext:text>some text</ext:text>\n  </ext:doc>\n"));
+      // defined in a submodule of the module written
+      assertTrue(yin, yin.contains("  <a:tag name=\"t1\"/>\n"));
+   }
+
+   /**
+    * A prefix without namespace would give an element with an undeclared prefix, which is
+    * not well formed.
+    */
+   public void testUndefinedPrefix() throws IOException {
+      File file = write("s.yang", "submodule s {\n  belongs-to missing { prefix m; }\n  m:note \"n\";\n}\n");
+      try {
+         toYin(file, false);
+         fail("submodule of an unknown module written");
+      } catch (YangParseException e) {
+         assertEquals(2, e.getLine());
+         assertEquals("module missing not found", e.getReason());
+      }
+
+      file = write("a.yang", "module a {\n  namespace \"urn:a\";\n  prefix a;\n"
+               + "  import missing { prefix z; }\n  z:note \"n\";\n}\n");
+      try {
+         toYin(file, false);
+         fail("extension with an undefined prefix written");
+      } catch (YangParseException e) {
+         assertEquals(5, e.getLine());
+         assertEquals("prefix z is not defined", e.getReason());
+      }
+   }
+
+   public void testUnknownKeyword() throws IOException {
+      File file = write("a.yang", "module a { namespace \"urn:a\"; prefix a; bogus x; }");
+      try {
+         toYin(file, false);
+         fail("unknown keyword written");
+      } catch (YangParseException e) {
+         assertEquals("unknown keyword bogus", e.getReason());
+      }
+   }
+}